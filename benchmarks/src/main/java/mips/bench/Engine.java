@@ -0,0 +1,146 @@
+package mips.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+// ==================== ENGINE BRIDGE ====================
+
+/**
+ * Access to the simulator classes from a named package.
+ * The simulator lives in the unnamed package, which Java code in a package
+ * cannot reference (and JMH refuses benchmarks in the unnamed package), so
+ * the few entry points the benchmarks need are bound once as MethodHandles.
+ * The handles are static final, so the JIT inlines them like direct calls.
+ */
+final class Engine {
+
+    private static final MethodHandle NEW_SIMULATOR;
+    private static final MethodHandle LOAD_PROGRAM;
+    private static final MethodHandle SET_FORWARDING;
+    private static final MethodHandle SET_HAZARD_DETECTION;
+    private static final MethodHandle RUN_ONE_CYCLE;
+    private static final MethodHandle IS_HALTED;
+    private static final MethodHandle GET_CYCLES;
+    private static final MethodHandle GET_INSTRUCTION_COUNT;
+
+    private static final Method ASSEMBLE;
+    private static final Field PROGRAM;
+
+    static {
+        try {
+            Class<?> simulator = Class.forName("MIPSSimulator");
+            Class<?> program = Class.forName("DecodedProgram");
+            Class<?> assembler = Class.forName("Assembler");
+            Class<?> assembled = Class.forName("AssembledProgram");
+
+            NEW_SIMULATOR = constructor(simulator)
+                    .asType(MethodType.methodType(Object.class));
+            LOAD_PROGRAM = method(simulator, "loadProgram", program)
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            SET_FORWARDING = method(simulator, "setForwarding", boolean.class)
+                    .asType(MethodType.methodType(void.class, Object.class, boolean.class));
+            SET_HAZARD_DETECTION = method(simulator, "setHazardDetection", boolean.class)
+                    .asType(MethodType.methodType(void.class, Object.class, boolean.class));
+            RUN_ONE_CYCLE = method(simulator, "runOneCycle")
+                    .asType(MethodType.methodType(void.class, Object.class));
+            IS_HALTED = method(simulator, "isHalted")
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+            GET_CYCLES = method(simulator, "getCycles")
+                    .asType(MethodType.methodType(int.class, Object.class));
+            GET_INSTRUCTION_COUNT = method(simulator, "getInstructionCount")
+                    .asType(MethodType.methodType(long.class, Object.class));
+
+            ASSEMBLE = accessible(assembler.getDeclaredMethod("assemble", String[].class));
+            PROGRAM = assembled.getDeclaredField("program");
+            PROGRAM.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Engine() {
+    }
+
+    /**
+     * Assembles a program once, so that every simulator built from it skips
+     * the assembler (the kernels have no .data to load)
+     */
+    static Object decode(String[] source) {
+        try {
+            return PROGRAM.get(ASSEMBLE.invoke(null, (Object) source));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot decode program", e);
+        }
+    }
+
+    static Object newSimulator(Object program, boolean forwarding, boolean hazardDetection) {
+        try {
+            Object simulator = (Object) NEW_SIMULATOR.invokeExact();
+            LOAD_PROGRAM.invokeExact(simulator, program);
+            SET_FORWARDING.invokeExact(simulator, forwarding);
+            SET_HAZARD_DETECTION.invokeExact(simulator, hazardDetection);
+            return simulator;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void runOneCycle(Object simulator) {
+        try {
+            RUN_ONE_CYCLE.invokeExact(simulator);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static boolean isHalted(Object simulator) {
+        try {
+            return (boolean) IS_HALTED.invokeExact(simulator);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int getCycles(Object simulator) {
+        try {
+            return (int) GET_CYCLES.invokeExact(simulator);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static long getInstructionCount(Object simulator) {
+        try {
+            return (long) GET_INSTRUCTION_COUNT.invokeExact(simulator);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner) throws ReflectiveOperationException {
+        return MethodHandles.lookup().unreflectConstructor(accessible(owner.getDeclaredConstructor()));
+    }
+
+    private static MethodHandle method(Class<?> owner, String name, Class<?>... parameters)
+            throws ReflectiveOperationException {
+        return MethodHandles.lookup().unreflect(accessible(owner.getDeclaredMethod(name, parameters)));
+    }
+
+    private static <T extends java.lang.reflect.AccessibleObject> T accessible(T member) {
+        member.setAccessible(true);
+        return member;
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,81 @@
+package mips.bench;
+
+// ==================== BENCHMARK KERNELS ====================
+
+/**
+ * Programs driven by the benchmarks: two of the GUI examples (without their
+ * comment lines) plus synthetic long loops that keep the pipeline busy long
+ * enough for the per-program setup to disappear from the measurement
+ */
+final class Kernels {
+
+    /** Iterations of the synthetic loops */
+    static final int LONG_LOOP_ITERATIONS = 20000;
+
+    /** GUI "Counter Loop (BGEZ)": sum 5+4+3+2+1+0 */
+    static final String[] COUNTER_LOOP = {
+            "ADDI $1, $0, 5",
+            "ADDI $2, $0, 0",
+            "ADD $2, $2, $1",
+            "ADDI $1, $1, -1",
+            "BGEZ $1, -3",
+            "ADDI $3, $0, 100"
+    };
+
+    /** GUI "Complex Program": every instruction class plus a short loop */
+    static final String[] COMPLEX_PROGRAM = {
+            "ADDI $1, $0, 3",
+            "ADDI $2, $0, 0",
+            "ADD $2, $2, $1",
+            "ADDI $1, $1, -1",
+            "BGEZ $1, -3",
+            "SW $2, 0($0)",
+            "LW $3, 0($0)",
+            "ADD $4, $3, $3",
+            "SLL $5, $4, 2",
+            "AND $6, $5, $4",
+            "OR $7, $6, $3"
+    };
+
+    /** ALU-only countdown loop with back-to-back dependences (forwarding paths) */
+    static final String[] LONG_ALU_LOOP = {
+            "ADDI $1, $0, " + LONG_LOOP_ITERATIONS,
+            "ADDI $2, $0, 0",
+            "ADD $2, $2, $1",
+            "XOR $3, $2, $1",
+            "SLL $4, $3, 1",
+            "SUB $5, $4, $2",
+            "ADDI $1, $1, -1",
+            "BGEZ $1, -6",
+            "ADDI $6, $0, 1"
+    };
+
+    /** Load/store loop with a load-use dependence every iteration (stall path) */
+    static final String[] LONG_MEMORY_LOOP = {
+            "ADDI $1, $0, " + LONG_LOOP_ITERATIONS,
+            "LW $3, 0($0)",
+            "ADD $3, $3, $1",
+            "SW $3, 0($0)",
+            "ADDI $1, $1, -1",
+            "BGEZ $1, -5",
+            "ADDI $6, $0, 1"
+    };
+
+    private Kernels() {
+    }
+
+    static String[] byName(String name) {
+        switch (name) {
+            case "counterLoop":
+                return COUNTER_LOOP;
+            case "complexProgram":
+                return COMPLEX_PROGRAM;
+            case "longAluLoop":
+                return LONG_ALU_LOOP;
+            case "longMemoryLoop":
+                return LONG_MEMORY_LOOP;
+            default:
+                throw new IllegalArgumentException("Unknown kernel: " + name);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package mips.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// ==================== PIPELINE BENCHMARK ====================
+
+/**
+ * Throughput of MIPSSimulator.runOneCycle with no listener attached.
+ * Each invocation runs one kernel from reset until the pipeline drains;
+ * the program is assembled once per trial. Reset means a new simulator
+ * over the shared decoded program, as in the GUI, and it is built inside
+ * the measured method: a per-invocation setup would put JMH's own
+ * timestamping around every run, which outweighs the short kernels. The
+ * primary score is programs/s, and the "cycles" and "instructions"
+ * secondary scores are simulated cycles/s and retired instructions/s.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    /**
+     * Safety net: without forwarding or hazard detection a loop can compute
+     * the wrong counter value and never exit
+     */
+    private static final int MAX_CYCLES = 10_000_000;
+
+    @Param({ "counterLoop", "complexProgram", "longAluLoop", "longMemoryLoop" })
+    public String kernel;
+
+    @Param({ "true", "false" })
+    public boolean forwarding;
+
+    @Param({ "true", "false" })
+    public boolean hazardDetection;
+
+    private Object program;
+
+    /**
+     * Simulated work, reported by JMH as rates next to the primary score
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long cycles;
+
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cycles = 0;
+            instructions = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void decode() {
+        program = Engine.decode(Kernels.byName(kernel));
+    }
+
+    @Benchmark
+    public int runProgram(Counters counters) {
+        Object sim = Engine.newSimulator(program, forwarding, hazardDetection);
+        while (!Engine.isHalted(sim) && Engine.getCycles(sim) < MAX_CYCLES) {
+            Engine.runOneCycle(sim);
+        }
+        int cycles = Engine.getCycles(sim);
+        counters.cycles += cycles;
+        counters.instructions += Engine.getInstructionCount(sim);
+        return cycles;
+    }
+}
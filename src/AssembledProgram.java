@@ -0,0 +1,59 @@
+import java.util.Map;
+
+// ==================== ASSEMBLED PROGRAM ====================
+
+/**
+ * A program ready to load: decoded instruction memory, the initial image of
+ * the .data segment, the symbol table and the entry point.
+ * Built by the Assembler, or by ProgramLoader for machine code.
+ */
+class AssembledProgram {
+
+    final DecodedProgram program;
+
+    // Address of data[0]
+    final int dataBase;
+
+    // Initial .data words
+    final int[] data;
+
+    // Text labels map to instruction indexes, data labels to byte addresses
+    private final Map<String, Integer> symbols;
+
+    // Instruction index where execution starts
+    final int entry;
+
+    AssembledProgram(DecodedProgram program, int dataBase, int[] data, Map<String, Integer> symbols) {
+        this(program, dataBase, data, symbols, 0);
+    }
+
+    AssembledProgram(DecodedProgram program, int dataBase, int[] data, Map<String, Integer> symbols, int entry) {
+        this.program = program;
+        this.dataBase = dataBase;
+        this.data = data;
+        this.symbols = symbols;
+        this.entry = entry;
+    }
+
+    /**
+     * Loads the program and the data image into a simulator
+     */
+    public void loadInto(MIPSSimulator sim) {
+        sim.loadProgram(program, entry);
+        Memory memory = sim.getMemory();
+        for (int i = 0; i < data.length; i++) {
+            memory.store(dataBase + i * 4, data[i]);
+        }
+    }
+
+    public int getInstructionCount() {
+        return program.length();
+    }
+
+    /**
+     * Value of a label, or null if it is not defined
+     */
+    public Integer getSymbol(String label) {
+        return symbols.get(label);
+    }
+}
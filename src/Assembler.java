@@ -0,0 +1,690 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// ==================== ASSEMBLER ====================
+
+/**
+ * Two-pass assembler for the supported instruction set.
+ *
+ * Pass 1 scans the source once with a hand-written tokenizer (no regex, no
+ * String.split), records every label and appends each instruction to a
+ * growable DecodedProgram; operands that name a label are left as fixups.
+ * Pass 2 patches the fixups in the program and the .data image. The source
+ * is read line by line through a fixed buffer, so a large file streams in
+ * without ever being held as one String.
+ *
+ * Syntax:
+ * - labels "name:", comments "#" or "//"
+ * - .text, .data (based at DATA_BASE), .word v1, v2, ..., .space bytes
+ *   (.globl and .align are accepted and ignored)
+ * - registers $0-$31 or by name ($zero, $t0, $sp, $ra, ...)
+ * - branch and jump targets are labels, or numbers as before (branch:
+ *   offset from PC+1, J: instruction index)
+ * - LW/SW take offset($rs), label($rs) or a bare label
+ * - pseudo-instructions NOP, MOVE, LI, LA and B, each one instruction
+ */
+class Assembler {
+
+    /** Address of the first .data word */
+    public static final int DATA_BASE = 0x10010000;
+
+    // How an operand symbol is resolved in pass 2
+    private static final int SYMBOL_VALUE = 1;    // label value (instruction index or data address)
+    private static final int SYMBOL_RELATIVE = 2; // branch offset: label - (pc + 1)
+
+    // Pseudo-instruction codes, after the MicroOp opcodes
+    private static final int NOP = 100;
+    private static final int MOVE = 101;
+    private static final int LI = 102;
+    private static final int LA = 103;
+    private static final int B = 104;
+
+    // Mnemonics packed into an int (see packMnemonic), sorted, with their codes
+    private static final int[] MNEMONIC_KEYS;
+    private static final int[] MNEMONIC_CODES;
+
+    // Two-letter register names ("t0", "sp", ...) indexed by registerSlot(); -1 if unknown
+    private static final int[] REGISTER_BY_NAME = new int[26 * 36];
+
+    static {
+        String[] pseudo = { "NOP", "MOVE", "LI", "LA", "B" };
+        int count = MicroOp.LAST + pseudo.length;
+        long[] entries = new long[count];
+        for (int op = MicroOp.ADD; op <= MicroOp.LAST; op++) {
+            entries[op - 1] = (long) pack(MicroOp.mnemonic(op)) << 32 | op;
+        }
+        for (int i = 0; i < pseudo.length; i++) {
+            entries[MicroOp.LAST + i] = (long) pack(pseudo[i]) << 32 | (NOP + i);
+        }
+        Arrays.sort(entries);
+        MNEMONIC_KEYS = new int[count];
+        MNEMONIC_CODES = new int[count];
+        for (int i = 0; i < count; i++) {
+            MNEMONIC_KEYS[i] = (int) (entries[i] >>> 32);
+            MNEMONIC_CODES[i] = (int) entries[i];
+        }
+
+        String[] names = {
+                "zero", "at", "v0", "v1", "a0", "a1", "a2", "a3",
+                "t0", "t1", "t2", "t3", "t4", "t5", "t6", "t7",
+                "s0", "s1", "s2", "s3", "s4", "s5", "s6", "s7",
+                "t8", "t9", "k0", "k1", "gp", "sp", "fp", "ra"
+        };
+        Arrays.fill(REGISTER_BY_NAME, -1);
+        for (int i = 1; i < names.length; i++) {
+            REGISTER_BY_NAME[registerSlot(names[i].charAt(0), names[i].charAt(1))] = i;
+        }
+        REGISTER_BY_NAME[registerSlot('s', '8')] = 30;
+    }
+
+    private static int pack(String mnemonic) {
+        int key = 0;
+        for (int i = 0; i < mnemonic.length(); i++) {
+            key = key << 7 | mnemonic.charAt(i);
+        }
+        return key;
+    }
+
+    /**
+     * Number of the register written "$8", "8", "$t0" or "t0"; -1 if name is none
+     */
+    static int registerNumber(String name) {
+        String n = name.startsWith("$") ? name.substring(1) : name;
+        if (n.isEmpty()) {
+            return -1;
+        }
+        if (Character.isDigit(n.charAt(0))) {
+            try {
+                int reg = Integer.parseInt(n);
+                return reg <= 31 ? reg : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        if (n.equalsIgnoreCase("zero")) {
+            return 0;
+        }
+        if (n.length() == 2) {
+            char first = Character.toLowerCase(n.charAt(0));
+            char second = Character.toLowerCase(n.charAt(1));
+            if (first >= 'a' && first <= 'z' && ((second >= 'a' && second <= 'z') || (second >= '0' && second <= '9'))) {
+                return REGISTER_BY_NAME[registerSlot(first, second)];
+            }
+        }
+        return -1;
+    }
+
+    private static int registerSlot(char first, char second) {
+        return (first - 'a') * 36 + (second >= 'a' ? 10 + second - 'a' : second - '0');
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Tokenizer input: buffer holding the current line, position, end of line, line number
+    private char[] src;
+
+    private int pos;
+
+    private int lineEnd;
+
+    private int line;
+
+    private boolean inData;
+
+    // Symbol table; labels are interned to ids so fixups only store ints
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+
+    private int symbolCount;
+
+    private String[] symbolNames = new String[64];
+
+    private int[] symbolValues = new int[64];
+
+    private boolean[] symbolDefined = new boolean[64];
+
+    private final DecodedProgram program = new DecodedProgram();
+
+    // Instructions whose immediate is a label: PC, symbol id << 2 | SYMBOL_* kind, line
+    private int textFixupCount;
+
+    private int[] textFixupPc = new int[64];
+
+    private int[] textFixupSymbol = new int[64];
+
+    private int[] textFixupLine = new int[64];
+
+    // .data words and the ones that hold a label
+    private int dataCount;
+
+    private int[] data = new int[64];
+
+    private int fixupCount;
+
+    private int[] fixupIndex = new int[16];
+
+    private int[] fixupSymbol = new int[16];
+
+    private int[] fixupLine = new int[16];
+
+    private Assembler() {
+    }
+
+    public static AssembledProgram assemble(String source) {
+        Assembler assembler = new Assembler();
+        char[] text = source.toCharArray();
+        int start = 0;
+        for (int i = 0; i < text.length; i++) {
+            if (text[i] == '\n') {
+                assembler.line(text, start, i);
+                start = i + 1;
+            }
+        }
+        if (start < text.length) {
+            assembler.line(text, start, text.length);
+        }
+        return assembler.finish();
+    }
+
+    public static AssembledProgram assemble(String[] lines) {
+        Assembler assembler = new Assembler();
+        for (String line : lines) {
+            char[] text = line.toCharArray();
+            assembler.line(text, 0, text.length);
+        }
+        return assembler.finish();
+    }
+
+    /**
+     * Assembles a source read incrementally; the Reader is not closed
+     */
+    public static AssembledProgram assemble(Reader in) throws IOException {
+        Assembler assembler = new Assembler();
+        char[] buffer = new char[BUFFER_SIZE];
+        int length = 0;
+        while (true) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read > 0) {
+                length += read;
+            }
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                if (buffer[i] == '\n') {
+                    assembler.line(buffer, start, i);
+                    start = i + 1;
+                }
+            }
+            if (read < 0) {
+                if (start < length) {
+                    assembler.line(buffer, start, length);
+                }
+                return assembler.finish();
+            }
+            // Keep the partial last line; grow only for a line longer than the buffer
+            length -= start;
+            System.arraycopy(buffer, start, buffer, 0, length);
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+    }
+
+    /**
+     * Pass 1 for one source line held in buffer[start, end)
+     */
+    private void line(char[] buffer, int start, int end) {
+        src = buffer;
+        pos = start;
+        lineEnd = end;
+        line++;
+        statement();
+    }
+
+    /**
+     * Pass 2: resolve labels
+     */
+    private AssembledProgram finish() {
+        for (int i = 0; i < textFixupCount; i++) {
+            int pc = textFixupPc[i];
+            int value = resolve(textFixupSymbol[i] >>> 2, textFixupLine[i]);
+            program.immediate[pc] = (textFixupSymbol[i] & 3) == SYMBOL_RELATIVE ? value - (pc + 1) : value;
+        }
+        for (int i = 0; i < fixupCount; i++) {
+            data[fixupIndex[i]] = resolve(fixupSymbol[i], fixupLine[i]);
+        }
+        program.trimToSize();
+        Map<String, Integer> symbols = new HashMap<>();
+        for (int id = 0; id < symbolCount; id++) {
+            if (symbolDefined[id]) {
+                symbols.put(symbolNames[id], symbolValues[id]);
+            }
+        }
+        return new AssembledProgram(program, DATA_BASE, Arrays.copyOf(data, dataCount), symbols);
+    }
+
+    private int resolve(int symbol, int atLine) {
+        if (!symbolDefined[symbol]) {
+            throw new IllegalArgumentException("Line " + atLine + ": undefined label '" + symbolNames[symbol] + "'");
+        }
+        return symbolValues[symbol];
+    }
+
+    private int symbolId(String name) {
+        Integer id = symbolIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (symbolCount == symbolNames.length) {
+            int size = symbolCount * 2;
+            symbolNames = Arrays.copyOf(symbolNames, size);
+            symbolValues = Arrays.copyOf(symbolValues, size);
+            symbolDefined = Arrays.copyOf(symbolDefined, size);
+        }
+        symbolNames[symbolCount] = name;
+        symbolIds.put(name, symbolCount);
+        return symbolCount++;
+    }
+
+    // ---------- statements ----------
+
+    private void statement() {
+        while (true) {
+            skipSpaces();
+            if (atEnd()) {
+                return;
+            }
+            int start = pos;
+            identifierEnd();
+            int end = pos;
+            skipSpaces();
+            if (pos < lineEnd && src[pos] == ':') {
+                pos++;
+                defineLabel(new String(src, start, end - start));
+                continue;
+            }
+            if (src[start] == '.') {
+                directive(new String(src, start, end - start));
+            } else {
+                instruction(mnemonic(start, end), start, end);
+            }
+            skipSpaces();
+            if (!atEnd()) {
+                throw error("unexpected '" + new String(src, pos, lineEnd - pos).trim() + "'");
+            }
+            return;
+        }
+    }
+
+    private void defineLabel(String label) {
+        int id = symbolId(label);
+        if (symbolDefined[id]) {
+            throw error("duplicate label '" + label + "'");
+        }
+        symbolDefined[id] = true;
+        symbolValues[id] = inData ? DATA_BASE + dataCount * 4 : program.length();
+    }
+
+    private void directive(String name) {
+        switch (name) {
+            case ".text":
+                inData = false;
+                break;
+            case ".data":
+                inData = true;
+                break;
+            case ".word":
+                requireData(name);
+                do {
+                    skipSpaces();
+                    if (startsNumber()) {
+                        addData(number());
+                    } else {
+                        addFixup(identifier());
+                    }
+                } while (comma());
+                break;
+            case ".space":
+                requireData(name);
+                int words = (number() + 3) / 4;
+                for (int i = 0; i < words; i++) {
+                    addData(0);
+                }
+                break;
+            case ".globl":
+            case ".global":
+                identifier();
+                break;
+            case ".align":
+                number(); // everything is word-aligned already
+                break;
+            default:
+                throw error("unknown directive " + name);
+        }
+    }
+
+    private void requireData(String directive) {
+        if (!inData) {
+            throw error(directive + " is only allowed in .data");
+        }
+    }
+
+    /**
+     * Code of the mnemonic in src[start, end) (a MicroOp opcode or a pseudo
+     * code), or -1; case-insensitive and allocation-free
+     */
+    private int mnemonic(int start, int end) {
+        if (end - start > 4) {
+            return -1;
+        }
+        int key = 0;
+        for (int i = start; i < end; i++) {
+            char c = src[i];
+            key = key << 7 | (c >= 'a' && c <= 'z' ? c - 32 : c);
+        }
+        int i = Arrays.binarySearch(MNEMONIC_KEYS, key);
+        return i >= 0 ? MNEMONIC_CODES[i] : -1;
+    }
+
+    private void instruction(int code, int start, int end) {
+        if (code < 0) {
+            throw error("unknown instruction " + new String(src, start, end - start).toUpperCase());
+        }
+        if (inData) {
+            throw error("instruction " + new String(src, start, end - start).toUpperCase() + " in .data");
+        }
+        int rd;
+        int rs;
+        int rt;
+        switch (code) {
+            case MicroOp.ADD: case MicroOp.SUB: case MicroOp.AND: case MicroOp.OR:
+            case MicroOp.XOR: case MicroOp.SLT:
+                rd = register();
+                comma();
+                rs = register();
+                comma();
+                rt = register();
+                add(code, rs, rt, rd, 0, 0);
+                break;
+            case MicroOp.SLL: case MicroOp.SRL:
+                rd = register();
+                comma();
+                rt = register();
+                comma();
+                add(code, 0, rt, rd, number(), 0);
+                break;
+            case MicroOp.MULT: case MicroOp.DIV:
+                rs = register();
+                comma();
+                add(code, rs, register(), 0, 0, 0);
+                break;
+            case MicroOp.MFHI: case MicroOp.MFLO:
+                add(code, 0, 0, register(), 0, 0);
+                break;
+            case MicroOp.ADDI: case MicroOp.ORI:
+                rt = register();
+                comma();
+                rs = register();
+                comma();
+                add(code, rs, rt, 0, 0, 0);
+                value(SYMBOL_VALUE);
+                break;
+            case MicroOp.LW: case MicroOp.SW:
+                rt = register();
+                comma();
+                skipSpaces();
+                add(code, 0, rt, 0, 0, 0);
+                if (pos < lineEnd && src[pos] != '(') {
+                    value(SYMBOL_VALUE);
+                }
+                skipSpaces();
+                if (pos < lineEnd && src[pos] == '(') {
+                    pos++;
+                    rs = register();
+                    skipSpaces();
+                    expect(')');
+                    program.registers[program.length() - 1] = MicroOp.encodeRegisters(rs, rt, 0, 0);
+                }
+                break;
+            case MicroOp.BEQ:
+                rs = register();
+                comma();
+                rt = register();
+                comma();
+                add(MicroOp.BEQ, rs, rt, 0, 0, 0);
+                value(SYMBOL_RELATIVE);
+                break;
+            case MicroOp.BGEZ:
+                rs = register();
+                comma();
+                add(MicroOp.BGEZ, rs, 0, 0, 0, 0);
+                value(SYMBOL_RELATIVE);
+                break;
+            case MicroOp.J:
+                add(MicroOp.J, 0, 0, 0, 0, 0);
+                value(SYMBOL_VALUE);
+                break;
+
+            // Pseudo-instructions
+            case NOP:
+                add(MicroOp.SLL, 0, 0, 0, 0, 0);
+                break;
+            case MOVE:
+                rd = register();
+                comma();
+                add(MicroOp.ADD, register(), 0, rd, 0, 0);
+                break;
+            case LI: case LA:
+                rt = register();
+                comma();
+                add(MicroOp.ADDI, 0, rt, 0, 0, 0);
+                value(SYMBOL_VALUE);
+                break;
+            case B:
+                add(MicroOp.BEQ, 0, 0, 0, 0, 0);
+                value(SYMBOL_RELATIVE);
+                break;
+            default:
+                throw new IllegalStateException("Unhandled mnemonic code " + code);
+        }
+    }
+
+    private void add(int opcode, int rs, int rt, int rd, int shamt, int immediate) {
+        if (shamt < 0 || shamt > 31) {
+            throw error("shift amount out of range: " + shamt);
+        }
+        program.append(opcode, MicroOp.encodeRegisters(rs, rt, rd, shamt), immediate);
+    }
+
+    /**
+     * Immediate operand of the last added instruction: a number, or a label
+     * resolved in pass 2
+     */
+    private void value(int symbolKind) {
+        skipSpaces();
+        int pc = program.length() - 1;
+        if (startsNumber()) {
+            program.immediate[pc] = number();
+            return;
+        }
+        if (textFixupCount == textFixupPc.length) {
+            int size = textFixupCount * 2;
+            textFixupPc = Arrays.copyOf(textFixupPc, size);
+            textFixupSymbol = Arrays.copyOf(textFixupSymbol, size);
+            textFixupLine = Arrays.copyOf(textFixupLine, size);
+        }
+        textFixupPc[textFixupCount] = pc;
+        textFixupSymbol[textFixupCount] = symbolId(identifier()) << 2 | symbolKind;
+        textFixupLine[textFixupCount] = line;
+        textFixupCount++;
+    }
+
+    private void addData(int value) {
+        if (dataCount == data.length) {
+            data = Arrays.copyOf(data, dataCount * 2);
+        }
+        data[dataCount++] = value;
+    }
+
+    private void addFixup(String symbol) {
+        if (fixupCount == fixupIndex.length) {
+            int size = fixupCount * 2;
+            fixupIndex = Arrays.copyOf(fixupIndex, size);
+            fixupSymbol = Arrays.copyOf(fixupSymbol, size);
+            fixupLine = Arrays.copyOf(fixupLine, size);
+        }
+        fixupIndex[fixupCount] = dataCount;
+        fixupSymbol[fixupCount] = symbolId(symbol);
+        fixupLine[fixupCount] = line;
+        fixupCount++;
+        addData(0);
+    }
+
+    // ---------- tokenizer ----------
+
+    private boolean atEnd() {
+        return pos >= lineEnd || src[pos] == '#'
+                || (src[pos] == '/' && pos + 1 < lineEnd && src[pos + 1] == '/');
+    }
+
+    private void skipSpaces() {
+        while (pos < lineEnd && (src[pos] == ' ' || src[pos] == '\t' || src[pos] == '\r')) {
+            pos++;
+        }
+    }
+
+    /**
+     * Consumes an optional comma (operands may also be separated by spaces only)
+     */
+    private boolean comma() {
+        skipSpaces();
+        if (pos < lineEnd && src[pos] == ',') {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (pos >= lineEnd || src[pos] != c) {
+            throw error("expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private String identifier() {
+        skipSpaces();
+        int start = pos;
+        identifierEnd();
+        return new String(src, start, pos - start);
+    }
+
+    /**
+     * Advances over an identifier ([A-Za-z0-9_.]+) without allocating
+     */
+    private void identifierEnd() {
+        int start = pos;
+        while (pos < lineEnd && isWordChar(src[pos])) {
+            pos++;
+        }
+        if (pos == start) {
+            throw error(atEnd() ? "missing operand" : "unexpected '" + src[pos] + "'");
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.';
+    }
+
+    private int register() {
+        skipSpaces();
+        if (pos < lineEnd && src[pos] == '$') {
+            pos++;
+        }
+        int start = pos;
+        while (pos < lineEnd && isWordChar(src[pos]) && src[pos] != '.') {
+            pos++;
+        }
+        if (pos == start) {
+            throw error("expected a register");
+        }
+        if (src[start] >= '0' && src[start] <= '9') {
+            int reg = 0;
+            for (int i = start; i < pos; i++) {
+                if (src[i] < '0' || src[i] > '9' || reg > 31) {
+                    throw error("invalid register $" + new String(src, start, pos - start));
+                }
+                reg = reg * 10 + (src[i] - '0');
+            }
+            if (reg > 31) {
+                throw error("invalid register $" + reg);
+            }
+            return reg;
+        }
+        int length = pos - start;
+        if (length == 2) {
+            char first = Character.toLowerCase(src[start]);
+            char second = Character.toLowerCase(src[start + 1]);
+            if (first >= 'a' && first <= 'z' && ((second >= 'a' && second <= 'z') || (second >= '0' && second <= '9'))) {
+                int reg = REGISTER_BY_NAME[registerSlot(first, second)];
+                if (reg >= 0) {
+                    return reg;
+                }
+            }
+        } else if (length == 4 && "zero".equalsIgnoreCase(new String(src, start, 4))) {
+            return 0;
+        }
+        throw error("invalid register $" + new String(src, start, length));
+    }
+
+    private boolean startsNumber() {
+        if (pos >= lineEnd) {
+            return false;
+        }
+        char c = src[pos];
+        return (c >= '0' && c <= '9') || c == '-' || c == '+';
+    }
+
+    /**
+     * Decimal or 0x hex integer with optional sign; must fit in 32 bits
+     * (signed or unsigned)
+     */
+    private int number() {
+        skipSpaces();
+        boolean negative = false;
+        if (pos < lineEnd && (src[pos] == '-' || src[pos] == '+')) {
+            negative = src[pos] == '-';
+            pos++;
+        }
+        int radix = 10;
+        if (pos + 1 < lineEnd && src[pos] == '0' && (src[pos + 1] == 'x' || src[pos + 1] == 'X')) {
+            radix = 16;
+            pos += 2;
+        }
+        int start = pos;
+        long value = 0;
+        while (pos < lineEnd) {
+            int digit = Character.digit(src[pos], radix);
+            if (digit < 0) {
+                break;
+            }
+            value = value * radix + digit;
+            if (value > 0xFFFFFFFFL) {
+                throw error("number out of range");
+            }
+            pos++;
+        }
+        if (pos == start) {
+            throw error("expected a number");
+        }
+        if (negative && value > 0x80000000L) {
+            throw error("number out of range");
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Line " + line + ": " + message);
+    }
+}
@@ -0,0 +1,500 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// ==================== BATCH RUNNER ====================
+
+/**
+ * Headless regression runner: every program under a directory (.asm, .bin
+ * or .elf, searched recursively) runs to completion on a ForkJoinPool
+ * worker and is checked against the expected state stored next to it in
+ * name.expected, a properties file:
+ *
+ *   cycles = 42                    also stalls, instructions
+ *   halted = false                 expect the cycle limit (default: must halt)
+ *   $t2 = 50                       registers by number or name, hi, lo
+ *   @0x10010000 = 0xFF             memory words by address,
+ *   @array+4 = -1                  or by data label plus offset
+ *
+ * and the pipeline options to run it under (defaults as in SweepRunner):
+ *
+ *   forwarding = off               also hazard-detection
+ *   predictor = 2bit               BranchPredictor.create() spec
+ *   branch-stage = id              ex or id
+ *   icache = 8k:2:32:lru           Cache.parse() specs; also dcache
+ *   max-cycles = 100000
+ *
+ * A program without a .expected file only has to halt. Each program is
+ * loaded, run and checked on its own simulator, so results do not depend
+ * on the thread count.
+ *
+ * Usage: java BatchRunner directory [--threads N] [--max-cycles N]
+ *        [--junit results.xml] [--json results.json]
+ * Failures and errors are listed on stdout and make the exit status 1.
+ */
+class BatchRunner {
+
+    static final String EXPECTED_SUFFIX = ".expected";
+
+    private static final List<String> OPTION_KEYS = java.util.Arrays.asList("forwarding", "hazard-detection",
+            "predictor", "branch-stage", "icache", "dcache", "max-cycles");
+
+    /**
+     * Outcome of one program
+     */
+    static class Result {
+
+        // Path relative to the directory, with '/' separators
+        final String name;
+
+        // Mismatches against the expected state; empty when it passed
+        final List<String> failures = new ArrayList<>();
+
+        // null unless the program or its .expected file could not be run
+        String error;
+
+        int cycles;
+
+        int stalls;
+
+        long instructions;
+
+        boolean halted;
+
+        long loadNanos;
+
+        long runNanos;
+
+        Result(String name) {
+            this.name = name;
+        }
+
+        public boolean passed() {
+            return error == null && failures.isEmpty();
+        }
+
+        public String getStatus() {
+            return error != null ? "error" : failures.isEmpty() ? "pass" : "fail";
+        }
+
+        public double getCpi() {
+            return instructions == 0 ? 0.0 : (double) cycles / instructions;
+        }
+    }
+
+    private final Path directory;
+
+    private final ForkJoinPool pool;
+
+    private long maxCycles = SweepRunner.DEFAULT_MAX_CYCLES;
+
+    public BatchRunner(Path directory, int threads) {
+        this.directory = directory;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Cycle budget of programs whose .expected file does not set max-cycles
+     */
+    public void setMaxCycles(long maxCycles) {
+        this.maxCycles = maxCycles;
+    }
+
+    /**
+     * Programs under the directory, sorted by path
+     */
+    public List<Path> findPrograms() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).filter(file -> {
+                String name = file.getFileName().toString();
+                return name.endsWith(".asm") || name.endsWith(".bin") || name.endsWith(".elf");
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Runs every program; results come back in the same order
+     */
+    public List<Result> run(List<Path> programs) {
+        List<Callable<Result>> tasks = new ArrayList<>(programs.size());
+        for (Path program : programs) {
+            tasks.add(() -> runOne(program));
+        }
+
+        List<Result> results = new ArrayList<>(programs.size());
+        for (Future<Result> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Batch interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Batch task failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private Result runOne(Path file) {
+        Result result = new Result(directory.relativize(file).toString().replace('\\', '/'));
+        try {
+            long start = System.nanoTime();
+            AssembledProgram program = new ProgramLoader().load(file);
+            Properties expected = loadExpected(file);
+            MIPSSimulator sim = new MIPSSimulator();
+            program.loadInto(sim);
+            configuration(result.name, expected).applyTo(sim);
+            long budget = expected.containsKey("max-cycles")
+                    ? Long.parseLong(expected.getProperty("max-cycles").trim()) : maxCycles;
+            long loaded = System.nanoTime();
+            result.loadNanos = loaded - start;
+
+            while (!sim.isHalted() && sim.getCycles() < budget) {
+                sim.runOneCycle();
+            }
+            result.runNanos = System.nanoTime() - loaded;
+            result.cycles = sim.getCycles();
+            result.stalls = sim.getStallCount();
+            result.instructions = sim.getInstructionCount();
+            result.halted = sim.isHalted();
+            check(sim, program, expected, budget, result);
+        } catch (IOException | RuntimeException e) {
+            result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        return result;
+    }
+
+    /**
+     * The program's .expected file, empty when there is none
+     */
+    private static Properties loadExpected(Path program) throws IOException {
+        String name = program.getFileName().toString();
+        Path file = program.resolveSibling(name.substring(0, name.lastIndexOf('.')) + EXPECTED_SUFFIX);
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    private static SweepRunner.Configuration configuration(String name, Properties expected) {
+        SweepRunner.Configuration configuration = new SweepRunner.Configuration(name,
+                flag(expected, "forwarding"), flag(expected, "hazard-detection"));
+        String predictor = expected.getProperty("predictor");
+        if (predictor != null) {
+            BranchPredictor.create(predictor.trim()); // fail on a bad spec before running
+            configuration = configuration.withPredictor(predictor.trim());
+        }
+        String stage = expected.getProperty("branch-stage", "ex").trim();
+        if (!stage.equalsIgnoreCase("ex") && !stage.equalsIgnoreCase("id")) {
+            throw new IllegalArgumentException("branch-stage must be ex or id: " + stage);
+        }
+        String instructionCache = expected.getProperty("icache");
+        String dataCache = expected.getProperty("dcache");
+        return configuration.withEarlyBranchResolution(stage.equalsIgnoreCase("id"))
+                .withCaches(instructionCache == null ? null : instructionCache.trim(),
+                        dataCache == null ? null : dataCache.trim());
+    }
+
+    private static boolean flag(Properties expected, String key) {
+        String value = expected.getProperty(key, "on").trim();
+        if (!value.equals("on") && !value.equals("off")) {
+            throw new IllegalArgumentException(key + " must be on or off: " + value);
+        }
+        return value.equals("on");
+    }
+
+    /**
+     * Compares the final state with every expectation, adding a line per mismatch
+     */
+    private static void check(MIPSSimulator sim, AssembledProgram program, Properties expected, long budget,
+            Result result) {
+        boolean expectHalt = Boolean.parseBoolean(expected.getProperty("halted", "true").trim());
+        if (result.halted != expectHalt) {
+            result.failures.add(expectHalt ? "did not halt within " + budget + " cycles"
+                    : "halted at cycle " + result.cycles + ", expected to reach the cycle limit");
+        }
+        for (String key : new java.util.TreeSet<>(expected.stringPropertyNames())) {
+            if (OPTION_KEYS.contains(key) || key.equals("halted")) {
+                continue;
+            }
+            long want = parseValue(key, expected.getProperty(key));
+            long actual;
+            switch (key) {
+                case "cycles":
+                    actual = result.cycles;
+                    break;
+                case "stalls":
+                    actual = result.stalls;
+                    break;
+                case "instructions":
+                    actual = result.instructions;
+                    break;
+                case "hi":
+                    actual = sim.getRegFile().readHi();
+                    break;
+                case "lo":
+                    actual = sim.getRegFile().readLo();
+                    break;
+                default:
+                    if (key.startsWith("@")) {
+                        actual = sim.getMemory().load(address(key.substring(1), program));
+                    } else {
+                        int register = Assembler.registerNumber(key);
+                        if (register < 0) {
+                            throw new IllegalArgumentException("Unknown expected-state key: " + key);
+                        }
+                        actual = sim.getRegFile().read(register);
+                    }
+                    // Words compare as 32 bits, so 0xFFFFFFFF matches -1
+                    want = (int) want;
+            }
+            if (actual != want) {
+                result.failures.add(key + ": expected " + want + ", got " + actual);
+            }
+        }
+    }
+
+    private static long parseValue(String key, String value) {
+        try {
+            return Long.decode(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value for " + key + ": " + value);
+        }
+    }
+
+    /**
+     * "0x10010000", "array" or "array+4" as a byte address
+     */
+    private static int address(String spec, AssembledProgram program) {
+        int plus = spec.indexOf('+');
+        String base = (plus < 0 ? spec : spec.substring(0, plus)).trim();
+        long offset = plus < 0 ? 0 : parseValue("@" + spec, spec.substring(plus + 1));
+        Integer symbol = program.getSymbol(base);
+        long address = symbol != null ? symbol : parseValue("@" + spec, base);
+        return (int) (address + offset);
+    }
+
+    // ---- Reports ----
+
+    public static void printFailures(List<Result> results, PrintStream out) {
+        for (Result r : results) {
+            if (r.error != null) {
+                out.println("ERROR " + r.name + ": " + r.error);
+            } else if (!r.failures.isEmpty()) {
+                out.println("FAIL  " + r.name);
+                for (String failure : r.failures) {
+                    out.println("      " + failure);
+                }
+            }
+        }
+    }
+
+    /**
+     * One JUnit testsuite with a testcase per program, as read by CI servers
+     */
+    public static void writeJUnit(List<Result> results, String suite, long elapsedNanos, Writer out)
+            throws IOException {
+        int failures = 0;
+        int errors = 0;
+        for (Result r : results) {
+            if (r.error != null) {
+                errors++;
+            } else if (!r.failures.isEmpty()) {
+                failures++;
+            }
+        }
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write(String.format(Locale.ROOT, "<testsuite name=\"%s\" tests=\"%d\" failures=\"%d\" errors=\"%d\""
+                + " skipped=\"0\" time=\"%.3f\">\n", xml(suite), results.size(), failures, errors,
+                elapsedNanos / 1e9));
+        for (Result r : results) {
+            out.write(String.format(Locale.ROOT, "  <testcase classname=\"%s\" name=\"%s\" time=\"%.6f\"",
+                    xml(suite), xml(r.name), (r.loadNanos + r.runNanos) / 1e9));
+            if (r.passed()) {
+                out.write("/>\n");
+                continue;
+            }
+            out.write(">\n");
+            if (r.error != null) {
+                out.write("    <error type=\"error\" message=\"" + xml(r.error) + "\"/>\n");
+            } else {
+                out.write("    <failure type=\"mismatch\" message=\"" + xml(r.failures.get(0)) + "\">"
+                        + xml(String.join("\n", r.failures)) + "</failure>\n");
+            }
+            out.write(String.format(Locale.ROOT, "    <system-out>cycles=%d stalls=%d instructions=%d"
+                    + " halted=%b</system-out>\n", r.cycles, r.stalls, r.instructions, r.halted));
+            out.write("  </testcase>\n");
+        }
+        out.write("</testsuite>\n");
+    }
+
+    /**
+     * Summary counts plus, per program, its status, final counters,
+     * load and run time and any mismatches
+     */
+    public static void writeJson(List<Result> results, String suite, int threads, long elapsedNanos, Writer out)
+            throws IOException {
+        int passed = 0;
+        int errors = 0;
+        for (Result r : results) {
+            if (r.passed()) {
+                passed++;
+            } else if (r.error != null) {
+                errors++;
+            }
+        }
+        out.write(String.format(Locale.ROOT, "{\n  \"suite\": %s,\n  \"threads\": %d,\n  \"tests\": %d,"
+                + "\n  \"passed\": %d,\n  \"failed\": %d,\n  \"errors\": %d,\n  \"elapsedMs\": %.3f,"
+                + "\n  \"results\": [", json(suite), threads, results.size(), passed,
+                results.size() - passed - errors, errors, elapsedNanos / 1e6));
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            out.write(i == 0 ? "\n" : ",\n");
+            out.write(String.format(Locale.ROOT, "    {\"program\": %s, \"status\": \"%s\", \"cycles\": %d,"
+                    + " \"stalls\": %d, \"instructions\": %d, \"cpi\": %.4f, \"halted\": %b, \"loadMs\": %.3f,"
+                    + " \"runMs\": %.3f", json(r.name), r.getStatus(), r.cycles, r.stalls, r.instructions,
+                    r.getCpi(), r.halted, r.loadNanos / 1e6, r.runNanos / 1e6));
+            if (r.error != null) {
+                out.write(", \"error\": " + json(r.error));
+            }
+            if (!r.failures.isEmpty()) {
+                out.write(", \"failures\": [");
+                for (int f = 0; f < r.failures.size(); f++) {
+                    out.write((f == 0 ? "" : ", ") + json(r.failures.get(f)));
+                }
+                out.write("]");
+            }
+            out.write("}");
+        }
+        out.write(results.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+    }
+
+    private static String xml(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                case '\n':
+                    sb.append("&#10;");
+                    break;
+                default:
+                    // Other control characters are not allowed in XML 1.0
+                    sb.append(c < 0x20 && c != '\t' && c != '\r' ? '?' : c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String json(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java BatchRunner directory [--threads N] [--max-cycles N]"
+                    + " [--junit results.xml] [--json results.json]");
+            System.exit(1);
+        }
+
+        Path directory = Paths.get(args[0]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxCycles = SweepRunner.DEFAULT_MAX_CYCLES;
+        Path junit = null;
+        Path json = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--max-cycles":
+                    maxCycles = Long.parseLong(args[++i]);
+                    break;
+                case "--junit":
+                    junit = Paths.get(args[++i]);
+                    break;
+                case "--json":
+                    json = Paths.get(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+
+        BatchRunner runner = new BatchRunner(directory, threads);
+        runner.setMaxCycles(maxCycles);
+        long start = System.nanoTime();
+        List<Result> results = runner.run(runner.findPrograms());
+        long elapsed = System.nanoTime() - start;
+        runner.shutdown();
+
+        String suite = directory.toAbsolutePath().normalize().getFileName() != null
+                ? directory.toAbsolutePath().normalize().getFileName().toString() : directory.toString();
+        if (junit != null) {
+            try (Writer out = Files.newBufferedWriter(junit)) {
+                writeJUnit(results, suite, elapsed, out);
+            }
+        }
+        if (json != null) {
+            try (Writer out = Files.newBufferedWriter(json)) {
+                writeJson(results, suite, threads, elapsed, out);
+            }
+        }
+
+        printFailures(results, System.out);
+        long passed = results.stream().filter(Result::passed).count();
+        System.out.printf("%d programs: %d passed, %d failed or errors, on %d thread%s in %.1f ms%n",
+                results.size(), passed, results.size() - passed, threads, threads == 1 ? "" : "s", elapsed / 1e6);
+        if (passed < results.size()) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// ==================== BINARY IMAGE ====================
+
+/**
+ * A program in machine code, read from disk:
+ * - a raw .bin file of big-endian instruction words, loaded at address 0
+ * - a 32-bit MIPS ELF executable (either byte order), from which the .text
+ *   section is loaded at its link address and execution starts at e_entry
+ *
+ * Usage: java BinaryImage program.asm program.bin   (assemble text to .bin)
+ */
+class BinaryImage {
+
+    private static final int EM_MIPS = 8;
+
+    final DecodedProgram program;
+
+    // Address of instruction 0
+    final int textBase;
+
+    // Instruction index where execution starts
+    final int entry;
+
+    private BinaryImage(DecodedProgram program, int textBase, int entry) {
+        this.program = program;
+        this.textBase = textBase;
+        this.entry = entry;
+    }
+
+    public static BinaryImage read(Path file) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.limit() >= 4 && data.getInt(0) == 0x7F454C46) { // "\177ELF"
+            return readElf(data, file);
+        }
+        return new BinaryImage(MachineCode.decode(words(data, 0, data.limit(), file), 0), 0, 0);
+    }
+
+    private static BinaryImage readElf(ByteBuffer elf, Path file) throws IOException {
+        if (elf.get(4) != 1) {
+            throw new IOException(file + ": not a 32-bit ELF file");
+        }
+        elf.order(elf.get(5) == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        if (elf.getShort(18) != EM_MIPS) {
+            throw new IOException(file + ": not a MIPS executable");
+        }
+
+        int entryAddress = elf.getInt(24);
+        int sectionTable = elf.getInt(32);
+        int sectionSize = elf.getShort(46) & 0xFFFF;
+        int sectionCount = elf.getShort(48) & 0xFFFF;
+        int namesSection = sectionTable + (elf.getShort(50) & 0xFFFF) * sectionSize;
+        int names = elf.getInt(namesSection + 16);
+
+        for (int i = 0; i < sectionCount; i++) {
+            int header = sectionTable + i * sectionSize;
+            if (!".text".equals(cString(elf, names + elf.getInt(header)))) {
+                continue;
+            }
+            int address = elf.getInt(header + 12);
+            int offset = elf.getInt(header + 16);
+            int size = elf.getInt(header + 20);
+            DecodedProgram program = MachineCode.decode(words(elf, offset, size, file), address);
+            return new BinaryImage(program, address, (entryAddress - address) >> 2);
+        }
+        throw new IOException(file + ": no .text section");
+    }
+
+    /**
+     * The size bytes at offset as instruction words; a partial last word
+     * means a truncated or misaligned image
+     */
+    private static int[] words(ByteBuffer data, int offset, int size, Path file) throws IOException {
+        if (size % 4 != 0) {
+            throw new IOException(file + ": code size " + size + " is not a multiple of 4 bytes");
+        }
+        int[] words = new int[size / 4];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = data.getInt(offset + i * 4);
+        }
+        return words;
+    }
+
+    private static String cString(ByteBuffer data, int offset) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = offset; i < data.limit() && data.get(i) != 0; i++) {
+            sb.append((char) data.get(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes instruction words as a raw big-endian .bin file
+     */
+    public static void writeBinary(Path file, int[] words) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(words.length * 4);
+        data.asIntBuffer().put(words);
+        Files.write(file, data.array());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java BinaryImage program.asm program.bin");
+            System.exit(1);
+        }
+        int[] words = MachineCode.encode(new ProgramLoader().load(Paths.get(args[0])).program, 0);
+        writeBinary(Paths.get(args[1]), words);
+        System.out.println("Wrote " + words.length + " instructions to " + args[1]);
+    }
+}
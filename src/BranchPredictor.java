@@ -0,0 +1,377 @@
+// ==================== BRANCH PREDICTOR ====================
+
+/**
+ * Predicts the next fetch PC after a branch (BEQ, BGEZ) or jump (J).
+ * The pipeline asks in IF, carries the prediction down to EX, and flushes
+ * the instruction in ID only when the resolved next PC differs from it.
+ * update() is called once per control instruction when it resolves (in EX,
+ * or in ID with early resolution), so predictor state is never touched by
+ * wrong-path instructions. Branches resolve a few cycles after they are
+ * predicted, so the history a prediction used travels with it and comes
+ * back to update().
+ *
+ * Direction predictors take the target from the pre-decoded instruction
+ * memory; the BTB has to remember targets itself, as real hardware would.
+ */
+interface BranchPredictor {
+
+    /**
+     * Always falls through: every taken branch or jump costs a flush.
+     * This is the pipeline's original behaviour and the default.
+     */
+    BranchPredictor NOT_TAKEN = new BranchPredictor() {
+        @Override
+        public int predict(int pc, boolean jump, int target) {
+            return pc + 1;
+        }
+
+        @Override
+        public String getName() {
+            return "not-taken";
+        }
+    };
+
+    /**
+     * Static backward-taken, forward-not-taken (loops are predicted taken);
+     * jumps are always taken
+     */
+    BranchPredictor BACKWARD_TAKEN = new BranchPredictor() {
+        @Override
+        public int predict(int pc, boolean jump, int target) {
+            return jump || target <= pc ? target : pc + 1;
+        }
+
+        @Override
+        public String getName() {
+            return "backward-taken";
+        }
+    };
+
+    /**
+     * Next fetch PC for the control instruction at pc, whose decoded target
+     * is target; jump is true for an unconditional jump
+     */
+    int predict(int pc, boolean jump, int target);
+
+    /**
+     * Global history the next predict() looks up with (0 for predictors
+     * without one); IF latches it next to the predicted PC
+     */
+    default int history() {
+        return 0;
+    }
+
+    /**
+     * Trains the predictor with the resolved outcome; history is what
+     * history() returned when this branch was predicted, so the entry that
+     * made the prediction is the one trained
+     */
+    default void update(int pc, boolean jump, boolean taken, int target, int history) {
+    }
+
+    String getName();
+
+    /**
+     * Checkpoint section: tables and history (nothing for a static
+     * predictor). restore() expects a predictor of the same kind and size.
+     */
+    default void save(Checkpoint.Writer out) throws java.io.IOException {
+    }
+
+    default void restore(Checkpoint.Reader in) throws java.io.IOException {
+    }
+
+    /**
+     * Builds a predictor from its name, optionally followed by the table
+     * size in index bits: not-taken, backward-taken, 1bit[:bits],
+     * 2bit[:bits], gshare[:bits], btb[:bits]. Stateful predictors are new
+     * instances on every call.
+     */
+    static BranchPredictor create(String spec) {
+        int colon = spec.indexOf(':');
+        String name = (colon < 0 ? spec : spec.substring(0, colon)).trim().toLowerCase();
+        int bits = colon < 0 ? 10 : Integer.parseInt(spec.substring(colon + 1).trim());
+        if (bits < 1 || bits > 24) {
+            throw new IllegalArgumentException("Predictor table size out of range (1-24 bits): " + spec);
+        }
+        switch (name) {
+            case "not-taken":
+                return NOT_TAKEN;
+            case "backward-taken":
+                return BACKWARD_TAKEN;
+            case "1bit":
+                return new OneBit(bits);
+            case "2bit":
+                return new TwoBit(bits);
+            case "gshare":
+                return new Gshare(bits);
+            case "btb":
+                return new TargetBuffer(bits);
+            default:
+                throw new IllegalArgumentException("Unknown branch predictor: " + spec);
+        }
+    }
+
+    /**
+     * One last-outcome bit per entry, indexed by the low bits of the PC
+     */
+    class OneBit implements BranchPredictor {
+
+        private final boolean[] taken;
+
+        private final int mask;
+
+        OneBit(int bits) {
+            taken = new boolean[1 << bits];
+            mask = taken.length - 1;
+        }
+
+        @Override
+        public int predict(int pc, boolean jump, int target) {
+            return jump || taken[pc & mask] ? target : pc + 1;
+        }
+
+        @Override
+        public void update(int pc, boolean jump, boolean taken, int target, int history) {
+            if (!jump) {
+                this.taken[pc & mask] = taken;
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "1bit:" + Integer.numberOfTrailingZeros(taken.length);
+        }
+
+        @Override
+        public void save(Checkpoint.Writer out) throws java.io.IOException {
+            long[] bits = new long[(taken.length + 63) / 64];
+            for (int i = 0; i < taken.length; i++) {
+                if (taken[i]) {
+                    bits[i >>> 6] |= 1L << i;
+                }
+            }
+            out.putSparse(bits);
+        }
+
+        @Override
+        public void restore(Checkpoint.Reader in) throws java.io.IOException {
+            long[] bits = new long[(taken.length + 63) / 64];
+            in.getSparse(bits);
+            for (int i = 0; i < taken.length; i++) {
+                taken[i] = (bits[i >>> 6] & 1L << i) != 0;
+            }
+        }
+    }
+
+    /**
+     * Two-bit saturating counters indexed by the low bits of the PC;
+     * counters start weakly not-taken
+     */
+    class TwoBit implements BranchPredictor {
+
+        final byte[] counters;
+
+        final int mask;
+
+        TwoBit(int bits) {
+            counters = new byte[1 << bits];
+            mask = counters.length - 1;
+            java.util.Arrays.fill(counters, (byte) 1);
+        }
+
+        int index(int pc, int history) {
+            return pc & mask;
+        }
+
+        @Override
+        public int predict(int pc, boolean jump, int target) {
+            return jump || counters[index(pc, history())] >= 2 ? target : pc + 1;
+        }
+
+        @Override
+        public void update(int pc, boolean jump, boolean taken, int target, int history) {
+            if (jump) {
+                return;
+            }
+            int i = index(pc, history);
+            byte counter = counters[i];
+            if (taken) {
+                counters[i] = counter < 3 ? (byte) (counter + 1) : counter;
+            } else {
+                counters[i] = counter > 0 ? (byte) (counter - 1) : counter;
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "2bit:" + Integer.numberOfTrailingZeros(counters.length);
+        }
+
+        /**
+         * Counters relative to their weakly not-taken start, so untouched
+         * entries cost nothing
+         */
+        @Override
+        public void save(Checkpoint.Writer out) throws java.io.IOException {
+            int[] deltas = new int[counters.length];
+            for (int i = 0; i < counters.length; i++) {
+                deltas[i] = counters[i] - 1;
+            }
+            out.putSparse(deltas, deltas.length);
+        }
+
+        @Override
+        public void restore(Checkpoint.Reader in) throws java.io.IOException {
+            int[] deltas = new int[counters.length];
+            in.getSparse(deltas);
+            for (int i = 0; i < counters.length; i++) {
+                if (deltas[i] < -1 || deltas[i] > 2) {
+                    throw in.corrupt("predictor counter " + (deltas[i] + 1));
+                }
+                counters[i] = (byte) (deltas[i] + 1);
+            }
+        }
+    }
+
+    /**
+     * Two-bit counters indexed by the PC XORed with the global history of
+     * conditional branch outcomes (as many history bits as index bits).
+     * The history shifts when a branch resolves; a branch is trained at the
+     * counter it was predicted with, not at the one the history since
+     * resolved branches would select.
+     */
+    class Gshare extends TwoBit {
+
+        private int history;
+
+        Gshare(int bits) {
+            super(bits);
+        }
+
+        @Override
+        int index(int pc, int history) {
+            return (pc ^ history) & mask;
+        }
+
+        @Override
+        public int history() {
+            return history;
+        }
+
+        @Override
+        public void update(int pc, boolean jump, boolean taken, int target, int history) {
+            if (jump) {
+                return;
+            }
+            super.update(pc, jump, taken, target, history);
+            this.history = ((this.history << 1) | (taken ? 1 : 0)) & mask;
+        }
+
+        @Override
+        public String getName() {
+            return "gshare:" + Integer.numberOfTrailingZeros(counters.length);
+        }
+
+        @Override
+        public void save(Checkpoint.Writer out) throws java.io.IOException {
+            super.save(out);
+            out.putVarInt(history);
+        }
+
+        @Override
+        public void restore(Checkpoint.Reader in) throws java.io.IOException {
+            super.restore(in);
+            history = in.getVarInt() & mask;
+        }
+    }
+
+    /**
+     * Direct-mapped branch target buffer: full-PC tag, cached target and a
+     * two-bit counter per entry. A miss falls through; an entry is
+     * allocated when a branch or jump is first taken.
+     */
+    class TargetBuffer implements BranchPredictor {
+
+        private final int[] tags;
+
+        private final int[] targets;
+
+        private final byte[] counters;
+
+        private final int mask;
+
+        TargetBuffer(int bits) {
+            tags = new int[1 << bits];
+            targets = new int[tags.length];
+            counters = new byte[tags.length];
+            mask = tags.length - 1;
+            java.util.Arrays.fill(tags, -1);
+        }
+
+        @Override
+        public int predict(int pc, boolean jump, int target) {
+            int i = pc & mask;
+            return tags[i] == pc && counters[i] >= 2 ? targets[i] : pc + 1;
+        }
+
+        @Override
+        public void update(int pc, boolean jump, boolean taken, int target, int history) {
+            int i = pc & mask;
+            if (tags[i] != pc) {
+                if (!taken) {
+                    return;
+                }
+                tags[i] = pc;
+                counters[i] = 2;
+            } else if (taken) {
+                counters[i] = counters[i] < 3 ? (byte) (counters[i] + 1) : counters[i];
+            } else {
+                counters[i] = counters[i] > 0 ? (byte) (counters[i] - 1) : counters[i];
+            }
+            if (taken) {
+                targets[i] = target;
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "btb:" + Integer.numberOfTrailingZeros(tags.length);
+        }
+
+        /**
+         * Tags are stored plus one, so invalid (-1) entries are the zeros
+         * the sparse encoding skips
+         */
+        @Override
+        public void save(Checkpoint.Writer out) throws java.io.IOException {
+            int[] stored = new int[tags.length];
+            for (int i = 0; i < tags.length; i++) {
+                stored[i] = tags[i] + 1;
+            }
+            out.putSparse(stored, stored.length);
+            out.putSparse(targets, targets.length);
+            for (int i = 0; i < tags.length; i++) {
+                stored[i] = counters[i];
+            }
+            out.putSparse(stored, stored.length);
+        }
+
+        @Override
+        public void restore(Checkpoint.Reader in) throws java.io.IOException {
+            int[] stored = new int[tags.length];
+            in.getSparse(stored);
+            for (int i = 0; i < tags.length; i++) {
+                tags[i] = stored[i] - 1;
+            }
+            in.getSparse(targets);
+            in.getSparse(stored);
+            for (int i = 0; i < tags.length; i++) {
+                if (stored[i] < 0 || stored[i] > 3) {
+                    throw in.corrupt("BTB counter " + stored[i]);
+                }
+                counters[i] = (byte) stored[i];
+            }
+        }
+    }
+}
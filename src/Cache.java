@@ -0,0 +1,402 @@
+// ==================== CACHE ====================
+
+/**
+ * Timing model of a set-associative cache. Only tags are kept (data stays
+ * in Memory): access() updates the tag state and returns the cycles the
+ * access costs beyond the pipeline stage - the hit latency (0 for an L1)
+ * plus, on a miss, the latency of the next level. Without a next level a
+ * fixed miss penalty is charged.
+ *
+ * Tags, dirty bits and replacement stamps live in flat arrays indexed by
+ * set * ways + way, so a lookup is a short scan of one set.
+ *
+ * Write-back caches allocate on a write miss and first write a dirty
+ * victim back to the next level. Write-through caches do not allocate on a
+ * write miss and send every store to the next level through a write buffer
+ * that never stalls.
+ */
+class Cache implements MemoryLevel {
+
+    enum Replacement { LRU, FIFO, RANDOM }
+
+    enum WritePolicy { WRITE_BACK, WRITE_THROUGH }
+
+    private final String name;
+
+    private final int sizeBytes;
+
+    private final int ways;
+
+    private final int lineBytes;
+
+    private final Replacement replacement;
+
+    private final WritePolicy writePolicy;
+
+    // Cycles to bring a line in when there is no next level
+    private final int missPenalty;
+
+    // Cycles charged on every access, hit or miss (0 for an L1)
+    private int hitLatency;
+
+    // Level behind this one (L2, DRAM), null for a fixed miss penalty
+    private MemoryLevel next;
+
+    private final int lineBits;
+
+    private final int setMask;
+
+    // Line address (address >>> lineBits) held by each way, -1 when invalid
+    private final int[] tags;
+
+    private final boolean[] dirty;
+
+    // Last use (LRU) or fill (FIFO) time of each way
+    private final long[] stamps;
+
+    private long clock;
+
+    private int random = 0x2545F491;
+
+    private long reads, writes, readMisses, writeMisses, writebacks, writeThroughs;
+
+    // Sum of the latencies returned by access()
+    private long totalLatency;
+
+    public Cache(String name, int sizeBytes, int ways, int lineBytes, Replacement replacement,
+            WritePolicy writePolicy, int missPenalty) {
+        if (Integer.bitCount(lineBytes) != 1 || lineBytes < 4) {
+            throw new IllegalArgumentException(name + ": line size must be a power of two >= 4: " + lineBytes);
+        }
+        if (ways < 1 || sizeBytes % (ways * lineBytes) != 0 || Integer.bitCount(sizeBytes / (ways * lineBytes)) != 1) {
+            throw new IllegalArgumentException(name + ": size / (ways * line size) must be a power of two");
+        }
+        if (missPenalty < 0) {
+            throw new IllegalArgumentException(name + ": negative miss penalty");
+        }
+        this.name = name;
+        this.sizeBytes = sizeBytes;
+        this.ways = ways;
+        this.lineBytes = lineBytes;
+        this.replacement = replacement;
+        this.writePolicy = writePolicy;
+        this.missPenalty = missPenalty;
+        lineBits = Integer.numberOfTrailingZeros(lineBytes);
+        setMask = sizeBytes / (ways * lineBytes) - 1;
+        tags = new int[sizeBytes / lineBytes];
+        dirty = new boolean[tags.length];
+        stamps = new long[tags.length];
+        java.util.Arrays.fill(tags, -1);
+    }
+
+    /**
+     * Parses "size:ways:line[:lru|fifo|random][:wb|wt][:penalty]", e.g.
+     * "8k:2:32:lru:wb:10"; sizes take a k or m suffix. Defaults: LRU,
+     * write-back, 10-cycle miss penalty.
+     */
+    public static Cache parse(String name, String spec) {
+        String[] parts = spec.split(":");
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("Cache spec must be size:ways:line[:lru|fifo|random][:wb|wt][:penalty]: "
+                    + spec);
+        }
+        Replacement replacement = Replacement.LRU;
+        WritePolicy writePolicy = WritePolicy.WRITE_BACK;
+        int penalty = 10;
+        for (int i = 3; i < parts.length; i++) {
+            switch (parts[i].toLowerCase()) {
+                case "lru":
+                    replacement = Replacement.LRU;
+                    break;
+                case "fifo":
+                    replacement = Replacement.FIFO;
+                    break;
+                case "random":
+                    replacement = Replacement.RANDOM;
+                    break;
+                case "wb":
+                    writePolicy = WritePolicy.WRITE_BACK;
+                    break;
+                case "wt":
+                    writePolicy = WritePolicy.WRITE_THROUGH;
+                    break;
+                default:
+                    penalty = Integer.parseInt(parts[i]);
+            }
+        }
+        return new Cache(name, size(parts[0]), Integer.parseInt(parts[1]), size(parts[2]), replacement, writePolicy,
+                penalty);
+    }
+
+    static int size(String text) {
+        String s = text.trim().toLowerCase();
+        if (s.endsWith("k")) {
+            return Integer.parseInt(s.substring(0, s.length() - 1)) << 10;
+        }
+        if (s.endsWith("m")) {
+            return Integer.parseInt(s.substring(0, s.length() - 1)) << 20;
+        }
+        return Integer.parseInt(s);
+    }
+
+    /**
+     * Sends misses, writebacks and write-throughs to next (null for the
+     * fixed miss penalty)
+     */
+    public void setNextLevel(MemoryLevel next) {
+        this.next = next;
+    }
+
+    public MemoryLevel getNextLevel() {
+        return next;
+    }
+
+    public void setHitLatency(int hitLatency) {
+        if (hitLatency < 0) {
+            throw new IllegalArgumentException(name + ": negative hit latency");
+        }
+        this.hitLatency = hitLatency;
+    }
+
+    /**
+     * Looks up the line holding address and returns the cycles the access
+     * costs
+     */
+    @Override
+    public int access(int address, boolean write) {
+        int latency = lookup(address, write);
+        totalLatency += latency;
+        return latency;
+    }
+
+    private int lookup(int address, boolean write) {
+        int line = address >>> lineBits;
+        int base = (line & setMask) * ways;
+        if (write) {
+            writes++;
+        } else {
+            reads++;
+        }
+
+        for (int i = base; i < base + ways; i++) {
+            if (tags[i] == line) {
+                if (replacement == Replacement.LRU) {
+                    stamps[i] = ++clock;
+                }
+                if (write) {
+                    if (writePolicy == WritePolicy.WRITE_BACK) {
+                        dirty[i] = true;
+                    } else {
+                        writeThrough(address);
+                    }
+                }
+                return hitLatency;
+            }
+        }
+
+        if (write) {
+            writeMisses++;
+            if (writePolicy == WritePolicy.WRITE_THROUGH) {
+                // No write-allocate: the store goes straight to the write buffer
+                writeThrough(address);
+                return hitLatency;
+            }
+        } else {
+            readMisses++;
+        }
+
+        int victim = victim(base);
+        int latency = hitLatency;
+        if (tags[victim] != -1 && dirty[victim]) {
+            writebacks++;
+            latency += next != null ? next.access(tags[victim] << lineBits, true) : missPenalty;
+        }
+        latency += next != null ? next.access(line << lineBits, false) : missPenalty;
+        tags[victim] = line;
+        dirty[victim] = write;
+        stamps[victim] = ++clock;
+        return latency;
+    }
+
+    /**
+     * A store leaves through the write buffer: the next level sees it, the
+     * pipeline does not wait for it
+     */
+    private void writeThrough(int address) {
+        writeThroughs++;
+        if (next != null) {
+            next.access(address, true);
+        }
+    }
+
+    private int victim(int base) {
+        for (int i = base; i < base + ways; i++) {
+            if (tags[i] == -1) {
+                return i;
+            }
+        }
+        if (replacement == Replacement.RANDOM) {
+            // xorshift32
+            random ^= random << 13;
+            random ^= random >>> 17;
+            random ^= random << 5;
+            return base + Integer.remainderUnsigned(random, ways);
+        }
+        int victim = base;
+        for (int i = base + 1; i < base + ways; i++) {
+            if (stamps[i] < stamps[victim]) {
+                victim = i;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Invalidates every line and clears the statistics
+     */
+    @Override
+    public void reset() {
+        java.util.Arrays.fill(tags, -1);
+        java.util.Arrays.fill(dirty, false);
+        java.util.Arrays.fill(stamps, 0);
+        clock = 0;
+        reads = writes = readMisses = writeMisses = writebacks = writeThroughs = totalLatency = 0;
+    }
+
+    /**
+     * Tags go plus one, so invalid (-1) ways are the zeros the sparse
+     * encoding skips; dirty bits are packed 64 to a long
+     */
+    @Override
+    public void save(Checkpoint.Writer out) throws java.io.IOException {
+        int[] stored = new int[tags.length];
+        long[] dirtyBits = new long[(tags.length + 63) / 64];
+        for (int i = 0; i < tags.length; i++) {
+            stored[i] = tags[i] + 1;
+            if (dirty[i]) {
+                dirtyBits[i >>> 6] |= 1L << i;
+            }
+        }
+        out.putSparse(stored, stored.length);
+        out.putSparse(dirtyBits);
+        out.putSparse(stamps);
+        out.putVarLong(clock);
+        out.putInt(random);
+        for (long count : new long[] { reads, writes, readMisses, writeMisses, writebacks, writeThroughs,
+                totalLatency }) {
+            out.putVarLong(count);
+        }
+    }
+
+    @Override
+    public void restore(Checkpoint.Reader in) throws java.io.IOException {
+        int[] stored = new int[tags.length];
+        long[] dirtyBits = new long[(tags.length + 63) / 64];
+        in.getSparse(stored);
+        in.getSparse(dirtyBits);
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = stored[i] - 1;
+            dirty[i] = (dirtyBits[i >>> 6] & 1L << i) != 0;
+        }
+        in.getSparse(stamps);
+        clock = in.getVarLong();
+        random = in.getInt();
+        reads = in.getVarLong();
+        writes = in.getVarLong();
+        readMisses = in.getVarLong();
+        writeMisses = in.getVarLong();
+        writebacks = in.getVarLong();
+        writeThroughs = in.getVarLong();
+        totalLatency = in.getVarLong();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getAccesses() {
+        return reads + writes;
+    }
+
+    @Override
+    public double getAverageLatency() {
+        long accesses = getAccesses();
+        return accesses == 0 ? 0.0 : (double) totalLatency / accesses;
+    }
+
+    public double getMissRate() {
+        long accesses = getAccesses();
+        return accesses == 0 ? 0.0 : (double) getMisses() / accesses;
+    }
+
+    public long getMisses() {
+        return readMisses + writeMisses;
+    }
+
+    public long getHits() {
+        return getAccesses() - getMisses();
+    }
+
+    public double getHitRate() {
+        long accesses = getAccesses();
+        return accesses == 0 ? 0.0 : (double) getHits() / accesses;
+    }
+
+    public long getReadMisses() {
+        return readMisses;
+    }
+
+    public long getWriteMisses() {
+        return writeMisses;
+    }
+
+    /**
+     * Dirty lines written back to the next level on eviction
+     */
+    public long getWritebacks() {
+        return writebacks;
+    }
+
+    /**
+     * Stores forwarded to the next level by a write-through cache
+     */
+    public long getWriteThroughs() {
+        return writeThroughs;
+    }
+
+    public int getMissPenalty() {
+        return missPenalty;
+    }
+
+    /**
+     * Geometry and policies, e.g. "8KB 2-way 32B lines, LRU, write-back, 10-cycle miss"
+     */
+    @Override
+    public String describe() {
+        String timing = next != null ? "misses to " + next.getName() : missPenalty + "-cycle miss";
+        if (hitLatency > 0) {
+            timing = hitLatency + "-cycle hit, " + timing;
+        }
+        return String.format("%s %d-way %dB lines, %s, %s, %s", sizeText(sizeBytes), ways, lineBytes, replacement,
+                writePolicy == WritePolicy.WRITE_BACK ? "write-back" : "write-through", timing);
+    }
+
+    /**
+     * bytes as "8KB", "1MB" or "48B"
+     */
+    static String sizeText(int bytes) {
+        return bytes % (1 << 20) == 0 ? (bytes >> 20) + "MB" : bytes % 1024 == 0 ? (bytes >> 10) + "KB" : bytes + "B";
+    }
+
+    /**
+     * One-line statistics summary
+     */
+    @Override
+    public String report() {
+        return String.format("%s (%s): %d accesses, %.2f%% hits, %d read misses, %d write misses, %d writebacks"
+                        + ", %d write-throughs, %.2f cycles/access", name, describe(), getAccesses(),
+                getHitRate() * 100, readMisses, writeMisses, writebacks, writeThroughs, getAverageLatency());
+    }
+}
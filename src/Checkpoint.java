@@ -0,0 +1,270 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// ==================== CHECKPOINT ====================
+
+/**
+ * Binary checkpoint file of a MIPSSimulator (see saveCheckpoint and
+ * restoreCheckpoint). The file is streamed through a FileChannel with a
+ * direct buffer; every component writes its own section with the
+ * primitives below, in a fixed order, after this header:
+ *
+ *   int magic "MIPC", int version, long program fingerprint,
+ *   long configuration fingerprint
+ *
+ * Counts, indexes and gaps are unsigned LEB128 varints and signed deltas
+ * are zigzag varints, so the sparse parts (memory pages, per-PC counters)
+ * shrink to a few bytes per non-zero entry.
+ */
+final class Checkpoint {
+
+    static final int MAGIC = 0x4D495043; // "MIPC"
+
+    static final int VERSION = 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private Checkpoint() {
+    }
+
+    /**
+     * Writes values to a new checkpoint file; close() flushes it
+     */
+    static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Writer(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putBoolean(boolean value) throws IOException {
+            ensure(1);
+            buffer.put((byte) (value ? 1 : 0));
+        }
+
+        /**
+         * Unsigned varint: 7 bits per byte, high bit set on all but the last
+         */
+        void putVarLong(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void putVarInt(int value) throws IOException {
+            putVarLong(value & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Signed varint: small magnitudes of either sign stay short
+         */
+        void putZigZag(long value) throws IOException {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Non-zero entries of values as (index gap, zigzag delta from the
+         * previous non-zero value) pairs after their count
+         */
+        void putSparse(long[] values) throws IOException {
+            int count = 0;
+            for (long value : values) {
+                if (value != 0) {
+                    count++;
+                }
+            }
+            putVarInt(count);
+            int last = -1;
+            long previous = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != 0) {
+                    putVarInt(i - last - 1);
+                    putZigZag(values[i] - previous);
+                    last = i;
+                    previous = values[i];
+                }
+            }
+        }
+
+        /**
+         * Same encoding as putSparse for the words [0, length) of values
+         */
+        void putSparse(int[] values, int length) throws IOException {
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                if (values[i] != 0) {
+                    count++;
+                }
+            }
+            putVarInt(count);
+            int last = -1;
+            int previous = 0;
+            for (int i = 0; i < length; i++) {
+                if (values[i] != 0) {
+                    putVarInt(i - last - 1);
+                    putZigZag((long) values[i] - previous);
+                    last = i;
+                    previous = values[i];
+                }
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Reads back the values of a Writer, in the same order
+     */
+    static final class Reader implements Closeable {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        private final Path file;
+
+        Reader(Path file) throws IOException {
+            this.file = file;
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer.flip();
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return buffer.getLong();
+        }
+
+        boolean getBoolean() throws IOException {
+            ensure(1);
+            return buffer.get() != 0;
+        }
+
+        long getVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                ensure(1);
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw corrupt("varint too long");
+        }
+
+        int getVarInt() throws IOException {
+            return (int) getVarLong();
+        }
+
+        long getZigZag() throws IOException {
+            long value = getVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Reads a putSparse(long[]) section into values, clearing the rest
+         */
+        void getSparse(long[] values) throws IOException {
+            java.util.Arrays.fill(values, 0);
+            int count = getVarInt();
+            int index = -1;
+            long value = 0;
+            for (int n = 0; n < count; n++) {
+                index += getVarInt() + 1;
+                value += getZigZag();
+                if (index < 0 || index >= values.length) {
+                    throw corrupt("sparse index " + index + " out of range");
+                }
+                values[index] = value;
+            }
+        }
+
+        /**
+         * Reads a putSparse(int[], length) section into values, clearing the rest
+         */
+        void getSparse(int[] values) throws IOException {
+            java.util.Arrays.fill(values, 0);
+            int count = getVarInt();
+            int index = -1;
+            int value = 0;
+            for (int n = 0; n < count; n++) {
+                index += getVarInt() + 1;
+                value += (int) getZigZag();
+                if (index < 0 || index >= values.length) {
+                    throw corrupt("sparse index " + index + " out of range");
+                }
+                values[index] = value;
+            }
+        }
+
+        IOException corrupt(String message) {
+            return new IOException(file + ": corrupt checkpoint (" + message + ")");
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException(file + ": truncated checkpoint");
+                }
+            }
+            buffer.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.PrintStream;
+
+// ==================== CONSOLE LOGGER ====================
+
+/**
+ * PipelineListener that prints the classic cycle-by-cycle text trace
+ */
+class ConsoleLogger implements PipelineListener {
+
+    private final PrintStream out;
+
+    // Cause of the stall reported next, set by the hazard event before it
+    private String stallCause = "Load-Use Hazard";
+
+    public ConsoleLogger() {
+        this(System.out);
+    }
+
+    public ConsoleLogger(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void simulationStarted() {
+        out.println("=== Starting MIPS Pipeline Simulation ===\n");
+    }
+
+    @Override
+    public void cycleStarted(int cycle) {
+        out.println("\n--- Cycle " + cycle + " ---");
+    }
+
+    @Override
+    public void fetched(int pc, int opcode) {
+        out.println("IF: Fetched " + MicroOp.mnemonic(opcode) + " at PC=" + pc);
+    }
+
+    @Override
+    public void decoded(int pc, int opcode) {
+        out.println("ID: Decoded " + MicroOp.mnemonic(opcode));
+    }
+
+    @Override
+    public void loadUseHazard(int register, int loadOpcode, int opcode) {
+        out.println("  [HAZARD DETECTED] Load-Use on $" + register + ": " + MicroOp.mnemonic(loadOpcode) + " -> "
+                + MicroOp.mnemonic(opcode));
+    }
+
+    @Override
+    public void stalled(int pc) {
+        out.println("ID: STALL detected (" + stallCause + ")");
+        stallCause = "Load-Use Hazard";
+    }
+
+    @Override
+    public void branchHazard(int register, int producerOpcode, int branchOpcode) {
+        out.println("  [HAZARD DETECTED] Branch operand $" + register + " not ready: "
+                + MicroOp.mnemonic(producerOpcode) + " -> " + MicroOp.mnemonic(branchOpcode));
+        stallCause = "Branch Operand Hazard";
+    }
+
+    @Override
+    public void multiplyDivideHazard(int producerOpcode, int opcode, int cyclesLeft) {
+        if (producerOpcode == opcode) {
+            out.println("  [STRUCTURAL HAZARD] " + (opcode == MicroOp.DIV ? "Divider" : "Multiplier")
+                    + " busy for " + cyclesLeft + " more cycle(s): " + MicroOp.mnemonic(opcode) + " waits");
+            stallCause = "Functional Unit Busy";
+        } else {
+            out.println("  [HAZARD DETECTED] HI/LO not ready for " + cyclesLeft + " more cycle(s): "
+                    + MicroOp.mnemonic(producerOpcode) + " -> " + MicroOp.mnemonic(opcode));
+            stallCause = "HI/LO Hazard";
+        }
+    }
+
+    @Override
+    public void forwarded(int register, int oldValue, int newValue) {
+        out.println("  [HAZARD SOLVED] Forwarding $" + register + ": " + oldValue + " -> " + newValue);
+    }
+
+    @Override
+    public void branchTaken(int pc, int target) {
+        out.println("  [CONTROL HAZARD] Branch taken - flushing pipeline");
+        out.println("EX: Branch taken to PC=" + target);
+    }
+
+    @Override
+    public void jumpTaken(int pc, int target) {
+        out.println("  [CONTROL HAZARD] Jump taken - flushing pipeline");
+        out.println("EX: Jump to PC=" + target);
+    }
+
+    @Override
+    public void branchPredicted(int pc, int target) {
+        out.println("EX: Branch to PC=" + target + " was predicted - no flush");
+    }
+
+    @Override
+    public void branchMispredicted(int pc, int nextPc) {
+        out.println("  [CONTROL HAZARD] Branch not taken (mispredicted) - flushing pipeline");
+        out.println("EX: Resume at PC=" + nextPc);
+    }
+
+    @Override
+    public void decodeRedirected(int pc, int nextPc) {
+        out.println("ID: Branch resolved - fetch redirected to PC=" + nextPc);
+    }
+
+    @Override
+    public void executed(int pc, int opcode, int result) {
+        out.println("EX: " + MicroOp.mnemonic(opcode) + " result=" + result);
+    }
+
+    @Override
+    public void cacheMiss(int pc, int address, boolean instruction, int latency) {
+        out.println("  [CACHE MISS] " + (instruction ? "I-cache" : "D-cache") + " at address " + address
+                + " (PC=" + pc + ") - stalling " + latency + " cycles");
+    }
+
+    @Override
+    public void memoryLoaded(int address, int value) {
+        out.println("MEM: Load from address " + address + " = " + value);
+    }
+
+    @Override
+    public void memoryStored(int address, int value) {
+        out.println("MEM: Store " + value + " to address " + address);
+    }
+
+    @Override
+    public void wroteBack(int register, int value) {
+        out.println("WB: Write " + value + " to $" + register);
+    }
+
+    @Override
+    public void cycleEnded(int ifIdOpcode, int idExOpcode, int exMemOpcode, int memWbOpcode) {
+        out.println("\nPipeline State:");
+        out.println("  IF/ID:  " + stageName(ifIdOpcode));
+        out.println("  ID/EX:  " + stageName(idExOpcode));
+        out.println("  EX/MEM: " + stageName(exMemOpcode));
+        out.println("  MEM/WB: " + stageName(memWbOpcode));
+    }
+
+    @Override
+    public void simulationCompleted(int cycles) {
+        out.println("\n=== Simulation Complete ===");
+    }
+
+    @Override
+    public void finalState(MIPSSimulator simulator) {
+        out.println("Total cycles: " + simulator.getCycles());
+        out.println("Total stalls: " + simulator.getStallCount());
+        if (simulator.getInstructionCache() != null || simulator.getDataCache() != null) {
+            out.print(simulator.memoryReport());
+        }
+
+        simulator.getRegFile().printRegisters(out);
+
+        simulator.getMemory().printMemory(0, 100, out);
+    }
+
+    @Override
+    public void hotSpots(MIPSSimulator simulator, int topN) {
+        out.println();
+        out.print(simulator.hotSpotReport(topN));
+    }
+
+    private static String stageName(int opcode) {
+        return opcode != MicroOp.NONE ? MicroOp.mnemonic(opcode) : "empty";
+    }
+}
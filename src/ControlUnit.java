@@ -50,6 +50,28 @@ class ControlUnit {
 
                 
 
+            // Multiply/Divide write HI/LO, not a general register
+
+            case "MULT": case "DIV":
+
+                aluOp = 2; // R-type
+
+                break;
+
+                
+
+            case "MFHI": case "MFLO":
+
+                regWrite = true;
+
+                regDst = true;
+
+                aluOp = 2; // R-type
+
+                break;
+
+                
+
             // I-Type instructions
 
             case "ADDI":
@@ -0,0 +1,336 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// ==================== CYCLE HISTORY ====================
+
+/**
+ * Bounded record of the most recent cycles of a MIPSSimulator, so a viewer
+ * can step back or jump to any of them without re-running the program
+ * (see MIPSSimulator.setHistory). The simulator itself never goes back;
+ * the history only rebuilds what it looked like.
+ *
+ * The history is a ring of segments. A segment starts with a full
+ * snapshot (registers, HI/LO, memory, stage PCs, stall count) and then
+ * holds up to snapshotInterval cycles, each as its stage PCs, its stall
+ * count and the deltas it made: register, HI/LO and memory words written,
+ * with their old and new values. A cycle is rebuilt from the nearer of the
+ * snapshots around it, by redoing deltas forward from its own segment's
+ * snapshot or undoing them back from the next one, so the cost is at most
+ * half a segment of deltas. When the ring is full the oldest segment is
+ * reused, so memory stays bounded by maxSnapshots segments.
+ *
+ * A rebuilt State is what a viewer shows: architectural state plus which
+ * instruction occupied each stage. The contents of the pipeline latches,
+ * in-flight cache misses and MULT/DIV operations, predictor and cache state
+ * are not recorded, so a past cycle can be displayed but not resumed from;
+ * that is what checkpoints are for (MIPSSimulator.saveCheckpoint).
+ */
+class CycleHistory {
+
+    // Delta targets: memory words by their (word-aligned) address, registers
+    // as (number << 2) | 1 so they never collide with an address
+    private static final int HI = 32, LO = 33;
+
+    private final int snapshotInterval;
+
+    private final Segment[] segments;
+
+    // Ring position of the oldest segment and number of segments in use
+    private int first;
+
+    private int count;
+
+    private int[] changedPages = new int[16];
+
+    public CycleHistory(int snapshotInterval, int maxSnapshots) {
+        if (snapshotInterval < 1 || maxSnapshots < 1) {
+            throw new IllegalArgumentException("Snapshot interval and count must be positive");
+        }
+        this.snapshotInterval = snapshotInterval;
+        segments = new Segment[maxSnapshots];
+    }
+
+    /**
+     * Most cycles kept before the oldest are dropped
+     */
+    public int getCapacity() {
+        return snapshotInterval * segments.length;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Oldest cycle that can be rebuilt, -1 while empty
+     */
+    public int getFirstCycle() {
+        return count == 0 ? -1 : segments[first].startCycle;
+    }
+
+    /**
+     * Most recent cycle recorded, -1 while empty
+     */
+    public int getLastCycle() {
+        if (count == 0) {
+            return -1;
+        }
+        Segment last = segment(count - 1);
+        return last.startCycle + last.cycles;
+    }
+
+    public boolean contains(int cycle) {
+        return count > 0 && cycle >= getFirstCycle() && cycle <= getLastCycle();
+    }
+
+    /**
+     * State of the simulator at the end of cycle
+     */
+    public State stateAt(int cycle) {
+        if (!contains(cycle)) {
+            throw new IndexOutOfBoundsException("Cycle " + cycle + " not in history [" + getFirstCycle() + ", "
+                    + getLastCycle() + "]");
+        }
+        // A cycle on a segment boundary is the next segment's snapshot
+        int index = Math.min((cycle - getFirstCycle()) / snapshotInterval, count - 1);
+        Segment s = segment(index);
+        int entries = cycle - s.startCycle;
+        int end = entries == 0 ? 0 : s.deltaEnd[entries - 1];
+        State state;
+        if (end > s.deltas / 2 && index + 1 < count) {
+            // Nearer the next snapshot: undo the rest of this segment
+            state = new State(cycle, segment(index + 1));
+            for (int i = s.deltas - 1; i >= end; i--) {
+                state.apply(s.targets[i], s.oldValues[i]);
+            }
+        } else {
+            state = new State(cycle, s);
+            for (int i = 0; i < end; i++) {
+                state.apply(s.targets[i], s.newValues[i]);
+            }
+        }
+        if (entries > 0) {
+            System.arraycopy(s.stages, (entries - 1) * 5, state.stagePcs, 0, 5);
+            state.stalls = s.stalls[entries - 1];
+        }
+        return state;
+    }
+
+    // ---- Recording, called by MIPSSimulator ----
+
+    /**
+     * Drops everything recorded and starts over from the simulator's
+     * current state (on attach, after fast-forward or a checkpoint restore)
+     */
+    void restart(MIPSSimulator sim, int ifPc, int idPc, int exPc, int memPc, int wbPc) {
+        first = 0;
+        count = 0;
+        startSegment(sim, ifPc, idPc, exPc, memPc, wbPc);
+    }
+
+    void registerWritten(int register, int oldValue, int newValue) {
+        if (register != 0) {
+            segment(count - 1).add(register << 2 | 1, oldValue, newValue);
+        }
+    }
+
+    void hiLoWritten(int oldHi, int oldLo, int hi, int lo) {
+        Segment s = segment(count - 1);
+        s.add(HI << 2 | 1, oldHi, hi);
+        s.add(LO << 2 | 1, oldLo, lo);
+    }
+
+    void memoryStored(int address, int oldValue, int newValue) {
+        segment(count - 1).add(address & ~3, oldValue, newValue);
+    }
+
+    /**
+     * Closes the cycle the simulator just ran, with the deltas added since
+     * the previous one, and takes a snapshot every snapshotInterval cycles
+     */
+    void cycleEnded(MIPSSimulator sim, int ifPc, int idPc, int exPc, int memPc, int wbPc) {
+        Segment s = segment(count - 1);
+        int i = s.cycles++;
+        int at = i * 5;
+        s.stages[at] = ifPc;
+        s.stages[at + 1] = idPc;
+        s.stages[at + 2] = exPc;
+        s.stages[at + 3] = memPc;
+        s.stages[at + 4] = wbPc;
+        s.stalls[i] = sim.getStallCount();
+        s.deltaEnd[i] = s.deltas;
+        if (s.cycles == snapshotInterval) {
+            if (count == segments.length) {
+                first = (first + 1) % segments.length;
+                count--;
+            }
+            startSegment(sim, ifPc, idPc, exPc, memPc, wbPc);
+        }
+    }
+
+    private void startSegment(MIPSSimulator sim, int ifPc, int idPc, int exPc, int memPc, int wbPc) {
+        int index = (first + count) % segments.length;
+        if (segments[index] == null) {
+            segments[index] = new Segment(snapshotInterval);
+        }
+        count++;
+        Segment s = segments[index];
+        s.startCycle = sim.getCycles();
+        s.startStalls = sim.getStallCount();
+        s.startStages[0] = ifPc;
+        s.startStages[1] = idPc;
+        s.startStages[2] = exPc;
+        s.startStages[3] = memPc;
+        s.startStages[4] = wbPc;
+        RegisterFile regFile = sim.getRegFile();
+        for (int r = 0; r < 32; r++) {
+            s.registers[r] = regFile.read(r);
+        }
+        s.registers[HI] = regFile.readHi();
+        s.registers[LO] = regFile.readLo();
+        if (count == 1) {
+            s.memory = sim.getMemory().copy();
+        } else {
+            // Share the pages the previous segment did not store to
+            Segment previous = segment(count - 2);
+            int pages = changedPages(previous);
+            s.memory = sim.getMemory().copy(previous.memory, changedPages, pages);
+        }
+        s.cycles = 0;
+        s.deltas = 0;
+    }
+
+    /**
+     * Sorted numbers of the pages s stored to, left in changedPages;
+     * returns how many
+     */
+    private int changedPages(Segment s) {
+        int n = 0;
+        for (int i = 0; i < s.deltas; i++) {
+            if ((s.targets[i] & 1) == 0) {
+                if (n == changedPages.length) {
+                    changedPages = java.util.Arrays.copyOf(changedPages, n * 2);
+                }
+                changedPages[n++] = s.targets[i] >>> Memory.PAGE_SHIFT;
+            }
+        }
+        java.util.Arrays.sort(changedPages, 0, n);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || changedPages[i] != changedPages[unique - 1]) {
+                changedPages[unique++] = changedPages[i];
+            }
+        }
+        return unique;
+    }
+
+    private Segment segment(int n) {
+        return segments[(first + n) % segments.length];
+    }
+
+    /**
+     * Snapshot plus the cycles that follow it
+     */
+    private static final class Segment {
+
+        int startCycle;
+
+        int startStalls;
+
+        final int[] startStages = new int[5];
+
+        // $0..$31, HI, LO
+        final int[] registers = new int[34];
+
+        Memory memory;
+
+        // Cycles recorded after the snapshot, each with its stage PCs, stall
+        // count and the end of its deltas
+        int cycles;
+
+        final int[] stages;
+
+        final int[] stalls;
+
+        final int[] deltaEnd;
+
+        int deltas;
+
+        int[] targets, oldValues, newValues;
+
+        Segment(int interval) {
+            stages = new int[interval * 5];
+            stalls = new int[interval];
+            deltaEnd = new int[interval];
+            targets = new int[interval];
+            oldValues = new int[interval];
+            newValues = new int[interval];
+        }
+
+        void add(int target, int oldValue, int newValue) {
+            if (deltas == targets.length) {
+                targets = java.util.Arrays.copyOf(targets, deltas * 2);
+                oldValues = java.util.Arrays.copyOf(oldValues, deltas * 2);
+                newValues = java.util.Arrays.copyOf(newValues, deltas * 2);
+            }
+            targets[deltas] = target;
+            oldValues[deltas] = oldValue;
+            newValues[deltas] = newValue;
+            deltas++;
+        }
+    }
+
+    /**
+     * Rebuilt state of one past cycle: the segment snapshot overlaid with
+     * the words written after it. Stage PCs and the stall count only; see
+     * the class comment for what is not kept.
+     */
+    static final class State {
+
+        final int cycle;
+
+        int stalls;
+
+        // PC in IF..WB, -1 for a bubble
+        final int[] stagePcs = new int[5];
+
+        private final int[] registers;
+
+        private final Memory snapshot;
+
+        private final Map<Integer, Integer> stored = new HashMap<>();
+
+        private State(int cycle, Segment s) {
+            this.cycle = cycle;
+            stalls = s.startStalls;
+            System.arraycopy(s.startStages, 0, stagePcs, 0, 5);
+            registers = s.registers.clone();
+            snapshot = s.memory;
+        }
+
+        private void apply(int target, int value) {
+            if ((target & 1) != 0) {
+                registers[target >>> 2] = value;
+            } else {
+                stored.put(target, value);
+            }
+        }
+
+        public int register(int number) {
+            return registers[number];
+        }
+
+        public int hi() {
+            return registers[HI];
+        }
+
+        public int lo() {
+            return registers[LO];
+        }
+
+        public int load(int address) {
+            Integer value = stored.get(address & ~3);
+            return value != null ? value : snapshot.load(address);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.Arrays;
+
+// ==================== DECODED PROGRAM ====================
+
+/**
+ * Instruction memory holding the pre-decoded program as parallel int arrays
+ * (see MicroOp for the encoding). Slot i holds the instruction at PC i; a
+ * control word of 0 marks a slot that did not hold a valid instruction.
+ * Loaders that do not know the program size up front append to a growable
+ * program and call trimToSize() when done.
+ */
+final class DecodedProgram {
+
+    int[] control;
+
+    int[] registers;
+
+    int[] immediate;
+
+    // Number of slots in use (the arrays may have spare capacity)
+    private int size;
+
+    // Control word of every opcode, built once from the ControlUnit
+    private static final int[] CONTROL_WORDS = new int[MicroOp.LAST + 1];
+
+    static {
+        ControlUnit control = new ControlUnit();
+        for (int op = MicroOp.ADD; op <= MicroOp.LAST; op++) {
+            String mnemonic = MicroOp.mnemonic(op);
+            control.decode(mnemonic);
+            CONTROL_WORDS[op] = MicroOp.encodeControl(op, control.getALUControl(mnemonic), control);
+        }
+    }
+
+    /**
+     * Empty program that grows as instructions are appended
+     */
+    DecodedProgram() {
+        this(256);
+        size = 0;
+    }
+
+    DecodedProgram(int length) {
+        control = new int[length];
+        registers = new int[length];
+        immediate = new int[length];
+        size = length;
+    }
+
+    /**
+     * Fills slot pc with an already decoded instruction (opcode is a MicroOp
+     * number, registers a MicroOp register word), growing the program if needed
+     */
+    void set(int pc, int opcode, int registers, int immediate) {
+        if (pc >= this.control.length) {
+            grow(pc + 1);
+        }
+        this.control[pc] = CONTROL_WORDS[opcode];
+        this.registers[pc] = registers;
+        this.immediate[pc] = immediate;
+        if (pc >= size) {
+            size = pc + 1;
+        }
+    }
+
+    /**
+     * Adds an instruction after the last one and returns its PC
+     */
+    int append(int opcode, int registers, int immediate) {
+        int pc = size;
+        set(pc, opcode, registers, immediate);
+        return pc;
+    }
+
+    /**
+     * Drops the spare capacity left by appending
+     */
+    void trimToSize() {
+        if (control.length != size) {
+            control = Arrays.copyOf(control, size);
+            registers = Arrays.copyOf(registers, size);
+            immediate = Arrays.copyOf(immediate, size);
+        }
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, control.length + (control.length >> 1) + 16);
+        control = Arrays.copyOf(control, capacity);
+        registers = Arrays.copyOf(registers, capacity);
+        immediate = Arrays.copyOf(immediate, capacity);
+    }
+
+    /**
+     * Hash of every instruction slot, to check that a checkpoint is
+     * restored onto the program it was taken from
+     */
+    public long fingerprint() {
+        long hash = size;
+        for (int pc = 0; pc < size; pc++) {
+            hash = hash * 0x9E3779B97F4A7C15L + control[pc];
+            hash = hash * 0x9E3779B97F4A7C15L + registers[pc];
+            hash = hash * 0x9E3779B97F4A7C15L + immediate[pc];
+        }
+        return hash;
+    }
+
+    public int length() {
+        return size;
+    }
+
+    public boolean isValid(int pc) {
+        return pc >= 0 && pc < size && control[pc] != 0;
+    }
+
+    public int opcode(int pc) {
+        return MicroOp.opcode(control[pc]);
+    }
+
+    /**
+     * Target of the branch or jump at pc: J carries an absolute instruction
+     * index, branches an offset from pc + 1
+     */
+    public int target(int pc) {
+        return (control[pc] & MicroOp.JUMP) != 0 ? immediate[pc] : pc + 1 + immediate[pc];
+    }
+
+    /**
+     * Short label for GUI display: opcode + destination register to
+     * differentiate similar instructions
+     */
+    public String label(int pc) {
+        if (!isValid(pc))
+            return null;
+
+        int regs = registers[pc];
+        int opcode = MicroOp.opcode(control[pc]);
+        String name = MicroOp.mnemonic(opcode);
+
+        switch (opcode) {
+            // For R-type instructions, show destination rd
+            case MicroOp.ADD: case MicroOp.SUB: case MicroOp.AND: case MicroOp.OR:
+            case MicroOp.XOR: case MicroOp.SLT: case MicroOp.SLL: case MicroOp.SRL:
+            case MicroOp.MFHI: case MicroOp.MFLO:
+                return name + " $" + MicroOp.rd(regs);
+            // MULT and DIV write HI/LO: show their sources
+            case MicroOp.MULT: case MicroOp.DIV:
+                return name + " $" + MicroOp.rs(regs) + ",$" + MicroOp.rt(regs);
+            // For I-type show rt (destination, or the source register being stored by SW)
+            case MicroOp.ADDI: case MicroOp.ORI: case MicroOp.LW: case MicroOp.SW:
+                return name + " $" + MicroOp.rt(regs);
+            // For branches, show compared registers
+            case MicroOp.BEQ:
+                return "BEQ $" + MicroOp.rs(regs) + ",$" + MicroOp.rt(regs);
+            case MicroOp.BGEZ:
+                return "BGEZ $" + MicroOp.rs(regs);
+            // For J, show target address
+            case MicroOp.J:
+                return "J " + immediate[pc];
+            default:
+                return name;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+// ==================== DRAM ====================
+
+/**
+ * Timing model of main memory, the last level behind the caches.
+ *
+ * In the fixed model every access takes the same latency. In the
+ * row-buffer model the address is split into row, bank and column; each
+ * bank keeps its last row open, so an access costs rowHit cycles when its
+ * row is already open, rowEmpty when the bank has no open row, and
+ * rowConflict when another row has to be closed first (open-page policy).
+ */
+class Dram implements MemoryLevel {
+
+    private final String name;
+
+    private final boolean rowBuffer;
+
+    private final int rowHit;
+
+    private final int rowEmpty;
+
+    private final int rowConflict;
+
+    private final int rowBits;
+
+    private final int bankMask;
+
+    private final int bankBits;
+
+    // Row open in each bank, -1 when the bank is precharged
+    private final int[] openRows;
+
+    private long reads, writes, rowHits, rowEmpties, rowConflicts;
+
+    private long totalLatency;
+
+    /**
+     * Fixed model: every access takes latency cycles
+     */
+    public Dram(String name, int latency) {
+        if (latency < 0) {
+            throw new IllegalArgumentException(name + ": negative latency");
+        }
+        this.name = name;
+        rowBuffer = false;
+        rowHit = rowEmpty = rowConflict = latency;
+        rowBits = bankBits = bankMask = 0;
+        openRows = new int[0];
+    }
+
+    /**
+     * Row-buffer model with banks banks of rowBytes-byte rows
+     */
+    public Dram(String name, int banks, int rowBytes, int rowHit, int rowEmpty, int rowConflict) {
+        if (Integer.bitCount(banks) != 1 || Integer.bitCount(rowBytes) != 1) {
+            throw new IllegalArgumentException(name + ": banks and row size must be powers of two");
+        }
+        if (rowHit < 0 || rowEmpty < 0 || rowConflict < 0) {
+            throw new IllegalArgumentException(name + ": negative latency");
+        }
+        this.name = name;
+        rowBuffer = true;
+        this.rowHit = rowHit;
+        this.rowEmpty = rowEmpty;
+        this.rowConflict = rowConflict;
+        rowBits = Integer.numberOfTrailingZeros(rowBytes);
+        bankBits = Integer.numberOfTrailingZeros(banks);
+        bankMask = banks - 1;
+        openRows = new int[banks];
+        java.util.Arrays.fill(openRows, -1);
+    }
+
+    @Override
+    public int access(int address, boolean write) {
+        if (write) {
+            writes++;
+        } else {
+            reads++;
+        }
+        int latency;
+        if (!rowBuffer) {
+            latency = rowHit;
+        } else {
+            // Consecutive rows interleave across banks
+            int bank = (address >>> rowBits) & bankMask;
+            int row = address >>> (rowBits + bankBits);
+            if (openRows[bank] == row) {
+                rowHits++;
+                latency = rowHit;
+            } else if (openRows[bank] == -1) {
+                rowEmpties++;
+                latency = rowEmpty;
+            } else {
+                rowConflicts++;
+                latency = rowConflict;
+            }
+            openRows[bank] = row;
+        }
+        totalLatency += latency;
+        return latency;
+    }
+
+    @Override
+    public void reset() {
+        java.util.Arrays.fill(openRows, -1);
+        reads = writes = rowHits = rowEmpties = rowConflicts = totalLatency = 0;
+    }
+
+    /**
+     * Open rows go plus one, so precharged (-1) banks are the zeros the
+     * sparse encoding skips
+     */
+    @Override
+    public void save(Checkpoint.Writer out) throws java.io.IOException {
+        int[] stored = new int[openRows.length];
+        for (int bank = 0; bank < openRows.length; bank++) {
+            stored[bank] = openRows[bank] + 1;
+        }
+        out.putSparse(stored, stored.length);
+        for (long count : new long[] { reads, writes, rowHits, rowEmpties, rowConflicts, totalLatency }) {
+            out.putVarLong(count);
+        }
+    }
+
+    @Override
+    public void restore(Checkpoint.Reader in) throws java.io.IOException {
+        int[] stored = new int[openRows.length];
+        in.getSparse(stored);
+        for (int bank = 0; bank < openRows.length; bank++) {
+            openRows[bank] = stored[bank] - 1;
+        }
+        reads = in.getVarLong();
+        writes = in.getVarLong();
+        rowHits = in.getVarLong();
+        rowEmpties = in.getVarLong();
+        rowConflicts = in.getVarLong();
+        totalLatency = in.getVarLong();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getAccesses() {
+        return reads + writes;
+    }
+
+    @Override
+    public double getAverageLatency() {
+        long accesses = getAccesses();
+        return accesses == 0 ? 0.0 : (double) totalLatency / accesses;
+    }
+
+    public long getReads() {
+        return reads;
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    public long getRowHits() {
+        return rowHits;
+    }
+
+    public long getRowEmpties() {
+        return rowEmpties;
+    }
+
+    public long getRowConflicts() {
+        return rowConflicts;
+    }
+
+    /**
+     * Fraction of accesses that found their row open, 0 in the fixed model
+     */
+    public double getRowHitRate() {
+        long accesses = getAccesses();
+        return accesses == 0 ? 0.0 : (double) rowHits / accesses;
+    }
+
+    /**
+     * Timing parameters, e.g. "8 banks x 2KB rows, 20/40/60 cycles hit/empty/conflict"
+     */
+    @Override
+    public String describe() {
+        if (!rowBuffer) {
+            return "fixed " + rowHit + "-cycle latency";
+        }
+        return String.format("%d banks x %s rows, %d/%d/%d cycles hit/empty/conflict", openRows.length,
+                Cache.sizeText(1 << rowBits), rowHit, rowEmpty, rowConflict);
+    }
+
+    @Override
+    public String report() {
+        String rows = rowBuffer ? String.format(", %d row hits, %d row empty, %d row conflicts", rowHits,
+                rowEmpties, rowConflicts) : "";
+        return String.format("%s (%s): %d reads, %d writes%s, %.2f cycles/access", name, describe(), reads, writes,
+                rows, getAverageLatency());
+    }
+}
@@ -1,29 +1,62 @@
+
 class EX_MEM_Register {
 
-    public Instruction instruction;
+    public final int[] opcode = new int[2]; // MicroOp.NONE when the latch holds a bubble
+
+    public final int[] pc = new int[2];
 
-    public int aluResult;
+    public final int[] aluResult = new int[2];
 
-    public int readData2;
+    public final int[] readData2 = new int[2];
 
-    public int writeRegister;
+    public final int[] writeRegister = new int[2];
 
-    public boolean zero;
+    public final boolean[] zero = new boolean[2];
 
-    public int branchTarget;
+    public final int[] branchTarget = new int[2];
+
+    // Control signals still needed by MEM and WB
+    public final boolean[] regWrite = new boolean[2];
+    public final boolean[] memRead = new boolean[2];
+    public final boolean[] memWrite = new boolean[2];
+    public final boolean[] memToReg = new boolean[2];
 
     
 
-    public void clear() {
+    public void clear(int bank) {
+
+        opcode[bank] = MicroOp.NONE;
 
-        instruction = null;
+        pc[bank] = aluResult[bank] = readData2[bank] = writeRegister[bank] = branchTarget[bank] = 0;
 
-        aluResult = readData2 = writeRegister = branchTarget = 0;
+        zero[bank] = false;
 
-        zero = false;
+        regWrite[bank] = memRead[bank] = memWrite[bank] = memToReg[bank] = false;
 
     }
 
-}
+    void save(Checkpoint.Writer out, int bank) throws java.io.IOException {
+
+        for (int[] field : new int[][] { opcode, pc, aluResult, readData2, writeRegister, branchTarget }) {
+            out.putInt(field[bank]);
+        }
+
+        for (boolean[] signal : new boolean[][] { zero, regWrite, memRead, memWrite, memToReg }) {
+            out.putBoolean(signal[bank]);
+        }
 
+    }
+
+    void restore(Checkpoint.Reader in, int bank) throws java.io.IOException {
+
+        for (int[] field : new int[][] { opcode, pc, aluResult, readData2, writeRegister, branchTarget }) {
+            field[bank] = in.getInt();
+        }
+
+        for (boolean[] signal : new boolean[][] { zero, regWrite, memRead, memWrite, memToReg }) {
+            signal[bank] = in.getBoolean();
+        }
 
+    }
+
+}
@@ -0,0 +1,146 @@
+// ==================== FUNCTIONAL SIMULATOR ====================
+
+/**
+ * ISA-level interpreter: executes one whole instruction per step with no
+ * pipeline timing. It works directly on the DecodedProgram, RegisterFile and
+ * Memory of a MIPSSimulator, so it can fast-forward to a region of interest
+ * and leave the architectural state for the cycle-accurate pipeline
+ * (see MIPSSimulator.fastForward).
+ */
+class FunctionalSimulator {
+
+    private final DecodedProgram program;
+
+    private final RegisterFile regFile;
+
+    private final Memory memory;
+
+    private int pc;
+
+    private long instructionCount;
+
+    public FunctionalSimulator(DecodedProgram program, RegisterFile regFile, Memory memory) {
+        this.program = program;
+        this.regFile = regFile;
+        this.memory = memory;
+    }
+
+    /**
+     * Executes up to maxInstructions
+     */
+    public long run(long maxInstructions) {
+        return run(maxInstructions, -1);
+    }
+
+    /**
+     * Executes up to maxInstructions, stopping early when the PC reaches
+     * stopPc (-1 for none) or leaves the program.
+     * Returns the number of instructions executed.
+     */
+    public long run(long maxInstructions, int stopPc) {
+        int[] control = program.control;
+        int[] registers = program.registers;
+        int[] immediate = program.immediate;
+        int length = program.length();
+        RegisterFile rf = regFile;
+        int p = pc;
+        long executed = 0;
+
+        while (executed < maxInstructions && p != stopPc && p >= 0 && p < length && control[p] != 0) {
+            int regs = registers[p];
+            int rs = MicroOp.rs(regs);
+            int rt = MicroOp.rt(regs);
+            int imm = immediate[p];
+            int nextPc = p + 1;
+
+            switch (MicroOp.opcode(control[p])) {
+                case MicroOp.ADD:
+                    rf.write(MicroOp.rd(regs), rf.read(rs) + rf.read(rt));
+                    break;
+                case MicroOp.SUB:
+                    rf.write(MicroOp.rd(regs), rf.read(rs) - rf.read(rt));
+                    break;
+                case MicroOp.AND:
+                    rf.write(MicroOp.rd(regs), rf.read(rs) & rf.read(rt));
+                    break;
+                case MicroOp.OR:
+                    rf.write(MicroOp.rd(regs), rf.read(rs) | rf.read(rt));
+                    break;
+                case MicroOp.XOR:
+                    rf.write(MicroOp.rd(regs), rf.read(rs) ^ rf.read(rt));
+                    break;
+                case MicroOp.SLT:
+                    rf.write(MicroOp.rd(regs), rf.read(rs) < rf.read(rt) ? 1 : 0);
+                    break;
+                case MicroOp.SLL:
+                    rf.write(MicroOp.rd(regs), rf.read(rt) << MicroOp.shamt(regs));
+                    break;
+                case MicroOp.SRL:
+                    rf.write(MicroOp.rd(regs), rf.read(rt) >>> MicroOp.shamt(regs));
+                    break;
+                case MicroOp.MULT: case MicroOp.DIV:
+                    MultiplyDivideUnit.compute(MicroOp.opcode(control[p]), rf.read(rs), rf.read(rt), rf);
+                    break;
+                case MicroOp.MFHI:
+                    rf.write(MicroOp.rd(regs), rf.readHi());
+                    break;
+                case MicroOp.MFLO:
+                    rf.write(MicroOp.rd(regs), rf.readLo());
+                    break;
+                case MicroOp.ADDI:
+                    rf.write(rt, rf.read(rs) + imm);
+                    break;
+                case MicroOp.ORI:
+                    rf.write(rt, rf.read(rs) | imm);
+                    break;
+                case MicroOp.LW:
+                    rf.write(rt, memory.load(rf.read(rs) + imm));
+                    break;
+                case MicroOp.SW:
+                    memory.store(rf.read(rs) + imm, rf.read(rt));
+                    break;
+                case MicroOp.BEQ:
+                    if (rf.read(rs) == rf.read(rt)) {
+                        nextPc = p + 1 + imm;
+                    }
+                    break;
+                case MicroOp.BGEZ:
+                    if (rf.read(rs) >= 0) {
+                        nextPc = p + 1 + imm;
+                    }
+                    break;
+                case MicroOp.J:
+                    nextPc = imm;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode at PC=" + p);
+            }
+
+            p = nextPc;
+            executed++;
+        }
+
+        pc = p;
+        instructionCount += executed;
+        return executed;
+    }
+
+    /**
+     * True once the PC has left the program (the pipeline would drain and halt)
+     */
+    public boolean isFinished() {
+        return !program.isValid(pc);
+    }
+
+    public int getPc() {
+        return pc;
+    }
+
+    public void setPc(int pc) {
+        this.pc = pc;
+    }
+
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+}
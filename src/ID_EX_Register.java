@@ -1,39 +1,77 @@
+
 class ID_EX_Register {
 
-    public Instruction instruction;
+    public final int[] opcode = new int[2]; // MicroOp.NONE when the latch holds a bubble
+
+    public final int[] pc = new int[2];
+
+    public final int[] predictedPc = new int[2];
+
+    public final int[] predictorHistory = new int[2];
 
-    public int pc;
+    public final int[] readData1 = new int[2];
 
-    public int readData1;
+    public final int[] readData2 = new int[2];
 
-    public int readData2;
+    public final int[] immediate = new int[2];
 
-    public int immediate;
+    public final int[] shamt = new int[2];
 
-    public int rs, rt, rd;
+    public final int[] aluControl = new int[2];
+
+    public final int[] rs = new int[2], rt = new int[2], rd = new int[2];
 
     // Control signals (saved from decode stage)
-    public boolean regWrite;
-    public boolean memRead;
-    public boolean memWrite;
-    public boolean branch;
-    public boolean aluSrc;
-    public boolean regDst;
-    public boolean memToReg;
-    public boolean jump;
+    public final boolean[] regWrite = new boolean[2];
+    public final boolean[] memRead = new boolean[2];
+    public final boolean[] memWrite = new boolean[2];
+    public final boolean[] branch = new boolean[2];
+    public final boolean[] aluSrc = new boolean[2];
+    public final boolean[] regDst = new boolean[2];
+    public final boolean[] memToReg = new boolean[2];
+    public final boolean[] jump = new boolean[2];
 
-    public void clear() {
+    public void clear(int bank) {
 
-        instruction = null;
+        opcode[bank] = MicroOp.NONE;
 
-        pc = 0;
+        pc[bank] = predictedPc[bank] = predictorHistory[bank] = 0;
 
-        readData1 = readData2 = immediate = 0;
+        readData1[bank] = readData2[bank] = immediate[bank] = shamt[bank] = aluControl[bank] = 0;
 
-        rs = rt = rd = 0;
+        rs[bank] = rt[bank] = rd[bank] = 0;
 
         // Clear control signals
-        regWrite = memRead = memWrite = branch = aluSrc = regDst = memToReg = jump = false;
+        regWrite[bank] = memRead[bank] = memWrite[bank] = branch[bank] = false;
+        aluSrc[bank] = regDst[bank] = memToReg[bank] = jump[bank] = false;
+
+    }
+
+    void save(Checkpoint.Writer out, int bank) throws java.io.IOException {
+
+        for (int[] field : new int[][] { opcode, pc, predictedPc, predictorHistory, readData1, readData2, immediate,
+                shamt, aluControl, rs, rt, rd }) {
+            out.putInt(field[bank]);
+        }
+
+        for (boolean[] signal : new boolean[][] { regWrite, memRead, memWrite, branch, aluSrc, regDst, memToReg,
+                jump }) {
+            out.putBoolean(signal[bank]);
+        }
+
+    }
+
+    void restore(Checkpoint.Reader in, int bank) throws java.io.IOException {
+
+        for (int[] field : new int[][] { opcode, pc, predictedPc, predictorHistory, readData1, readData2, immediate,
+                shamt, aluControl, rs, rt, rd }) {
+            field[bank] = in.getInt();
+        }
+
+        for (boolean[] signal : new boolean[][] { regWrite, memRead, memWrite, branch, aluSrc, regDst, memToReg,
+                jump }) {
+            signal[bank] = in.getBoolean();
+        }
 
     }
 
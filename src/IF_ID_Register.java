@@ -1,21 +1,54 @@
 // ==================== PIPELINE REGISTERS ====================
 
+// Every pipeline register is double-buffered: each field has two banks.
+// During a cycle the stages read bank `cur` and write bank `next`; the
+// simulator swaps the bank indices at the end of the cycle, which latches
+// all four registers at once without copying.
+
 class IF_ID_Register {
 
-    public Instruction instruction;
+    public final int[] opcode = new int[2]; // MicroOp.NONE when the latch holds a bubble
+
+    public final int[] pc = new int[2];
+
+    // Next PC the branch predictor chose when this instruction was fetched
+    public final int[] predictedPc = new int[2];
 
-    public int pc;
+    // Predictor history that prediction was looked up with (BranchPredictor.history)
+    public final int[] predictorHistory = new int[2];
 
-    
+    public void clear(int bank) {
 
-    public void clear() {
+        opcode[bank] = MicroOp.NONE;
 
-        instruction = null;
+        pc[bank] = 0;
 
-        pc = 0;
+        predictedPc[bank] = predictorHistory[bank] = 0;
 
     }
 
-}
+    void save(Checkpoint.Writer out, int bank) throws java.io.IOException {
+
+        out.putInt(opcode[bank]);
 
+        out.putInt(pc[bank]);
+
+        out.putInt(predictedPc[bank]);
+
+        out.putInt(predictorHistory[bank]);
+
+    }
 
+    void restore(Checkpoint.Reader in, int bank) throws java.io.IOException {
+
+        opcode[bank] = in.getInt();
+
+        pc[bank] = in.getInt();
+
+        predictedPc[bank] = in.getInt();
+
+        predictorHistory[bank] = in.getInt();
+
+    }
+
+}
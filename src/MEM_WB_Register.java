@@ -1,23 +1,54 @@
+
 class MEM_WB_Register {
 
-    public Instruction instruction;
+    public final int[] opcode = new int[2]; // MicroOp.NONE when the latch holds a bubble
+
+    public final int[] pc = new int[2];
 
-    public int aluResult;
+    public final int[] aluResult = new int[2];
 
-    public int memData;
+    public final int[] memData = new int[2];
 
-    public int writeRegister;
+    public final int[] writeRegister = new int[2];
+
+    // Control signals still needed by WB
+    public final boolean[] regWrite = new boolean[2];
+    public final boolean[] memToReg = new boolean[2];
 
     
 
-    public void clear() {
+    public void clear(int bank) {
+
+        opcode[bank] = MicroOp.NONE;
 
-        instruction = null;
+        pc[bank] = aluResult[bank] = memData[bank] = writeRegister[bank] = 0;
 
-        aluResult = memData = writeRegister = 0;
+        regWrite[bank] = memToReg[bank] = false;
 
     }
 
-}
+    void save(Checkpoint.Writer out, int bank) throws java.io.IOException {
+
+        for (int[] field : new int[][] { opcode, pc, aluResult, memData, writeRegister }) {
+            out.putInt(field[bank]);
+        }
+
+        out.putBoolean(regWrite[bank]);
+
+        out.putBoolean(memToReg[bank]);
 
+    }
+
+    void restore(Checkpoint.Reader in, int bank) throws java.io.IOException {
+
+        for (int[] field : new int[][] { opcode, pc, aluResult, memData, writeRegister }) {
+            field[bank] = in.getInt();
+        }
+
+        regWrite[bank] = in.getBoolean();
 
+        memToReg[bank] = in.getBoolean();
+
+    }
+
+}
@@ -8,6 +8,9 @@ class MIPSSimulator {
 
     private ALU alu;
 
+    // Multi-cycle MULT/DIV timing beside the ALU in EX
+    private MultiplyDivideUnit multiplyDivide;
+
     private ControlUnit control;
 
     // Pipeline registers
@@ -24,37 +27,116 @@ class MIPSSimulator {
 
     private int pc;
 
-    private Instruction[] instructionMemory;
+    private DecodedProgram instructionMemory;
 
     private int cycles;
 
+    // Instructions that completed write-back
+    private long instructionCount;
+
     private boolean halted;
 
     // Hazard detection and forwarding
 
     private int stallCount;
 
+    // Stall cycles caused by the multiply/divide unit (HI/LO and busy-unit hazards)
+    private int multiplyDivideStallCount;
+
     private boolean enableHazardDetection;
 
     private boolean enableForwarding;
 
-    // Track WB stage instruction for GUI display
-    private Instruction lastWbInstruction;
+    // Resolve branches and jumps in ID instead of EX
+    private boolean earlyBranchResolution;
+
+    // Receives log events; a no-op unless someone is listening
+    private PipelineListener listener;
+
+    // Latch banks: stages read bank cur and write bank next, swapped at end of cycle
+    private int cur;
+
+    private int next;
+
+    // Hazard signals raised during the current cycle: EX redirects the PC
+    // (taken branch / jump), ID stalls on a load-use hazard
+    private boolean redirect;
+
+    private int redirectPc;
+
+    // PC of the branch/jump in EX that raised the redirect
+    private int redirectSource;
+
+    // Consulted in IF for every branch and jump
+    private BranchPredictor predictor = BranchPredictor.NOT_TAKEN;
+
+    private boolean stall;
+
+    // L1 caches (timing only), null for single-cycle memory
+    private Cache instructionCache;
+
+    private Cache dataCache;
+
+    // Instruction-cache miss in progress: PC being fetched (-1 for none)
+    // and cycles left until its line arrives
+    private int pendingFetchPc = -1;
 
-    // Saved memWb state for forwarding (since MEM runs before EX)
-    private MEM_WB_Register savedMemWb;
+    private int fetchWait;
 
-    // Saved instructions for GUI display (captures state BEFORE processing)
-    private Instruction displayIF, displayID, displayEX, displayMEM, displayWB;
+    // Cycles left on the data-cache miss that is holding the pipeline
+    private int memoryStall;
+
+    // The access now in MEM already paid for its miss
+    private boolean dataMissServiced;
+
+    // Per-PC event counts, sized to the loaded program
+    private PerformanceCounters counters;
+
+    // The counters' arrays, held directly so each event is a single increment
+    private long[] executedCounts, loadUseStallCounts, flushCounts, takenCounts, notTakenCounts;
+
+    private long[] multiplyDivideStallCounts, branchStallCounts;
+
+    private long[] forwardExMemCounts, forwardMemWbCounts;
+
+    private long[] mispredictCounts;
+
+    private long[] cacheStallCounts;
+
+    // Hot spots reported to the listener at the end of run(), 0 for none
+    private int hotSpotCount;
+
+    // Instructions executed by the functional interpreter instead of the pipeline
+    private long fastForwardedInstructions;
+
+    // Recent cycles kept for stepping back in a viewer, null when not recorded
+    private CycleHistory history;
+
+    // Words stored by the pipeline, for highlighting in a viewer; null when not tracked
+    private StoreBitmap storeBitmap;
+
+    // Saved instruction PCs for GUI display (captures state BEFORE processing), -1 when empty
+    private int displayIF = -1, displayID = -1, displayEX = -1, displayMEM = -1, displayWB = -1;
 
     public MIPSSimulator() {
 
+        this(new Memory());
+
+    }
+
+    /**
+     * Simulator over a caller-supplied data memory (e.g. a MappedMemory image)
+     */
+    public MIPSSimulator(Memory memory) {
+
         regFile = new RegisterFile();
 
-        memory = new Memory();
+        this.memory = memory;
 
         alu = new ALU();
 
+        multiplyDivide = new MultiplyDivideUnit();
+
         control = new ControlUnit();
 
         ifId = new IF_ID_Register();
@@ -79,350 +161,899 @@ class MIPSSimulator {
 
         enableForwarding = true;
 
-        // Initialize saved memWb for forwarding
-        savedMemWb = new MEM_WB_Register();
+        cur = 0;
+
+        next = 1;
+
+        listener = PipelineListener.NONE;
 
     }
 
-    public void loadProgram(String[] instructions) {
+    /**
+     * Load an already decoded program (e.g. shared by many simulator instances)
+     */
+    public void loadProgram(DecodedProgram program) {
 
-        instructionMemory = new Instruction[instructions.length];
+        instructionMemory = program;
 
-        for (int i = 0; i < instructions.length; i++) {
+        counters = new PerformanceCounters(program);
 
-            instructionMemory[i] = InstructionParser.parse(instructions[i]);
+        executedCounts = counters.executed;
 
-        }
+        loadUseStallCounts = counters.loadUseStallCycles;
+
+        multiplyDivideStallCounts = counters.multiplyDivideStallCycles;
+
+        branchStallCounts = counters.branchStallCycles;
+
+        flushCounts = counters.flushes;
+
+        takenCounts = counters.branchTaken;
+
+        notTakenCounts = counters.branchNotTaken;
+
+        forwardExMemCounts = counters.forwardExMem;
+
+        forwardMemWbCounts = counters.forwardMemWb;
+
+        mispredictCounts = counters.mispredictions;
+
+        cacheStallCounts = counters.cacheStallCycles;
+
+    }
+
+    /**
+     * Load machine code from a raw .bin file or a MIPS ELF executable and
+     * start at its entry point
+     */
+    public void loadBinary(java.nio.file.Path file) throws java.io.IOException {
+
+        BinaryImage image = BinaryImage.read(file);
+
+        loadProgram(image.program, image.entry);
+
+    }
+
+    /**
+     * Load a decoded program and start fetching at entryPc
+     */
+    public void loadProgram(DecodedProgram program, int entryPc) {
+
+        loadProgram(program);
+
+        pc = entryPc;
+
+    }
+
+    /**
+     * Assemble source lines (one statement per line, full Assembler syntax)
+     * and load the program and its .data image; throws
+     * IllegalArgumentException naming the line of a syntax error
+     */
+    public void loadProgram(String[] lines) {
+
+        Assembler.assemble(lines).loadInto(this);
 
     }
 
     public void run() {
 
-        System.out.println("=== Starting MIPS Pipeline Simulation ===\n");
+        listener.simulationStarted();
 
         while (!halted) {
 
-            cycles++;
+            runOneCycle();
 
-            System.out.println("\n--- Cycle " + cycles + " ---");
+        }
 
-            // Save memWb for forwarding before MEM stage overwrites it
-            savedMemWb.instruction = memWb.instruction;
-            savedMemWb.aluResult = memWb.aluResult;
-            savedMemWb.memData = memWb.memData;
-            savedMemWb.writeRegister = memWb.writeRegister;
-            lastWbInstruction = memWb.instruction;
+        // A READ_WRITE memory image keeps the program's stores
+        memory.force();
 
-            // Execute pipeline stages in CORRECT reverse order: WB -> MEM -> EX -> ID -> IF
-            writeback();
+        listener.finalState(this);
 
-            memoryAccess();
+        if (hotSpotCount > 0) {
 
-            execute();
+            listener.hotSpots(this, hotSpotCount);
 
-            decode();
+        }
+
+    }
 
-            fetch();
+    /**
+     * Fast-forwards with the functional interpreter: executes up to
+     * maxInstructions (stopping early when the PC reaches stopPc, -1 for
+     * none) on this simulator's registers and memory, then leaves the PC
+     * there so the pipeline continues cycle-accurately from that point.
+     * Takes no cycles; only allowed while the pipeline is empty.
+     * Returns the number of instructions executed.
+     */
+    public long fastForward(long maxInstructions, int stopPc) {
+
+        if (ifId.opcode[cur] != MicroOp.NONE || idEx.opcode[cur] != MicroOp.NONE ||
+                exMem.opcode[cur] != MicroOp.NONE || memWb.opcode[cur] != MicroOp.NONE) {
+            throw new IllegalStateException("Cannot fast-forward while instructions are in the pipeline");
+        }
 
-            printPipelineState();
+        FunctionalSimulator functional = new FunctionalSimulator(instructionMemory, regFile, memory);
 
-            // Check if pipeline is empty
+        functional.setPc(pc);
 
-            if (ifId.instruction == null && idEx.instruction == null &&
+        long executed = functional.run(maxInstructions, stopPc);
+
+        pc = functional.getPc();
+
+        fastForwardedInstructions += executed;
+
+        restartHistory();
+
+        return executed;
+
+    }
 
-                    exMem.instruction == null && memWb.instruction == null) {
+    public long fastForward(long maxInstructions) {
 
-                halted = true;
+        return fastForward(maxInstructions, -1);
 
+    }
+
+    /**
+     * Hash of the configuration a checkpoint's state depends on: forwarding,
+     * hazard detection, branch stage, MULT/DIV timing, the predictor and the
+     * geometry and timing of each cache and DRAM level
+     */
+    private long configurationFingerprint() {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(enableForwarding).append(' ').append(enableHazardDetection).append(' ')
+                .append(earlyBranchResolution).append('|').append(multiplyDivide.describe()).append('|')
+                .append(predictor.getName()).append('|').append(instructionCache != null).append(' ')
+                .append(dataCache != null);
+        for (MemoryLevel level : MemoryHierarchy.levels(instructionCache, dataCache)) {
+            sb.append('|').append(level.getName()).append(": ").append(level.describe());
+        }
+
+        long hash = sb.length();
+        for (int i = 0; i < sb.length(); i++) {
+            hash = hash * 0x9E3779B97F4A7C15L + sb.charAt(i);
+        }
+
+        return hash;
+
+    }
+
+    /**
+     * Writes the complete architectural and microarchitectural state - PC,
+     * registers, HI/LO, memory, the four pipeline registers, in-flight cache
+     * misses and MULT/DIV operations, every counter, the branch predictor's
+     * tables and the tags and statistics of every cache and DRAM level - to
+     * a Checkpoint file. The program and the configuration (see
+     * configurationFingerprint) are only recorded by their fingerprints.
+     */
+    public void saveCheckpoint(java.nio.file.Path file) throws java.io.IOException {
+
+        if (instructionMemory == null) {
+            throw new IllegalStateException("No program loaded");
+        }
+
+        try (Checkpoint.Writer out = new Checkpoint.Writer(file)) {
+
+            out.putInt(Checkpoint.MAGIC);
+            out.putInt(Checkpoint.VERSION);
+            out.putLong(instructionMemory.fingerprint());
+            out.putLong(configurationFingerprint());
+
+            out.putInt(pc);
+            out.putInt(cycles);
+            out.putLong(instructionCount);
+            out.putLong(fastForwardedInstructions);
+            out.putBoolean(halted);
+            out.putInt(stallCount);
+            out.putInt(multiplyDivideStallCount);
+            out.putInt(pendingFetchPc);
+            out.putInt(fetchWait);
+            out.putInt(memoryStall);
+            out.putBoolean(dataMissServiced);
+            for (int display : new int[] { displayIF, displayID, displayEX, displayMEM, displayWB }) {
+                out.putInt(display);
+            }
+
+            ifId.save(out, cur);
+            idEx.save(out, cur);
+            exMem.save(out, cur);
+            memWb.save(out, cur);
+
+            regFile.save(out);
+            multiplyDivide.save(out);
+            counters.save(out);
+            memory.save(out);
+            predictor.save(out);
+            for (MemoryLevel level : MemoryHierarchy.levels(instructionCache, dataCache)) {
+                level.save(out);
             }
 
         }
 
-        System.out.println("\n=== Simulation Complete ===");
+    }
+
+    /**
+     * Replaces the state of this simulator with a checkpoint taken by
+     * saveCheckpoint. The same program must already be loaded and the
+     * simulator configured as it was when the checkpoint was taken, so the
+     * resumed run matches an uninterrupted one cycle for cycle.
+     */
+    public void restoreCheckpoint(java.nio.file.Path file) throws java.io.IOException {
+
+        if (instructionMemory == null) {
+            throw new IllegalStateException("Load the checkpointed program before restoring");
+        }
+
+        try (Checkpoint.Reader in = new Checkpoint.Reader(file)) {
+
+            if (in.getInt() != Checkpoint.MAGIC) {
+                throw new java.io.IOException(file + ": not a simulator checkpoint");
+            }
+            int version = in.getInt();
+            if (version != Checkpoint.VERSION) {
+                throw new java.io.IOException(file + ": unsupported checkpoint version " + version);
+            }
+            if (in.getLong() != instructionMemory.fingerprint()) {
+                throw new IllegalStateException(file + " was taken with a different program");
+            }
+            if (in.getLong() != configurationFingerprint()) {
+                throw new IllegalStateException(file + " was taken under a different pipeline, predictor or"
+                        + " memory configuration");
+            }
 
-        System.out.println("Total cycles: " + cycles);
-        System.out.println("Total stalls: " + stallCount);
+            pc = in.getInt();
+            cycles = in.getInt();
+            instructionCount = in.getLong();
+            fastForwardedInstructions = in.getLong();
+            halted = in.getBoolean();
+            stallCount = in.getInt();
+            multiplyDivideStallCount = in.getInt();
+            pendingFetchPc = in.getInt();
+            fetchWait = in.getInt();
+            memoryStall = in.getInt();
+            dataMissServiced = in.getBoolean();
+            displayIF = in.getInt();
+            displayID = in.getInt();
+            displayEX = in.getInt();
+            displayMEM = in.getInt();
+            displayWB = in.getInt();
+
+            // The saved latches become bank 0
+            cur = 0;
+            next = 1;
+            ifId.restore(in, cur);
+            idEx.restore(in, cur);
+            exMem.restore(in, cur);
+            memWb.restore(in, cur);
+            ifId.clear(next);
+            idEx.clear(next);
+            exMem.clear(next);
+            memWb.clear(next);
+
+            regFile.restore(in);
+            multiplyDivide.restore(in);
+            counters.restore(in);
+            memory.restore(in);
+            predictor.restore(in);
+            for (MemoryLevel level : MemoryHierarchy.levels(instructionCache, dataCache)) {
+                level.restore(in);
+            }
 
-        regFile.printRegisters();
+        }
 
-        memory.printMemory(0, 100);
+        restartHistory();
 
     }
 
     private void fetch() {
 
-        if (pc >= 0 && pc < instructionMemory.length && instructionMemory[pc] != null) {
+        // Next-PC select: EX redirect, else re-fetch the stalled instruction, else sequential
+        int fetchPc = redirect ? redirectPc : stall ? ifId.pc[cur] : pc;
+
+        pc = fetchPc;
+
+        if (instructionCache != null && !stall && instructionMemory.isValid(fetchPc) && fetchMissed(fetchPc)) {
+
+            // Waiting for the line: IF sends a bubble down and tries again next cycle
+            ifId.clear(next);
+
+            return;
+
+        }
+
+        if (instructionMemory.isValid(fetchPc)) {
 
-            ifId.instruction = instructionMemory[pc];
+            int ctrl = instructionMemory.control[fetchPc];
 
-            ifId.pc = pc;
+            ifId.opcode[next] = MicroOp.opcode(ctrl);
 
-            pc++;
+            ifId.pc[next] = fetchPc;
 
-            System.out.println("IF: Fetched " + ifId.instruction.getOpcode() + " at PC=" + ifId.pc);
+            // Branches and jumps continue at the predicted PC; the history it
+            // was looked up with goes down the pipeline to train the same entry
+            ifId.predictorHistory[next] = predictor.history();
+
+            pc = (ctrl & (MicroOp.BRANCH | MicroOp.JUMP)) == 0 ? fetchPc + 1
+                    : predictor.predict(fetchPc, (ctrl & MicroOp.JUMP) != 0, instructionMemory.target(fetchPc));
+
+            ifId.predictedPc[next] = pc;
+
+            listener.fetched(fetchPc, ifId.opcode[next]);
 
         } else {
 
-            ifId.instruction = null;
+            ifId.clear(next);
+
+        }
+
+    }
+
+    /**
+     * Instruction-cache lookup for fetchPc (text is at address 0, one word
+     * per instruction). True while the fetch is waiting for a miss; a
+     * redirect abandons the wait.
+     */
+    private boolean fetchMissed(int fetchPc) {
+
+        if (fetchPc != pendingFetchPc) {
+
+            pendingFetchPc = -1;
+
+            fetchWait = instructionCache.access(fetchPc << 2, false);
+
+            if (fetchWait == 0) {
+                return false;
+            }
+
+            pendingFetchPc = fetchPc;
+
+            listener.cacheMiss(fetchPc, fetchPc << 2, true, fetchWait);
+
+        }
+
+        if (fetchWait > 0) {
+
+            fetchWait--;
+
+            cacheStallCounts[fetchPc]++;
+
+            return true;
 
         }
 
+        pendingFetchPc = -1;
+
+        return false;
+
     }
 
     private void decode() {
 
-        if (ifId.instruction == null) {
+        // A taken branch/jump in EX flushes the instruction in ID
+        if (ifId.opcode[cur] == MicroOp.NONE || redirect) {
 
-            idEx.clear();
+            if (redirect && ifId.opcode[cur] != MicroOp.NONE) {
+
+                flushCounts[redirectSource]++;
+
+                listener.flushed(ifId.pc[cur], redirectSource);
+
+            }
+
+            idEx.clear(next);
 
             return;
 
         }
 
-        Instruction instr = ifId.instruction;
+        int pcId = ifId.pc[cur];
+
+        int ctrl = instructionMemory.control[pcId];
 
-        control.decode(instr.getOpcode());
+        int regs = instructionMemory.registers[pcId];
 
         // Hazard detection: Check for load-use hazard
 
-        if (enableHazardDetection && detectLoadUseHazard(instr)) {
+        if (enableHazardDetection && detectLoadUseHazard(ctrl, regs)) {
 
-            // Stall: Insert bubble in ID/EX, keep IF/ID unchanged, don't increment PC
+            // Stall: Insert bubble in ID/EX, IF re-fetches the instruction held in IF/ID
 
-            idEx.clear();
+            idEx.clear(next);
 
-            pc--; // Undo PC increment from fetch
+            stall = true;
 
             stallCount++;
 
-            System.out.println("ID: STALL detected (Load-Use Hazard)");
+            loadUseStallCounts[pcId]++;
+
+            listener.stalled(pcId);
 
             return;
 
         }
 
-        idEx.instruction = instr;
+        // The multiply/divide unit interlocks on its own: MFHI/MFLO until the
+        // result is ready, MULT/DIV until their unit can take a new operation
+        int opcodeId = MicroOp.opcode(ctrl);
 
-        idEx.pc = ifId.pc;
+        int wait = multiplyDivide.waitCycles(opcodeId, cycles + 1);
 
-        idEx.readData1 = regFile.read(instr.getRs());
+        if (wait > 0) {
 
-        idEx.readData2 = regFile.read(instr.getRt());
+            listener.multiplyDivideHazard(multiplyDivide.blockingOpcode(opcodeId), opcodeId, wait);
 
-        idEx.immediate = instr.getImmediate();
+            idEx.clear(next);
 
-        idEx.rs = instr.getRs();
+            stall = true;
 
-        idEx.rt = instr.getRt();
+            stallCount++;
+
+            multiplyDivideStallCount++;
+
+            multiplyDivideStallCounts[pcId]++;
 
-        idEx.rd = instr.getRd();
+            listener.stalled(pcId);
 
-        // Save control signals to pipeline register (fixes data hazard issue)
-        idEx.regWrite = control.regWrite;
-        idEx.memRead = control.memRead;
-        idEx.memWrite = control.memWrite;
-        idEx.branch = control.branch;
-        idEx.aluSrc = control.aluSrc;
-        idEx.regDst = control.regDst;
-        idEx.memToReg = control.memToReg;
-        idEx.jump = control.jump;
+            return;
+
+        }
 
-        System.out.println("ID: Decoded " + instr.getOpcode());
+        if (earlyBranchResolution && (ctrl & (MicroOp.BRANCH | MicroOp.JUMP)) != 0
+                && !resolveInDecode(pcId, ctrl, regs)) {
+
+            return;
+
+        }
+
+        int n = next;
+
+        idEx.opcode[n] = MicroOp.opcode(ctrl);
+
+        idEx.pc[n] = pcId;
+
+        idEx.predictedPc[n] = ifId.predictedPc[cur];
+
+        idEx.predictorHistory[n] = ifId.predictorHistory[cur];
+
+        int rs = MicroOp.rs(regs);
+
+        int rt = MicroOp.rt(regs);
+
+        idEx.rs[n] = rs;
+
+        idEx.rt[n] = rt;
+
+        idEx.rd[n] = MicroOp.rd(regs);
+
+        idEx.shamt[n] = MicroOp.shamt(regs);
+
+        idEx.readData1[n] = readRegister(rs);
+
+        idEx.readData2[n] = readRegister(rt);
+
+        idEx.immediate[n] = instructionMemory.immediate[pcId];
+
+        idEx.aluControl[n] = MicroOp.aluControl(ctrl);
+
+        // Save pre-decoded control signals to pipeline register (fixes data hazard issue)
+        idEx.regWrite[n] = (ctrl & MicroOp.REG_WRITE) != 0;
+        idEx.memRead[n] = (ctrl & MicroOp.MEM_READ) != 0;
+        idEx.memWrite[n] = (ctrl & MicroOp.MEM_WRITE) != 0;
+        idEx.branch[n] = (ctrl & MicroOp.BRANCH) != 0;
+        idEx.aluSrc[n] = (ctrl & MicroOp.ALU_SRC) != 0;
+        idEx.regDst[n] = (ctrl & MicroOp.REG_DST) != 0;
+        idEx.memToReg[n] = (ctrl & MicroOp.MEM_TO_REG) != 0;
+        idEx.jump[n] = (ctrl & MicroOp.JUMP) != 0;
+
+        listener.decoded(pcId, idEx.opcode[n]);
+
+    }
+
+    /**
+     * Register file read in ID. The register file is written in the first half
+     * of the cycle and read in the second, so a value being written back this
+     * cycle is bypassed from MEM/WB - this keeps ID independent of whether WB
+     * has already run.
+     */
+    private int readRegister(int reg) {
+
+        int c = cur;
+
+        if (reg != 0 && memWb.regWrite[c] && memWb.writeRegister[c] == reg) {
+
+            return memWb.memToReg[c] ? memWb.memData[c] : memWb.aluResult[c];
+
+        }
+
+        return regFile.read(reg);
 
     }
 
     private void execute() {
 
-        if (idEx.instruction == null) {
+        int c = cur;
+
+        int n = next;
+
+        if (idEx.opcode[c] == MicroOp.NONE) {
 
-            exMem.clear();
+            exMem.clear(n);
 
             return;
 
         }
 
-        Instruction instr = idEx.instruction;
+        int opcode = idEx.opcode[c];
 
         // Use saved control signals from ID/EX register (fixes data hazard issue)
         // Don't call control.decode() here - use idEx.aluSrc, idEx.regDst, etc.
 
         // Apply forwarding if enabled
 
-        int forwardedData1 = idEx.readData1;
+        int readData1 = idEx.readData1[c];
 
-        int forwardedData2 = idEx.readData2;
+        int readData2 = idEx.readData2[c];
+
+        int forwardedData1 = readData1;
+
+        int forwardedData2 = readData2;
 
         if (enableForwarding) {
 
-            int newData1 = getForwardedValue(idEx.rs, idEx.readData1);
-            if (newData1 != idEx.readData1 && idEx.rs != 0) {
-                System.out.println(
-                        "  [HAZARD SOLVED] Forwarding $" + idEx.rs + ": " + idEx.readData1 + " -> " + newData1);
+            int rs = idEx.rs[c];
+            int newData1 = getForwardedValue(rs, readData1);
+            if (newData1 != readData1 && rs != 0) {
+                listener.forwarded(rs, readData1, newData1);
             }
             forwardedData1 = newData1;
 
-            int newData2 = getForwardedValue(idEx.rt, idEx.readData2);
-            if (newData2 != idEx.readData2 && idEx.rt != 0) {
-                System.out.println(
-                        "  [HAZARD SOLVED] Forwarding $" + idEx.rt + ": " + idEx.readData2 + " -> " + newData2);
+            int rt = idEx.rt[c];
+            int newData2 = getForwardedValue(rt, readData2);
+            if (newData2 != readData2 && rt != 0) {
+                listener.forwarded(rt, readData2, newData2);
             }
             forwardedData2 = newData2;
 
         }
 
         // Use saved control signal from idEx (not control.aluSrc)
-        int aluInput2 = idEx.aluSrc ? idEx.immediate : forwardedData2;
+        int aluInput2 = idEx.aluSrc[c] ? idEx.immediate[c] : forwardedData2;
 
         // Handle shift operations
 
-        if (instr.getOpcode().equals("SLL") || instr.getOpcode().equals("SRL")) {
+        boolean shift = opcode == MicroOp.SLL || opcode == MicroOp.SRL;
+
+        if (shift) {
+
+            aluInput2 = idEx.shamt[c];
+
+        }
+
+        int aluOperand1 = shift ? forwardedData2 : forwardedData1;
+
+        int aluResult = alu.execute(idEx.aluControl[c], aluOperand1, aluInput2);
+
+        // MULT/DIV hand their operands to the multiply/divide unit, MFHI/MFLO read its result
+        switch (opcode) {
+
+            case MicroOp.MULT: case MicroOp.DIV:
+                int oldHi = regFile.readHi(), oldLo = regFile.readLo();
+                MultiplyDivideUnit.compute(opcode, forwardedData1, forwardedData2, regFile);
+                if (history != null) {
+                    history.hiLoWritten(oldHi, oldLo, regFile.readHi(), regFile.readLo());
+                }
+                multiplyDivide.issue(opcode, cycles);
+                break;
+
+            case MicroOp.MFHI:
+                aluResult = regFile.readHi();
+                break;
+
+            case MicroOp.MFLO:
+                aluResult = regFile.readLo();
+                break;
 
-            aluInput2 = instr.getShamt();
+            default:
+                break;
 
         }
 
-        int aluControl = control.getALUControl(instr.getOpcode());
+        int pcEx = idEx.pc[c];
 
-        int aluOperand1 = (instr.getOpcode().equals("SLL") || instr.getOpcode().equals("SRL"))
-                ? forwardedData2
-                : forwardedData1;
+        // J carries its absolute target in the immediate field
+        int target = idEx.jump[c] ? idEx.immediate[c] : pcEx + 1 + idEx.immediate[c];
 
-        int aluResult = alu.execute(aluControl, aluOperand1, aluInput2);
+        exMem.opcode[n] = opcode;
 
-        exMem.instruction = instr;
+        exMem.pc[n] = pcEx;
 
-        exMem.aluResult = aluResult;
+        exMem.aluResult[n] = aluResult;
 
-        exMem.readData2 = forwardedData2; // Use forwarded value for store operations
+        exMem.readData2[n] = forwardedData2; // Use forwarded value for store operations
 
         // Use saved control signal from idEx for write register
-        exMem.writeRegister = idEx.regDst ? idEx.rd : idEx.rt;
+        exMem.writeRegister[n] = idEx.regDst[c] ? idEx.rd[c] : idEx.rt[c];
 
-        exMem.zero = alu.isZero();
+        exMem.zero[n] = alu.isZero();
 
-        exMem.branchTarget = idEx.pc + 1 + idEx.immediate;
+        exMem.branchTarget[n] = target;
 
-        // Handle branches - use saved control signals
+        exMem.regWrite[n] = idEx.regWrite[c];
 
-        if (idEx.branch) {
+        exMem.memRead[n] = idEx.memRead[c];
 
-            if (instr.getOpcode().equals("BEQ") && exMem.zero) {
+        exMem.memWrite[n] = idEx.memWrite[c];
 
-                pc = exMem.branchTarget;
+        exMem.memToReg[n] = idEx.memToReg[c];
 
-                // Flush pipeline (control hazard)
-                ifId.clear();
+        // Resolve branches and jumps - use saved control signals
 
-                System.out.println("  [CONTROL HAZARD] Branch taken - flushing pipeline");
-                System.out.println("EX: Branch taken to PC=" + pc);
+        boolean jump = idEx.jump[c];
 
-            } else if (instr.getOpcode().equals("BGEZ") && forwardedData1 >= 0) {
+        if ((idEx.branch[c] || jump) && !earlyBranchResolution) {
 
-                pc = exMem.branchTarget;
+            boolean taken = jump || (opcode == MicroOp.BEQ && alu.isZero())
+                    || (opcode == MicroOp.BGEZ && forwardedData1 >= 0);
 
-                // Flush pipeline (control hazard)
-                ifId.clear();
+            resolve(pcEx, jump, taken, target, idEx.predictedPc[c], idEx.predictorHistory[c]);
 
-                System.out.println("  [CONTROL HAZARD] Branch taken - flushing pipeline");
-                System.out.println("EX: Branch taken to PC=" + pc);
+        }
 
-            }
+        listener.executed(pcEx, opcode, aluResult);
+
+    }
+
+    /**
+     * Early branch resolution: compares the operands of the branch/jump in
+     * ID and redirects IF in the same cycle. Operands come from the register
+     * file, the MEM/WB bypass or, with forwarding, the EX/MEM latch; a value
+     * still being computed in EX, or loaded by the instruction in MEM, is not
+     * ready, so ID stalls. Returns false on a stall.
+     */
+    private boolean resolveInDecode(int pcId, int ctrl, int regs) {
+
+        int opcode = MicroOp.opcode(ctrl);
+
+        int rs = opcode == MicroOp.J ? 0 : MicroOp.rs(regs);
+
+        int rt = opcode == MicroOp.BEQ ? MicroOp.rt(regs) : 0;
+
+        if (enableHazardDetection && detectBranchHazard(rs, rt, opcode)) {
+
+            idEx.clear(next);
+
+            stall = true;
+
+            stallCount++;
+
+            branchStallCounts[pcId]++;
+
+            listener.stalled(pcId);
+
+            return false;
 
         }
 
-        // Handle jumps - use saved control signals
+        int a = readBranchOperand(rs, pcId);
+
+        int b = readBranchOperand(rt, pcId);
+
+        boolean jump = opcode == MicroOp.J;
+
+        boolean taken = jump || (opcode == MicroOp.BEQ && a == b) || (opcode == MicroOp.BGEZ && a >= 0);
+
+        resolve(pcId, jump, taken, instructionMemory.target(pcId), ifId.predictedPc[cur],
+                ifId.predictorHistory[cur]);
+
+        return true;
+
+    }
+
+    /**
+     * True if a source of the branch in ID is written by the instruction in
+     * EX, or loaded by the instruction in MEM
+     */
+    private boolean detectBranchHazard(int rs, int rt, int opcode) {
+
+        int c = cur;
+
+        if (idEx.opcode[c] != MicroOp.NONE && idEx.regWrite[c]) {
+
+            int dest = idEx.regDst[c] ? idEx.rd[c] : idEx.rt[c];
+
+            if (dest != 0 && (dest == rs || dest == rt)) {
+                listener.branchHazard(dest, idEx.opcode[c], opcode);
+                return true;
+            }
 
-        if (idEx.jump) {
+        }
 
-            pc = instr.getAddress();
+        if (exMem.opcode[c] != MicroOp.NONE && exMem.regWrite[c] && exMem.memRead[c]) {
 
-            // Flush pipeline (control hazard)
-            ifId.clear();
+            int dest = exMem.writeRegister[c];
 
-            System.out.println("  [CONTROL HAZARD] Jump taken - flushing pipeline");
-            System.out.println("EX: Jump to PC=" + pc);
+            if (dest != 0 && (dest == rs || dest == rt)) {
+                listener.branchHazard(dest, exMem.opcode[c], opcode);
+                return true;
+            }
 
         }
 
-        System.out.println("EX: " + instr.getOpcode() + " result=" + aluResult);
+        return false;
 
     }
 
-    private void memoryAccess() {
+    /**
+     * Branch operand read in ID, with EX/MEM-to-ID forwarding when enabled
+     */
+    private int readBranchOperand(int reg, int pcId) {
 
-        if (exMem.instruction == null) {
+        int value = readRegister(reg);
 
-            memWb.clear();
+        int c = cur;
 
-            return;
+        if (enableForwarding && reg != 0 && exMem.opcode[c] != MicroOp.NONE && exMem.regWrite[c]
+                && !exMem.memRead[c] && exMem.writeRegister[c] == reg) {
+
+            forwardExMemCounts[pcId]++;
+
+            if (exMem.aluResult[c] != value) {
+                listener.forwarded(reg, value, exMem.aluResult[c]);
+            }
+
+            value = exMem.aluResult[c];
 
         }
 
-        Instruction instr = exMem.instruction;
+        return value;
 
-        control.decode(instr.getOpcode());
+    }
 
-        int memData = 0;
+    /**
+     * Checks the prediction made in IF for a branch/jump being resolved (in
+     * EX, or in ID with early resolution) and trains the predictor. On a
+     * misprediction IF is redirected to the correct path this cycle; with
+     * resolution in EX the instruction in ID is flushed (control hazard).
+     * history is the predictor history the prediction was made with.
+     */
+    private void resolve(int pcBranch, boolean jump, boolean taken, int target, int predictedPc, int history) {
 
-        if (control.memRead) {
+        if (!jump) {
 
-            memData = memory.load(exMem.aluResult);
+            if (taken) {
+                takenCounts[pcBranch]++;
+            } else {
+                notTakenCounts[pcBranch]++;
+            }
 
-            System.out.println("MEM: Load from address " + exMem.aluResult + " = " + memData);
+        }
 
-        } else if (control.memWrite) {
+        int actualPc = taken ? target : pcBranch + 1;
 
-            memory.store(exMem.aluResult, exMem.readData2);
+        predictor.update(pcBranch, jump, taken, target, history);
 
-            System.out.println("MEM: Store " + exMem.readData2 + " to address " + exMem.aluResult);
+        if (actualPc == predictedPc) {
+
+            if (taken) {
+                listener.branchPredicted(pcBranch, target);
+            }
+
+            return;
 
         }
 
-        memWb.instruction = instr;
+        redirect = true;
 
-        memWb.aluResult = exMem.aluResult;
+        redirectPc = actualPc;
 
-        memWb.memData = memData;
+        redirectSource = pcBranch;
 
-        memWb.writeRegister = exMem.writeRegister;
+        mispredictCounts[pcBranch]++;
+
+        if (earlyBranchResolution) {
+            listener.decodeRedirected(pcBranch, actualPc);
+        } else if (!taken) {
+            listener.branchMispredicted(pcBranch, actualPc);
+        } else if (jump) {
+            listener.jumpTaken(pcBranch, target);
+        } else {
+            listener.branchTaken(pcBranch, target);
+        }
 
     }
 
-    private void writeback() {
+    private void memoryAccess() {
+
+        int c = cur;
+
+        int n = next;
 
-        if (memWb.instruction == null) {
+        if (exMem.opcode[c] == MicroOp.NONE) {
+
+            memWb.clear(n);
 
             return;
 
         }
 
-        Instruction instr = memWb.instruction;
+        int address = exMem.aluResult[c];
+
+        int memData = 0;
+
+        if (exMem.memRead[c]) {
+
+            memData = memory.load(address);
 
-        control.decode(instr.getOpcode());
+            listener.memoryLoaded(address, memData);
 
-        if (control.regWrite) {
+        } else if (exMem.memWrite[c]) {
 
-            int writeData = control.memToReg ? memWb.memData : memWb.aluResult;
+            if (history != null) {
 
-            regFile.write(memWb.writeRegister, writeData);
+                history.memoryStored(address, memory.load(address), exMem.readData2[c]);
+
+            }
 
-            System.out.println("WB: Write " + writeData + " to $" + memWb.writeRegister);
+            if (storeBitmap != null) {
+
+                storeBitmap.mark(address);
+
+            }
+
+            memory.store(address, exMem.readData2[c]);
+
+            listener.memoryStored(address, exMem.readData2[c]);
 
         }
 
+        memWb.opcode[n] = exMem.opcode[c];
+
+        memWb.pc[n] = exMem.pc[c];
+
+        memWb.aluResult[n] = address;
+
+        memWb.memData[n] = memData;
+
+        memWb.writeRegister[n] = exMem.writeRegister[c];
+
+        memWb.regWrite[n] = exMem.regWrite[c];
+
+        memWb.memToReg[n] = exMem.memToReg[c];
+
     }
 
-    private void printPipelineState() {
+    private void writeback() {
+
+        int c = cur;
 
-        System.out.println("\nPipeline State:");
+        if (memWb.opcode[c] == MicroOp.NONE) {
 
-        System.out.println("  IF/ID:  " + (ifId.instruction != null ? ifId.instruction.getOpcode() : "empty"));
+            return;
 
-        System.out.println("  ID/EX:  " + (idEx.instruction != null ? idEx.instruction.getOpcode() : "empty"));
+        }
 
-        System.out.println("  EX/MEM: " + (exMem.instruction != null ? exMem.instruction.getOpcode() : "empty"));
+        instructionCount++;
 
-        System.out.println("  MEM/WB: " + (memWb.instruction != null ? memWb.instruction.getOpcode() : "empty"));
+        executedCounts[memWb.pc[c]]++;
+
+        if (memWb.regWrite[c]) {
+
+            int writeData = memWb.memToReg[c] ? memWb.memData[c] : memWb.aluResult[c];
+
+            if (history != null) {
+
+                history.registerWritten(memWb.writeRegister[c], regFile.read(memWb.writeRegister[c]), writeData);
+
+            }
+
+            regFile.write(memWb.writeRegister[c], writeData);
+
+            listener.wroteBack(memWb.writeRegister[c], writeData);
+
+        }
 
     }
 
@@ -440,31 +1071,25 @@ class MIPSSimulator {
      * Detects load-use hazards: when a load instruction is in EX stage
      * and the current instruction in ID stage needs the loaded data
      */
-    private boolean detectLoadUseHazard(Instruction currentInstr) {
-
-        if (idEx.instruction == null) {
-            return false;
-        }
-
-        String idExOpcode = idEx.instruction.getOpcode();
+    private boolean detectLoadUseHazard(int currentControl, int currentRegisters) {
 
         // Check if instruction in EX stage is a load
-        if (!idExOpcode.equals("LW")) {
+        if (idEx.opcode[cur] != MicroOp.LW) {
             return false;
         }
 
         // Get the destination register of the load instruction
-        int loadDestReg = idEx.rt; // LW writes to rt
+        int loadDestReg = idEx.rt[cur]; // LW writes to rt
 
         // Check if current instruction reads from the load destination
-        int currentRs = currentInstr.getRs();
-        int currentRt = currentInstr.getRt();
+        int currentRs = MicroOp.rs(currentRegisters);
+        int currentRt = MicroOp.rt(currentRegisters);
+        int currentOpcode = MicroOp.opcode(currentControl);
 
         // Check for data dependency
         if ((currentRs != 0 && currentRs == loadDestReg) ||
-                (currentRt != 0 && currentRt == loadDestReg && !currentInstr.getOpcode().equals("SW"))) {
-            System.out.println("  [HAZARD DETECTED] Load-Use on $" + loadDestReg + ": " + idExOpcode + " -> "
-                    + currentInstr.getOpcode());
+                (currentRt != 0 && currentRt == loadDestReg && currentOpcode != MicroOp.SW)) {
+            listener.loadUseHazard(loadDestReg, MicroOp.LW, currentOpcode);
             return true;
         }
 
@@ -481,17 +1106,15 @@ class MIPSSimulator {
         }
 
         // Check EX/MEM stage
-        if (exMem.instruction != null) {
-            control.decode(exMem.instruction.getOpcode());
-            if (control.regWrite && exMem.writeRegister == sourceReg) {
+        if (exMem.opcode[cur] != MicroOp.NONE) {
+            if (exMem.regWrite[cur] && exMem.writeRegister[cur] == sourceReg) {
                 return true;
             }
         }
 
         // Check MEM/WB stage
-        if (memWb.instruction != null) {
-            control.decode(memWb.instruction.getOpcode());
-            if (control.regWrite && memWb.writeRegister == sourceReg) {
+        if (memWb.opcode[cur] != MicroOp.NONE) {
+            if (memWb.regWrite[cur] && memWb.writeRegister[cur] == sourceReg) {
                 return true;
             }
         }
@@ -501,8 +1124,8 @@ class MIPSSimulator {
 
     /**
      * Gets the forwarded value for a register if forwarding is possible
-     * Implements EX-to-EX and MEM-to-EX forwarding
-     * NOTE: Uses savedMemWb for MEM-to-EX forwarding since MEM stage runs before EX
+     * Implements EX-to-EX and MEM-to-EX forwarding from the current bank of
+     * EX/MEM (instruction now in MEM) and MEM/WB (instruction now in WB)
      */
     private int getForwardedValue(int sourceReg, int originalValue) {
 
@@ -510,23 +1133,24 @@ class MIPSSimulator {
             return 0; // $0 is always 0
         }
 
+        int c = cur;
+
         // EX-to-EX forwarding (from EX/MEM stage) - Higher priority
-        if (exMem.instruction != null) {
-            control.decode(exMem.instruction.getOpcode());
-            if (control.regWrite && exMem.writeRegister == sourceReg) {
+        if (exMem.opcode[c] != MicroOp.NONE) {
+            if (exMem.regWrite[c] && exMem.writeRegister[c] == sourceReg) {
                 // For load instructions, data isn't ready yet in EX/MEM, can't forward
-                if (!exMem.instruction.getOpcode().equals("LW")) {
-                    return exMem.aluResult;
+                if (!exMem.memRead[c]) {
+                    forwardExMemCounts[idEx.pc[c]]++;
+                    return exMem.aluResult[c];
                 }
             }
         }
 
-        // MEM-to-EX forwarding (from saved MEM/WB stage - before MEM stage overwrote
-        // it)
-        if (savedMemWb.instruction != null) {
-            control.decode(savedMemWb.instruction.getOpcode());
-            if (control.regWrite && savedMemWb.writeRegister == sourceReg) {
-                int forwardedValue = control.memToReg ? savedMemWb.memData : savedMemWb.aluResult;
+        // MEM-to-EX forwarding (from MEM/WB stage)
+        if (memWb.opcode[c] != MicroOp.NONE) {
+            if (memWb.regWrite[c] && memWb.writeRegister[c] == sourceReg) {
+                int forwardedValue = memWb.memToReg[c] ? memWb.memData[c] : memWb.aluResult[c];
+                forwardMemWbCounts[idEx.pc[c]]++;
                 return forwardedValue;
             }
         }
@@ -534,6 +1158,17 @@ class MIPSSimulator {
         return originalValue; // No forwarding needed
     }
 
+    /**
+     * Set the listener receiving simulation events (null for silent runs)
+     */
+    public void setListener(PipelineListener listener) {
+        this.listener = listener != null ? listener : PipelineListener.NONE;
+    }
+
+    public PipelineListener getListener() {
+        return listener;
+    }
+
     /**
      * Enable or disable hazard detection
      */
@@ -548,6 +1183,160 @@ class MIPSSimulator {
         this.enableForwarding = enable;
     }
 
+    /**
+     * Attach an L1 instruction cache to IF (null for single-cycle fetch).
+     * A miss sends bubbles down the pipeline until the line arrives.
+     */
+    public void setInstructionCache(Cache cache) {
+        this.instructionCache = cache;
+    }
+
+    public Cache getInstructionCache() {
+        return instructionCache;
+    }
+
+    /**
+     * Attach an L1 data cache to MEM (null for single-cycle memory).
+     * A miss holds the whole pipeline until the line arrives.
+     */
+    public void setDataCache(Cache cache) {
+        this.dataCache = cache;
+    }
+
+    public Cache getDataCache() {
+        return dataCache;
+    }
+
+    /**
+     * Cycles lost waiting for instruction and data cache misses
+     */
+    public long getCacheStallCycles() {
+        return counters.getTotalCacheStallCycles();
+    }
+
+    /**
+     * Statistics of every level behind the L1 caches and the average memory
+     * access time (see MemoryHierarchy)
+     */
+    public String memoryReport() {
+        return MemoryHierarchy.report(instructionCache, dataCache);
+    }
+
+    /**
+     * Cycles from a MULT entering EX until its HI/LO result can be read (default 4)
+     */
+    public void setMultiplyLatency(int cycles) {
+        multiplyDivide.setMultiplyLatency(cycles);
+    }
+
+    /**
+     * Cycles from a DIV entering EX until its HI/LO result can be read (default 12)
+     */
+    public void setDivideLatency(int cycles) {
+        multiplyDivide.setDivideLatency(cycles);
+    }
+
+    /**
+     * Pipelined multiplier (the default) or one that holds each MULT for its whole latency
+     */
+    public void setPipelinedMultiplier(boolean pipelined) {
+        multiplyDivide.setPipelinedMultiplier(pipelined);
+    }
+
+    public MultiplyDivideUnit getMultiplyDivideUnit() {
+        return multiplyDivide;
+    }
+
+    /**
+     * Stall cycles spent waiting for HI/LO results or a busy multiplier/divider
+     */
+    public int getMultiplyDivideStallCount() {
+        return multiplyDivideStallCount;
+    }
+
+    /**
+     * Resolve branches and jumps in ID (true) or in EX (false, the default).
+     * In ID a taken branch costs no flushed slot, but its operands must be
+     * ready a stage earlier, so more hazards stall.
+     */
+    public void setEarlyBranchResolution(boolean enable) {
+        this.earlyBranchResolution = enable;
+    }
+
+    public boolean isEarlyBranchResolution() {
+        return earlyBranchResolution;
+    }
+
+    /**
+     * Set the branch predictor consulted in IF (null for static not-taken)
+     */
+    public void setBranchPredictor(BranchPredictor predictor) {
+        this.predictor = predictor != null ? predictor : BranchPredictor.NOT_TAKEN;
+    }
+
+    public BranchPredictor getBranchPredictor() {
+        return predictor;
+    }
+
+    /**
+     * Branches and jumps whose predicted next PC was wrong
+     */
+    public long getMispredictions() {
+        return counters.getTotalMispredictions();
+    }
+
+    /**
+     * Records the following cycles into history, null to stop. The history
+     * starts from the current state, so attach it once the program is
+     * loaded; fast-forward and checkpoint restore start it over.
+     */
+    public void setHistory(CycleHistory history) {
+        this.history = history;
+        restartHistory();
+    }
+
+    public CycleHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Marks the words the pipeline stores to in bitmap from now on, null to stop
+     */
+    public void setStoreBitmap(StoreBitmap bitmap) {
+        this.storeBitmap = bitmap;
+    }
+
+    public StoreBitmap getStoreBitmap() {
+        return storeBitmap;
+    }
+
+    private void restartHistory() {
+        if (history != null) {
+            history.restart(this, displayIF, displayID, displayEX, displayMEM, displayWB);
+        }
+    }
+
+    /**
+     * Report the topN hot spots to the listener at the end of run(), 0 to turn off
+     */
+    public void setHotSpotReport(int topN) {
+        this.hotSpotCount = topN;
+    }
+
+    /**
+     * Per-PC counters of the loaded program (null before a program is loaded)
+     */
+    public PerformanceCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Top-N hot-spot table with pipeline totals and CPI
+     */
+    public String hotSpotReport(int topN) {
+        return counters.report(topN, cycles, instructionCount);
+    }
+
     /**
      * Get the stall count
      */
@@ -563,38 +1352,70 @@ class MIPSSimulator {
             return;
 
         cycles++;
-        System.out.println("\n--- Cycle " + cycles + " ---");
+        listener.cycleStarted(cycles);
+
+        // A data-cache miss holds every stage until the line arrives
+        int c = cur;
+        if (dataCache != null && memoryStall == 0 && !dataMissServiced && exMem.opcode[c] != MicroOp.NONE
+                && (exMem.memRead[c] || exMem.memWrite[c])) {
+            memoryStall = dataCache.access(exMem.aluResult[c], exMem.memWrite[c]);
+            if (memoryStall > 0) {
+                dataMissServiced = true;
+                listener.cacheMiss(exMem.pc[c], exMem.aluResult[c], false, memoryStall);
+            }
+        }
+        if (memoryStall > 0) {
+            memoryStall--;
+            cacheStallCounts[exMem.pc[c]]++;
+            displayWB = -1; // nothing is written back while frozen
+            listener.stagesOccupied(displayIF, displayID, displayEX, displayMEM, displayWB);
+            if (history != null) {
+                history.cycleEnded(this, displayIF, displayID, displayEX, displayMEM, displayWB);
+            }
+            listener.cycleEnded(ifId.opcode[c], idEx.opcode[c], exMem.opcode[c], memWb.opcode[c]);
+            return;
+        }
+        dataMissServiced = false;
 
         // Save WB display BEFORE writeback consumes it
-        displayWB = memWb.instruction;
+        displayWB = memWb.opcode[cur] != MicroOp.NONE ? memWb.pc[cur] : -1;
 
-        // Save memWb for forwarding before MEM stage overwrites it
-        savedMemWb.instruction = memWb.instruction;
-        savedMemWb.aluResult = memWb.aluResult;
-        savedMemWb.memData = memWb.memData;
-        savedMemWb.writeRegister = memWb.writeRegister;
+        redirect = false;
+        stall = false;
 
-        // Execute pipeline stages in CORRECT reverse order: WB -> MEM -> EX -> ID -> IF
+        // Every stage reads the cur bank and writes the next bank, so WB, MEM
+        // and EX may run in any order; ID and IF also consume this cycle's
+        // hazard signals (EX redirect, ID stall) and therefore run last
         writeback();
         memoryAccess();
         execute();
         decode();
         fetch();
 
+        // Clock edge: all four pipeline registers latch at once
+        cur = next;
+        next = cur ^ 1;
+
+        c = cur;
+
         // Save display state AFTER stages run (matches console output)
         // This correctly shows bubbles during stalls
-        displayIF = ifId.instruction;
-        displayID = idEx.instruction;
-        displayEX = exMem.instruction;
-        displayMEM = memWb.instruction;
-
-        printPipelineState();
+        displayIF = ifId.opcode[c] != MicroOp.NONE ? ifId.pc[c] : -1;
+        displayID = idEx.opcode[c] != MicroOp.NONE ? idEx.pc[c] : -1;
+        displayEX = exMem.opcode[c] != MicroOp.NONE ? exMem.pc[c] : -1;
+        displayMEM = memWb.opcode[c] != MicroOp.NONE ? memWb.pc[c] : -1;
+
+        listener.stagesOccupied(displayIF, displayID, displayEX, displayMEM, displayWB);
+        if (history != null) {
+            history.cycleEnded(this, displayIF, displayID, displayEX, displayMEM, displayWB);
+        }
+        listener.cycleEnded(ifId.opcode[c], idEx.opcode[c], exMem.opcode[c], memWb.opcode[c]);
 
-        // Check if pipeline is empty
-        if (ifId.instruction == null && idEx.instruction == null &&
-                exMem.instruction == null && memWb.instruction == null) {
+        // Check if pipeline is empty (and IF is not waiting on a cache miss)
+        if (ifId.opcode[c] == MicroOp.NONE && idEx.opcode[c] == MicroOp.NONE &&
+                exMem.opcode[c] == MicroOp.NONE && memWb.opcode[c] == MicroOp.NONE && pendingFetchPc < 0) {
             halted = true;
-            System.out.println("\n=== Simulation Complete ===");
+            listener.simulationCompleted(cycles);
         }
     }
 
@@ -605,6 +1426,21 @@ class MIPSSimulator {
         return halted;
     }
 
+    public int getPc() {
+        return pc;
+    }
+
+    /**
+     * Get the number of instructions that completed in the pipeline
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    public long getFastForwardedInstructions() {
+        return fastForwardedInstructions;
+    }
+
     /**
      * Get current cycle count
      */
@@ -618,57 +1454,27 @@ class MIPSSimulator {
      * Uses saved display values captured at correct points during cycle execution
      */
     public String[] getPipelineState() {
-        return new String[] {
-                getInstructionLabel(displayIF),
-                getInstructionLabel(displayID),
-                getInstructionLabel(displayEX),
-                getInstructionLabel(displayMEM),
-                getInstructionLabel(displayWB)
-        };
+        return getPipelineState(new int[] {displayIF, displayID, displayEX, displayMEM, displayWB});
     }
 
     /**
-     * Helper method to create a label for an instruction with details
-     * Shows opcode + destination register to differentiate similar instructions
+     * Labels of the instructions at the given IF..WB PCs (-1 for a bubble),
+     * e.g. the stage PCs of a CycleHistory state
      */
-    private String getInstructionLabel(Instruction instr) {
-        if (instr == null)
-            return null;
-
-        String opcode = instr.getOpcode();
-
-        // For R-type instructions, show destination rd
-        if (opcode.equals("ADD") || opcode.equals("SUB") || opcode.equals("AND") ||
-                opcode.equals("OR") || opcode.equals("XOR") || opcode.equals("SLT") ||
-                opcode.equals("SLL") || opcode.equals("SRL")) {
-            return opcode + " $" + instr.getRd();
-        }
-
-        // For I-type with rt as destination (ADDI, ORI, LW)
-        if (opcode.equals("ADDI") || opcode.equals("ORI") || opcode.equals("LW")) {
-            return opcode + " $" + instr.getRt();
-        }
-
-        // For SW, show the source register being stored
-        if (opcode.equals("SW")) {
-            return opcode + " $" + instr.getRt();
-        }
-
-        // For branches, show compared registers
-        if (opcode.equals("BEQ")) {
-            return "BEQ $" + instr.getRs() + ",$" + instr.getRt();
-        }
-        if (opcode.equals("BGEZ")) {
-            return "BGEZ $" + instr.getRs();
-        }
-
-        // For J, show target address
-        if (opcode.equals("J")) {
-            return "J " + instr.getAddress();
+    public String[] getPipelineState(int[] stagePcs) {
+        String[] labels = new String[5];
+        for (int i = 0; i < 5; i++) {
+            labels[i] = getInstructionLabel(stagePcs[i]);
         }
+        return labels;
+    }
 
-        // Default: just opcode
-        return opcode;
+    /**
+     * Label of the instruction at pc, as shown in the pipeline stages;
+     * null for a bubble or a pc outside the program
+     */
+    public String getInstructionLabel(int pc) {
+        return instructionMemory != null ? instructionMemory.label(pc) : null;
     }
 
 }
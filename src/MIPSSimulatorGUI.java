@@ -3,6 +3,7 @@ import javax.swing.table.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * MIPS Pipeline Simulator GUI
@@ -28,21 +29,69 @@ public class MIPSSimulatorGUI extends JFrame {
     private static final Color STAGE_MEM = new Color(186, 85, 211);
     private static final Color STAGE_WB = new Color(220, 20, 60);
 
+    // Display refresh budget while running (frames per second)
+    private static final int FRAME_RATE = 30;
+    private static final long FRAME_NANOS = 1_000_000_000L / FRAME_RATE;
+
+    // Run speeds: label and delay between cycles in ms (0 = full speed, no log)
+    private static final String[] SPEED_NAMES = { "Slow (2/s)", "Normal (10/s)", "Fast (100/s)", "Full Speed" };
+    private static final int[] SPEED_DELAYS = { 500, 100, 10, 0 };
+
+    // Hot spots logged when a run completes
+    private static final int HOT_SPOTS = 10;
+
+    // Step-back history: a snapshot every 256 cycles, the last ~100,000 cycles kept
+    private static final int HISTORY_INTERVAL = 256;
+    private static final int HISTORY_SNAPSHOTS = 400;
+
+    // Pipeline diagram: the first 2M cycles of a run (at most 18 bytes each)
+    private static final int TIMELINE_CYCLES = 1 << 21;
+
     // Simulator instance
     private MIPSSimulator simulator;
-    private String[] currentProgram;
+    private AssembledProgram currentProgram;
+
+    // Execution log: event batches recorded by the simulator are replayed
+    // into logFormatter on the EDT, then recycled through freeBatches
+    private final ByteArrayOutputStream logBuffer = new ByteArrayOutputStream();
+    private final ConsoleLogger logFormatter = new ConsoleLogger(new PrintStream(logBuffer));
+    private final ConcurrentLinkedQueue<PipelineEventBatch> freeBatches = new ConcurrentLinkedQueue<>();
+
+    // Pipeline diagram: the simulator records into timeline (also at full
+    // speed), the diagram reads it on the EDT
+    private PipelineTimeline timeline;
+    private PipelineDiagram diagram;
 
     // UI Components
     private JTextArea programInput;
     private JTextArea logArea;
     private JTable registerTable;
     private JTable memoryTable;
+    private final RegisterTableModel registerModel = new RegisterTableModel();
+    private final MemoryTableModel memoryModel = new MemoryTableModel();
+    private JTextField gotoField;
+    private JLabel memoryRangeLabel;
     private JLabel[] pipelineLabels;
     private JLabel cycleLabel;
     private JLabel stallLabel;
     private JLabel statusLabel;
-    private JButton loadBtn, stepBtn, runBtn, resetBtn;
+    private JButton loadBtn, stepBtn, stepBackBtn, runBtn, resetBtn;
+    private JSlider cycleSlider;
     private JComboBox<String> programSelector;
+    private JComboBox<String> speedSelector;
+
+    // Run state: the worker reads these while the EDT changes them
+    private volatile int cycleDelayMillis = 100;
+    private volatile boolean stopRequested;
+    private volatile DisplayState latestState;
+    private SwingWorker<Void, PipelineEventBatch> runWorker;
+    private javax.swing.Timer refreshTimer;
+
+    private DisplayState shownState;
+
+    // Cycle shown from the simulator's history, -1 while showing the live state
+    private int viewedCycle = -1;
+    private boolean updatingSlider;
 
     public MIPSSimulatorGUI() {
         super("MIPS Pipeline Simulator");
@@ -157,7 +206,7 @@ public class MIPSSimulatorGUI extends JFrame {
         selectorLabel.setForeground(TEXT_PRIMARY);
 
         String[] programs = { "Basic Hazards", "Branch Loop (BEQ)", "Jump Test", "Counter Loop (BGEZ)",
-                "Complex Program" };
+                "Complex Program", "Array Sum (labels)", "Multiply/Divide" };
         programSelector = new JComboBox<>(programs);
         programSelector.setFont(new Font("Segoe UI", Font.PLAIN, 12));
         programSelector.setBackground(BG_INPUT);
@@ -181,8 +230,8 @@ public class MIPSSimulatorGUI extends JFrame {
         inputScroll.setBorder(null);
         inputPanel.add(inputScroll, BorderLayout.CENTER);
 
-        // Log panel
-        JPanel logPanel = createTitledPanel("Execution Log", ACCENT_GREEN);
+        // Log panel, with the pipeline diagram in a second tab
+        JPanel logPanel = createTitledPanel("Execution", ACCENT_GREEN);
         logArea = new JTextArea();
         logArea.setFont(new Font("Consolas", Font.PLAIN, 12));
         logArea.setBackground(BG_INPUT);
@@ -192,7 +241,20 @@ public class MIPSSimulatorGUI extends JFrame {
 
         JScrollPane logScroll = new JScrollPane(logArea);
         logScroll.setBorder(null);
-        logPanel.add(logScroll, BorderLayout.CENTER);
+
+        diagram = new PipelineDiagram(new Color[] { STAGE_IF, STAGE_ID, STAGE_EX, STAGE_MEM, STAGE_WB },
+                BG_INPUT, TEXT_SECONDARY);
+        JScrollPane diagramScroll = new JScrollPane();
+        diagramScroll.setBorder(null);
+        diagram.install(diagramScroll);
+
+        JTabbedPane logTabs = new JTabbedPane();
+        logTabs.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        logTabs.setBackground(BG_PANEL);
+        logTabs.setForeground(TEXT_PRIMARY);
+        logTabs.addTab("Log", logScroll);
+        logTabs.addTab("Pipeline Diagram", diagramScroll);
+        logPanel.add(logTabs, BorderLayout.CENTER);
 
         // Top panel with selector + input
         JPanel topPanel = new JPanel(new BorderLayout(0, 5));
@@ -276,13 +338,7 @@ public class MIPSSimulatorGUI extends JFrame {
     private JPanel createRegisterPanel() {
         JPanel panel = createTitledPanel("Registers", ACCENT_BLUE);
 
-        String[] columns = { "Reg", "Value (Dec)", "Value (Hex)" };
-        Object[][] data = new Object[32][3];
-        for (int i = 0; i < 32; i++) {
-            data[i] = new Object[] { "$" + i, "0", "0x00000000" };
-        }
-
-        registerTable = new JTable(data, columns);
+        registerTable = new JTable(registerModel);
         styleTable(registerTable);
 
         JScrollPane scroll = new JScrollPane(registerTable);
@@ -296,23 +352,98 @@ public class MIPSSimulatorGUI extends JFrame {
     private JPanel createMemoryPanel() {
         JPanel panel = createTitledPanel("Memory", STAGE_MEM);
 
-        String[] columns = { "Address", "Value (Dec)", "Value (Hex)" };
-        Object[][] data = new Object[32][3];
-        for (int i = 0; i < 32; i++) {
-            data[i] = new Object[] { "0x" + String.format("%08X", i * 4), "0", "0x00000000" };
-        }
-
-        memoryTable = new JTable(data, columns);
+        // Rows are read from memory only when painted, so the window can span 256KB
+        memoryTable = new JTable(memoryModel);
         styleTable(memoryTable);
+        memoryTable.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                    boolean hasFocus, int row, int column) {
+                super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                if (!isSelected) {
+                    // Words stored since the last Step or Run started
+                    setBackground(memoryModel.isChanged(row) ? ACCENT_ORANGE.darker().darker() : BG_INPUT);
+                }
+                return this;
+            }
+        });
 
         JScrollPane scroll = new JScrollPane(memoryTable);
         scroll.setBorder(null);
         scroll.getViewport().setBackground(BG_INPUT);
         panel.add(scroll, BorderLayout.CENTER);
 
+        // Go to an address or data label, and the value format
+        JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 2));
+        toolbar.setBackground(BG_PANEL);
+
+        JLabel gotoLabel = new JLabel("Go to:");
+        gotoLabel.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        gotoLabel.setForeground(TEXT_PRIMARY);
+
+        gotoField = new JTextField(10);
+        gotoField.setFont(new Font("Consolas", Font.PLAIN, 12));
+        gotoField.setBackground(BG_INPUT);
+        gotoField.setForeground(TEXT_PRIMARY);
+        gotoField.setCaretColor(TEXT_PRIMARY);
+        gotoField.setToolTipText("Address (0x1000, 4096) or data label");
+        gotoField.addActionListener(e -> gotoAddress());
+
+        JCheckBox hexBox = new JCheckBox("Hex", true);
+        hexBox.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        hexBox.setBackground(BG_PANEL);
+        hexBox.setForeground(TEXT_PRIMARY);
+        hexBox.addActionListener(e -> memoryModel.setHex(hexBox.isSelected()));
+
+        memoryRangeLabel = new JLabel();
+        memoryRangeLabel.setFont(new Font("Consolas", Font.PLAIN, 11));
+        memoryRangeLabel.setForeground(TEXT_SECONDARY);
+        updateMemoryRange();
+
+        toolbar.add(gotoLabel);
+        toolbar.add(gotoField);
+        toolbar.add(hexBox);
+        toolbar.add(memoryRangeLabel);
+        panel.add(toolbar, BorderLayout.SOUTH);
+
         return panel;
     }
 
+    /**
+     * Moves the memory view to the address or data label typed in gotoField
+     */
+    private void gotoAddress() {
+        String text = gotoField.getText().trim();
+        Integer symbol = currentProgram != null ? currentProgram.getSymbol(text) : null;
+        long address;
+        if (symbol != null) {
+            address = symbol;
+        } else {
+            try {
+                address = Long.decode(text);
+            } catch (NumberFormatException ex) {
+                address = -1;
+            }
+        }
+        if (address < 0 || address > 0xFFFFFFFFL) {
+            logArea.append("Error: Not an address or data label: " + text + "\n");
+            return;
+        }
+        int row = memoryModel.showAddress((int) address);
+        updateMemoryRange();
+        memoryTable.setRowSelectionInterval(row, row);
+        Rectangle cell = memoryTable.getCellRect(row, 0, true);
+        // Center the row rather than leave it at the edge
+        cell.y -= memoryTable.getVisibleRect().height / 2;
+        cell.height = memoryTable.getVisibleRect().height;
+        memoryTable.scrollRectToVisible(cell);
+    }
+
+    private void updateMemoryRange() {
+        memoryRangeLabel.setText(MemoryTableModel.hex(memoryModel.getBase()) + " - "
+                + MemoryTableModel.hex(memoryModel.getLimit()));
+    }
+
     private void styleTable(JTable table) {
         table.setFont(new Font("Consolas", Font.PLAIN, 12));
         table.setBackground(BG_INPUT);
@@ -336,22 +467,51 @@ public class MIPSSimulatorGUI extends JFrame {
         panel.setBackground(BG_DARK);
 
         loadBtn = createStyledButton("Load Program", ACCENT_BLUE);
+        stepBackBtn = createStyledButton("Step Back", ACCENT_GREEN);
         stepBtn = createStyledButton("Step", ACCENT_GREEN);
         runBtn = createStyledButton("Run All", ACCENT_ORANGE);
         resetBtn = createStyledButton("Reset", ACCENT_RED);
 
         loadBtn.addActionListener(e -> loadProgram());
+        stepBackBtn.addActionListener(e -> stepBack());
         stepBtn.addActionListener(e -> stepSimulation());
         runBtn.addActionListener(e -> runSimulation());
         resetBtn.addActionListener(e -> resetSimulation());
 
         stepBtn.setEnabled(false);
+        stepBackBtn.setEnabled(false);
         runBtn.setEnabled(false);
 
+        // Scrubs through the recorded history; the right end is the live state
+        cycleSlider = new JSlider(0, 0, 0);
+        cycleSlider.setBackground(BG_DARK);
+        cycleSlider.setPreferredSize(new Dimension(220, 30));
+        cycleSlider.setEnabled(false);
+        cycleSlider.addChangeListener(e -> {
+            if (!updatingSlider) {
+                showCycle(cycleSlider.getValue());
+            }
+        });
+
+        speedSelector = new JComboBox<>(SPEED_NAMES);
+        speedSelector.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        speedSelector.setBackground(BG_INPUT);
+        speedSelector.setForeground(TEXT_PRIMARY);
+        speedSelector.setSelectedIndex(1);
+        speedSelector.addActionListener(e -> cycleDelayMillis = SPEED_DELAYS[speedSelector.getSelectedIndex()]);
+
+        JLabel speedLabel = new JLabel("Speed:");
+        speedLabel.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        speedLabel.setForeground(TEXT_PRIMARY);
+
         panel.add(loadBtn);
+        panel.add(stepBackBtn);
         panel.add(stepBtn);
         panel.add(runBtn);
         panel.add(resetBtn);
+        panel.add(cycleSlider);
+        panel.add(speedLabel);
+        panel.add(speedSelector);
 
         return panel;
     }
@@ -408,27 +568,30 @@ public class MIPSSimulatorGUI extends JFrame {
     }
 
     private void loadProgram() {
+        stopRunning();
         String text = programInput.getText().trim();
         if (text.isEmpty()) {
             logArea.append("Error: No program to load\n");
             return;
         }
 
-        // Parse program
-        String[] lines = text.split("\n");
-        java.util.List<String> instructions = new java.util.ArrayList<>();
-        for (String line : lines) {
-            line = line.trim();
-            if (!line.isEmpty() && !line.startsWith("#") && !line.startsWith("//")) {
-                instructions.add(line);
-            }
+        // Assemble program (labels, .data/.text, symbolic registers)
+        try {
+            currentProgram = Assembler.assemble(text);
+        } catch (IllegalArgumentException ex) {
+            logArea.append("Error: " + ex.getMessage() + "\n");
+            return;
         }
 
-        currentProgram = instructions.toArray(new String[0]);
         simulator = new MIPSSimulator();
-        simulator.loadProgram(currentProgram);
-
-        logArea.setText("Program loaded: " + currentProgram.length + " instructions\n");
+        currentProgram.loadInto(simulator);
+        simulator.setHistory(new CycleHistory(HISTORY_INTERVAL, HISTORY_SNAPSHOTS));
+        simulator.setStoreBitmap(new StoreBitmap());
+        viewedCycle = -1;
+        timeline = new PipelineTimeline(TIMELINE_CYCLES);
+        diagram.setTimeline(timeline, simulator);
+
+        logArea.setText("Program loaded: " + currentProgram.getInstructionCount() + " instructions\n");
         logArea.append("Ready to execute\n\n");
 
         stepBtn.setEnabled(true);
@@ -437,89 +600,282 @@ public class MIPSSimulatorGUI extends JFrame {
         statusLabel.setForeground(ACCENT_GREEN);
 
         updateDisplay();
+        updateHistoryControls();
     }
 
     private void stepSimulation() {
-        // Capture output
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PrintStream ps = new PrintStream(baos);
-        PrintStream old = System.out;
-        System.setOut(ps);
+        if (viewedCycle >= 0) {
+            // Stepping through history: move the view, the simulator is already ahead
+            showCycle(viewedCycle + 1);
+            return;
+        }
+
+        // Highlight only what this cycle stores
+        clearStoreMarks();
+
+        // Record this cycle's events
+        PipelineEventBatch batch = obtainBatch();
+        simulator.setListener(new TeeListener(batch, timeline));
 
         // Run one cycle
         simulator.runOneCycle();
+        simulator.setListener(null);
 
-        System.out.flush();
-        System.setOut(old);
-
-        logArea.append(baos.toString());
-        logArea.setCaretPosition(logArea.getDocument().getLength());
+        appendLog(batch);
+        flushLog();
 
         updateDisplay();
+        diagram.refresh();
 
         if (simulator.isHalted()) {
+            logArea.append("\n" + simulator.hotSpotReport(HOT_SPOTS));
             stepBtn.setEnabled(false);
             runBtn.setEnabled(false);
             statusLabel.setText("Complete");
             statusLabel.setForeground(ACCENT_GREEN);
         }
+        updateHistoryControls();
+    }
+
+    private void stepBack() {
+        showCycle((viewedCycle >= 0 ? viewedCycle : simulator.getCycles()) - 1);
+    }
+
+    /**
+     * Shows cycle from the history, or the live state from the simulator's
+     * current cycle on (EDT only, never while the Run worker is active)
+     */
+    private void showCycle(int cycle) {
+        CycleHistory history = simulator.getHistory();
+        if (cycle >= simulator.getCycles()) {
+            if (viewedCycle >= 0) {
+                viewedCycle = -1;
+                statusLabel.setText(simulator.isHalted() ? "Complete" : "Paused");
+                statusLabel.setForeground(ACCENT_GREEN);
+            }
+            updateDisplay();
+        } else if (history != null && history.contains(cycle)) {
+            viewedCycle = cycle;
+            statusLabel.setText("History");
+            statusLabel.setForeground(ACCENT_ORANGE);
+            showState(new DisplayState(simulator, history.stateAt(cycle)));
+        }
+        diagram.setMarkedCycle(viewedCycle);
+        updateHistoryControls();
+    }
+
+    /**
+     * Step Back and the slider cover the recorded cycles up to the live one;
+     * Step moves forward through history even after the program completed
+     */
+    private void updateHistoryControls() {
+        CycleHistory history = simulator.getHistory();
+        int live = simulator.getCycles();
+        int oldest = history != null && !history.isEmpty() ? history.getFirstCycle() : live;
+        int shown = viewedCycle >= 0 ? viewedCycle : live;
+        stepBackBtn.setEnabled(shown > oldest);
+        if (viewedCycle >= 0) {
+            stepBtn.setEnabled(true);
+        } else {
+            stepBtn.setEnabled(currentProgram != null && !simulator.isHalted());
+        }
+        updatingSlider = true;
+        cycleSlider.getModel().setRangeProperties(shown, 0, oldest, live, false);
+        cycleSlider.setEnabled(live > oldest);
+        updatingSlider = false;
     }
 
     private void runSimulation() {
+        if (runWorker != null) {
+            // Run button doubles as Pause while the worker is active
+            stopRequested = true;
+            return;
+        }
+
+        if (viewedCycle >= 0) {
+            showCycle(simulator.getCycles());
+        }
         stepBtn.setEnabled(false);
-        runBtn.setEnabled(false);
+        stepBackBtn.setEnabled(false);
+        cycleSlider.setEnabled(false);
+        runBtn.setText("Pause");
         statusLabel.setText("Running...");
         statusLabel.setForeground(ACCENT_ORANGE);
 
-        // Run in background thread
-        SwingWorker<Void, String> worker = new SwingWorker<Void, String>() {
+        final MIPSSimulator sim = simulator;
+        final PipelineTimeline tl = timeline;
+        clearStoreMarks();
+        stopRequested = false;
+        latestState = null;
+        if (cycleDelayMillis == 0) {
+            logArea.append("Running at full speed (cycle log suppressed)\n");
+        }
+
+        // Run in background thread; the display is refreshed by refreshTimer
+        // at FRAME_RATE from the latest snapshot, independent of the cycle rate
+        runWorker = new SwingWorker<Void, PipelineEventBatch>() {
             @Override
             protected Void doInBackground() {
-                while (!simulator.isHalted()) {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    PrintStream ps = new PrintStream(baos);
-                    PrintStream old = System.out;
-                    System.setOut(ps);
-
-                    simulator.runOneCycle();
-
-                    System.out.flush();
-                    System.setOut(old);
+                PipelineEventBatch batch = null;
+                long lastFrame = System.nanoTime();
+
+                while (!sim.isHalted() && !stopRequested) {
+                    int delay = cycleDelayMillis;
+
+                    if (delay == 0) {
+                        // Full speed: no event log, check the frame clock every 1024 cycles
+                        if (batch != null) {
+                            publish(batch);
+                            batch = null;
+                        }
+                        sim.setListener(tl);
+                        for (int i = 0; i < 1024 && !sim.isHalted(); i++) {
+                            sim.runOneCycle();
+                        }
+                    } else {
+                        if (batch == null) {
+                            batch = obtainBatch();
+                            sim.setListener(new TeeListener(batch, tl));
+                        }
+                        sim.runOneCycle();
+                    }
 
-                    publish(baos.toString());
+                    // Hand events and a display snapshot over once per frame
+                    long now = System.nanoTime();
+                    if (now - lastFrame >= FRAME_NANOS) {
+                        if (batch != null) {
+                            publish(batch);
+                            batch = obtainBatch();
+                            sim.setListener(new TeeListener(batch, tl));
+                        }
+                        latestState = new DisplayState(sim);
+                        lastFrame = now;
+                    }
 
-                    try {
-                        Thread.sleep(100);
-                    } catch (Exception e) {
+                    if (delay > 0) {
+                        try {
+                            Thread.sleep(delay);
+                        } catch (InterruptedException e) {
+                            break;
+                        }
                     }
                 }
+                if (batch != null) {
+                    publish(batch);
+                }
+                sim.setListener(null);
                 return null;
             }
 
             @Override
-            protected void process(java.util.List<String> chunks) {
-                for (String chunk : chunks) {
-                    logArea.append(chunk);
+            protected void process(java.util.List<PipelineEventBatch> batches) {
+                for (PipelineEventBatch batch : batches) {
+                    if (sim == simulator) {
+                        appendLog(batch);
+                    } else {
+                        batch.clear();
+                        freeBatches.offer(batch);
+                    }
                 }
-                logArea.setCaretPosition(logArea.getDocument().getLength());
-                updateDisplay();
+                flushLog();
             }
 
             @Override
             protected void done() {
-                statusLabel.setText("Complete");
+                refreshTimer.stop();
+                runWorker = null;
+                runBtn.setText("Run All");
+                if (sim != simulator) {
+                    // Program was reloaded or reset while running
+                    return;
+                }
+                if (cycleDelayMillis == 0) {
+                    logArea.append("Stopped at cycle " + sim.getCycles() + "\n");
+                }
+                if (sim.isHalted()) {
+                    logArea.append("\n" + sim.hotSpotReport(HOT_SPOTS));
+                    stepBtn.setEnabled(false);
+                    runBtn.setEnabled(false);
+                    statusLabel.setText("Complete");
+                } else {
+                    stepBtn.setEnabled(true);
+                    statusLabel.setText("Paused");
+                }
                 statusLabel.setForeground(ACCENT_GREEN);
                 updateDisplay();
+                diagram.refresh();
+                updateHistoryControls();
             }
         };
-        worker.execute();
+
+        if (refreshTimer == null) {
+            refreshTimer = new javax.swing.Timer(1000 / FRAME_RATE, e -> refreshFromWorker());
+        }
+        refreshTimer.start();
+        runWorker.execute();
+    }
+
+    /**
+     * Shows the most recent snapshot published by the Run worker (EDT, timer driven)
+     */
+    private void refreshFromWorker() {
+        DisplayState state = latestState;
+        if (state != null && state != shownState) {
+            showState(state);
+        }
+        diagram.refresh();
+    }
+
+    /**
+     * Asks a running worker to stop; its done() ignores the simulator once replaced
+     */
+    private void stopRunning() {
+        if (runWorker != null) {
+            stopRequested = true;
+        }
+    }
+
+    /**
+     * Starts memory highlighting over (only while the simulator is not running)
+     */
+    private void clearStoreMarks() {
+        StoreBitmap marks = simulator.getStoreBitmap();
+        if (marks != null) {
+            marks.clear();
+        }
+    }
+
+    private PipelineEventBatch obtainBatch() {
+        PipelineEventBatch batch = freeBatches.poll();
+        return batch != null ? batch : new PipelineEventBatch();
+    }
+
+    /**
+     * Formats a batch of events into the log buffer and recycles the batch (EDT only)
+     */
+    private void appendLog(PipelineEventBatch batch) {
+        batch.replay(logFormatter);
+        batch.clear();
+        freeBatches.offer(batch);
+    }
+
+    private void flushLog() {
+        logArea.append(logBuffer.toString());
+        logBuffer.reset();
+        logArea.setCaretPosition(logArea.getDocument().getLength());
     }
 
     private void resetSimulation() {
+        stopRunning();
         simulator = new MIPSSimulator();
         if (currentProgram != null) {
-            simulator.loadProgram(currentProgram);
+            currentProgram.loadInto(simulator);
+            simulator.setHistory(new CycleHistory(HISTORY_INTERVAL, HISTORY_SNAPSHOTS));
+            simulator.setStoreBitmap(new StoreBitmap());
         }
+        viewedCycle = -1;
+        timeline = new PipelineTimeline(TIMELINE_CYCLES);
+        diagram.setTimeline(currentProgram != null ? timeline : null, simulator);
 
         logArea.setText("Simulation reset\n");
         stepBtn.setEnabled(currentProgram != null);
@@ -528,36 +884,112 @@ public class MIPSSimulatorGUI extends JFrame {
         statusLabel.setForeground(ACCENT_GREEN);
 
         updateDisplay();
+        updateHistoryControls();
     }
 
     private void updateDisplay() {
+        showState(new DisplayState(simulator));
+    }
+
+    private void showState(DisplayState state) {
+        shownState = state;
+
         // Update cycle and stall count
-        cycleLabel.setText("Cycle: " + simulator.getCycles());
-        stallLabel.setText("Stalls: " + simulator.getStallCount());
+        cycleLabel.setText("Cycle: " + state.cycles);
+        stallLabel.setText("Stalls: " + state.stalls);
 
         // Update pipeline stages
-        String[] stages = simulator.getPipelineState();
-        for (int i = 0; i < 5 && i < stages.length; i++) {
-            pipelineLabels[i].setText(stages[i] == null ? "empty" : stages[i]);
+        for (int i = 0; i < 5 && i < state.stages.length; i++) {
+            pipelineLabels[i].setText(state.stages[i] == null ? "empty" : state.stages[i]);
+        }
+
+        // Update registers (only rows whose value changed)
+        registerModel.update(state.registers);
+
+        // Memory cells read the state's words when the table repaints them
+        memoryModel.setSource(state.memory, state.changes);
+    }
+
+    /**
+     * Copy of everything the display shows, taken on the thread that runs the simulator
+     */
+    private static final class DisplayState {
+        final int cycles;
+        final int stalls;
+        final String[] stages;
+        final int[] registers = new int[32];
+        // Words are not copied: live memory is peeked at when painted
+        final java.util.function.IntUnaryOperator memory;
+        final StoreBitmap changes;
+
+        DisplayState(MIPSSimulator sim) {
+            cycles = sim.getCycles();
+            stalls = sim.getStallCount();
+            stages = sim.getPipelineState();
+            RegisterFile rf = sim.getRegFile();
+            for (int i = 0; i < 32; i++) {
+                registers[i] = rf.read(i);
+            }
+            memory = sim.getMemory()::peek;
+            changes = sim.getStoreBitmap();
         }
 
-        // Update registers
-        RegisterFile rf = simulator.getRegFile();
-        for (int i = 0; i < 32; i++) {
-            int val = rf.read(i);
-            registerTable.setValueAt("$" + i, i, 0);
-            registerTable.setValueAt(String.valueOf(val), i, 1);
-            registerTable.setValueAt("0x" + String.format("%08X", val), i, 2);
+        DisplayState(MIPSSimulator sim, CycleHistory.State past) {
+            cycles = past.cycle;
+            stalls = past.stalls;
+            stages = sim.getPipelineState(past.stagePcs);
+            for (int i = 0; i < 32; i++) {
+                registers[i] = past.register(i);
+            }
+            memory = past::load;
+            changes = null;
+        }
+    }
+
+    /**
+     * Registers table rows, read from the last values given to update()
+     */
+    private static final class RegisterTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = { "Reg", "Value (Dec)", "Value (Hex)" };
+        private final int[] values = new int[32];
+
+        /**
+         * Takes new register values, notifying only the rows that changed
+         */
+        void update(int[] registers) {
+            for (int i = 0; i < 32; i++) {
+                if (registers[i] != values[i]) {
+                    values[i] = registers[i];
+                    fireTableRowsUpdated(i, i);
+                }
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return 32;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
         }
 
-        // Update memory (show first 32 words)
-        Memory mem = simulator.getMemory();
-        for (int i = 0; i < 32; i++) {
-            int addr = i * 4;
-            int val = mem.load(addr);
-            memoryTable.setValueAt("0x" + String.format("%08X", addr), i, 0);
-            memoryTable.setValueAt(String.valueOf(val), i, 1);
-            memoryTable.setValueAt("0x" + String.format("%08X", val), i, 2);
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            switch (column) {
+                case 0:
+                    return "$" + row;
+                case 1:
+                    return Integer.toString(values[row]);
+                default:
+                    return MemoryTableModel.hex(values[row]);
+            }
         }
     }
 
@@ -626,6 +1058,38 @@ public class MIPSSimulatorGUI extends JFrame {
                         "AND $6, $5, $4\n" +
                         "OR $7, $6, $3\n";
 
+            case "Array Sum (labels)":
+                return "# Array Sum Demo\n" +
+                        "# Labels, .data/.word and register names\n" +
+                        ".data\n" +
+                        "array:  .word 5, 10, 15, 20\n" +
+                        "count:  .word 4\n" +
+                        ".text\n" +
+                        "        la   $t0, array\n" +
+                        "        lw   $t1, count\n" +
+                        "        move $t2, $zero\n" +
+                        "loop:   lw   $t3, 0($t0)\n" +
+                        "        add  $t2, $t2, $t3\n" +
+                        "        addi $t0, $t0, 4\n" +
+                        "        addi $t1, $t1, -1\n" +
+                        "        beq  $t1, $zero, done\n" +
+                        "        j    loop\n" +
+                        "# Result (50) also goes to address 0\n" +
+                        "done:   sw   $t2, 0($zero)\n";
+
+            case "Multiply/Divide":
+                return "# Multiply/Divide Demo\n" +
+                        "# MFLO/MFHI stall until the multi-cycle unit is done\n" +
+                        "        li   $t0, 12\n" +
+                        "        li   $t1, 5\n" +
+                        "        mult $t0, $t1\n" +
+                        "        mflo $t2\n" +
+                        "# DIV: quotient in LO, remainder in HI\n" +
+                        "        div  $t2, $t0\n" +
+                        "        mflo $t3\n" +
+                        "        mfhi $t4\n" +
+                        "        sw   $t2, 0($zero)\n";
+
             default:
                 return "# Custom Program\n";
         }
@@ -29,6 +29,7 @@ class MIPSTest {
         System.out.println("that are resolved using forwarding paths.\n");
 
         MIPSSimulator sim = new MIPSSimulator();
+        sim.setListener(new ConsoleLogger());
 
         // Initialize registers
         sim.getRegFile().write(1, 10);
@@ -62,6 +63,7 @@ class MIPSTest {
         System.out.println("pipeline stalls because data isn't available in time.\n");
 
         MIPSSimulator sim = new MIPSSimulator();
+        sim.setListener(new ConsoleLogger());
 
         // Initialize registers and memory
         sim.getRegFile().write(1, 0); // Base address
@@ -95,6 +97,7 @@ class MIPSTest {
         System.out.println("This test combines load-use hazards and data hazards.\n");
 
         MIPSSimulator sim = new MIPSSimulator();
+        sim.setListener(new ConsoleLogger());
 
         // Initialize
         sim.getRegFile().write(1, 5);
@@ -131,6 +134,7 @@ class MIPSTest {
         System.out.println("and forwarding are disabled (for educational comparison).\n");
 
         MIPSSimulator sim = new MIPSSimulator();
+        sim.setListener(new ConsoleLogger());
         sim.setHazardDetection(false);
         sim.setForwarding(false);
 
@@ -163,6 +167,7 @@ class MIPSTest {
         System.out.println("This test demonstrates control hazards with BEQ instruction.\n");
 
         MIPSSimulator sim = new MIPSSimulator();
+        sim.setListener(new ConsoleLogger());
 
         // Program with BEQ branch
         // Branch offset is relative to PC+1, so offset=1 skips 1 instruction
@@ -193,6 +198,7 @@ class MIPSTest {
         System.out.println("This test demonstrates control hazards with J instruction.\n");
 
         MIPSSimulator sim = new MIPSSimulator();
+        sim.setListener(new ConsoleLogger());
 
         // Program with J jump - J jumps directly to the specified instruction index
         String[] program = {
@@ -0,0 +1,182 @@
+// ==================== MACHINE CODE ====================
+
+/**
+ * Real 32-bit MIPS encoding of the supported instructions.
+ * Encoding and decoding are table lookups on the primary opcode (bits 31-26)
+ * and, for R-type words, the funct field (bits 5-0). decode() writes
+ * straight into a DecodedProgram.
+ *
+ * Branch offsets are in instructions relative to PC+1, exactly as in the
+ * text syntax. J targets are instruction indexes in the simulator, so they
+ * are converted to and from real word addresses using the address where
+ * the text segment is loaded (textBase).
+ */
+final class MachineCode {
+
+    // Primary opcode field values
+    private static final int OP_SPECIAL = 0x00;
+    private static final int OP_REGIMM = 0x01;
+    private static final int OP_J = 0x02;
+    private static final int OP_BEQ = 0x04;
+    private static final int OP_ADDI = 0x08;
+    private static final int OP_ORI = 0x0D;
+    private static final int OP_LW = 0x23;
+    private static final int OP_SW = 0x2B;
+
+    // REGIMM rt field for BGEZ
+    private static final int RT_BGEZ = 0x01;
+
+    // MicroOp by primary opcode / by funct (NONE = unsupported)
+    private static final int[] BY_OPCODE = new int[64];
+    private static final int[] BY_FUNCT = new int[64];
+
+    // Opcode and funct fields by MicroOp
+    private static final int[] OPCODE_FIELD = new int[MicroOp.LAST + 1];
+    private static final int[] FUNCT_FIELD = new int[MicroOp.LAST + 1];
+
+    static {
+        funct(MicroOp.SLL, 0x00);
+        funct(MicroOp.SRL, 0x02);
+        funct(MicroOp.MFHI, 0x10);
+        funct(MicroOp.MFLO, 0x12);
+        funct(MicroOp.MULT, 0x18);
+        funct(MicroOp.DIV, 0x1A);
+        funct(MicroOp.ADD, 0x20);
+        funct(MicroOp.SUB, 0x22);
+        funct(MicroOp.AND, 0x24);
+        funct(MicroOp.OR, 0x25);
+        funct(MicroOp.XOR, 0x26);
+        funct(MicroOp.SLT, 0x2A);
+
+        opcode(MicroOp.BGEZ, OP_REGIMM);
+        opcode(MicroOp.J, OP_J);
+        opcode(MicroOp.BEQ, OP_BEQ);
+        opcode(MicroOp.ADDI, OP_ADDI);
+        opcode(MicroOp.ORI, OP_ORI);
+        opcode(MicroOp.LW, OP_LW);
+        opcode(MicroOp.SW, OP_SW);
+    }
+
+    private MachineCode() {
+    }
+
+    private static void funct(int op, int funct) {
+        BY_FUNCT[funct] = op;
+        FUNCT_FIELD[op] = funct;
+    }
+
+    private static void opcode(int op, int opcode) {
+        BY_OPCODE[opcode] = op;
+        OPCODE_FIELD[op] = opcode;
+    }
+
+    /**
+     * Encodes a whole decoded program. An empty slot has no encoding (word 0
+     * is SLL $0, $0, 0, which would load back as a NOP that executes), so a
+     * program with gaps is rejected with IllegalArgumentException.
+     */
+    public static int[] encode(DecodedProgram program, int textBase) {
+        int[] words = new int[program.length()];
+        for (int pc = 0; pc < words.length; pc++) {
+            if (!program.isValid(pc)) {
+                throw new IllegalArgumentException("Cannot encode empty instruction slot at PC=" + pc);
+            }
+            int regs = program.registers[pc];
+            words[pc] = encode(program.opcode(pc), MicroOp.rs(regs), MicroOp.rt(regs), MicroOp.rd(regs),
+                    MicroOp.shamt(regs), program.immediate[pc], pc, textBase);
+        }
+        return words;
+    }
+
+    private static int encode(int op, int rs, int rt, int rd, int shamt, int imm, int pc, int textBase) {
+        switch (op) {
+            case MicroOp.ADD: case MicroOp.SUB: case MicroOp.AND: case MicroOp.OR:
+            case MicroOp.XOR: case MicroOp.SLT: case MicroOp.SLL: case MicroOp.SRL:
+            case MicroOp.MULT: case MicroOp.DIV: case MicroOp.MFHI: case MicroOp.MFLO:
+                return rs << 21 | rt << 16 | rd << 11 | (shamt & 31) << 6 | FUNCT_FIELD[op];
+            case MicroOp.BGEZ:
+                return OP_REGIMM << 26 | rs << 21 | RT_BGEZ << 16 | signed16(imm, op);
+            case MicroOp.ORI:
+                // ORI zero-extends its immediate
+                if (imm < 0 || imm > 0xFFFF) {
+                    throw new IllegalArgumentException("ORI immediate out of range: " + imm);
+                }
+                return OP_ORI << 26 | rs << 21 | rt << 16 | imm;
+            case MicroOp.J:
+                int target = textBase + imm * 4;
+                if (((textBase + pc * 4 + 4) & 0xF0000000) != (target & 0xF0000000)) {
+                    throw new IllegalArgumentException("Jump target out of the current 256MB region: " + imm);
+                }
+                return OP_J << 26 | ((target >>> 2) & 0x03FFFFFF);
+            default:
+                return OPCODE_FIELD[op] << 26 | rs << 21 | rt << 16 | signed16(imm, op);
+        }
+    }
+
+    private static int signed16(int imm, int op) {
+        if (imm < Short.MIN_VALUE || imm > Short.MAX_VALUE) {
+            throw new IllegalArgumentException(MicroOp.mnemonic(op) + " immediate out of range: " + imm);
+        }
+        return imm & 0xFFFF;
+    }
+
+    /**
+     * Decodes machine words into instruction memory.
+     * Throws IllegalArgumentException on an instruction the simulator does
+     * not implement.
+     */
+    public static DecodedProgram decode(int[] words, int textBase) {
+        DecodedProgram program = new DecodedProgram(words.length);
+        for (int pc = 0; pc < words.length; pc++) {
+            decode(words[pc], pc, textBase, program);
+        }
+        return program;
+    }
+
+    /**
+     * Decodes one machine word into slot pc of program
+     */
+    static void decode(int word, int pc, int textBase, DecodedProgram program) {
+        int opcode = word >>> 26;
+        int rs = (word >>> 21) & 31;
+        int rt = (word >>> 16) & 31;
+        int op = opcode == OP_SPECIAL ? BY_FUNCT[word & 63] : BY_OPCODE[opcode];
+        if (opcode == OP_REGIMM && rt != RT_BGEZ) {
+            op = MicroOp.NONE;
+        }
+        if (op == MicroOp.NONE) {
+            throw new IllegalArgumentException(String.format(
+                    "Unsupported instruction word 0x%08X at PC=%d", word, pc));
+        }
+
+        int regs;
+        int imm;
+        switch (op) {
+            case MicroOp.ADD: case MicroOp.SUB: case MicroOp.AND: case MicroOp.OR:
+            case MicroOp.XOR: case MicroOp.SLT: case MicroOp.SLL: case MicroOp.SRL:
+            case MicroOp.MULT: case MicroOp.DIV: case MicroOp.MFHI: case MicroOp.MFLO:
+                regs = MicroOp.encodeRegisters(rs, rt, (word >>> 11) & 31, (word >>> 6) & 31);
+                imm = 0;
+                break;
+            case MicroOp.BGEZ:
+                // rt carries the REGIMM sub-opcode, not a register
+                regs = MicroOp.encodeRegisters(rs, 0, 0, 0);
+                imm = (short) word;
+                break;
+            case MicroOp.ORI:
+                regs = MicroOp.encodeRegisters(rs, rt, 0, 0);
+                imm = word & 0xFFFF;
+                break;
+            case MicroOp.J:
+                regs = 0;
+                int target = ((textBase + pc * 4 + 4) & 0xF0000000) | ((word & 0x03FFFFFF) << 2);
+                imm = (target - textBase) >> 2;
+                break;
+            default:
+                regs = MicroOp.encodeRegisters(rs, rt, 0, 0);
+                imm = (short) word;
+                break;
+        }
+        program.set(pc, op, regs, imm);
+    }
+}
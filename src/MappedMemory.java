@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// ==================== MAPPED MEMORY ====================
+
+/**
+ * Memory whose window [baseAddress, baseAddress + size) is a memory-mapped
+ * image file, stored big-endian like MIPS. The image lives off-heap in the
+ * OS page cache: opening it copies nothing, and every simulator that maps
+ * the same file shares the same physical pages. Addresses outside the
+ * window fall back to the sparse paged Memory.
+ *
+ * Mapping modes:
+ * - READ_WRITE: stores go to the file; force() persists them
+ * - PRIVATE: copy-on-write; stores stay in this instance, so parallel
+ *   simulators can all start from one read-only image
+ * - READ_ONLY: stores into the window throw
+ */
+class MappedMemory extends Memory {
+
+    private final MappedByteBuffer image;
+
+    private final int baseAddress;
+
+    private final long size;
+
+    private final FileChannel.MapMode mode;
+
+    private MappedMemory(MappedByteBuffer image, int baseAddress, FileChannel.MapMode mode) {
+        this.image = image;
+        this.baseAddress = baseAddress;
+        this.size = image.capacity() & ~3L; // whole words only
+        this.mode = mode;
+    }
+
+    /**
+     * Maps an existing image file; the window is the whole file (at most 2GB)
+     */
+    public static MappedMemory open(Path file, int baseAddress, FileChannel.MapMode mode) throws IOException {
+        if ((baseAddress & 3) != 0) {
+            throw new IllegalArgumentException(
+                    String.format("Image base address must be word-aligned: 0x%08X", baseAddress));
+        }
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[] { StandardOpenOption.READ }
+                : new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE };
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            return new MappedMemory(channel.map(mode, 0, channel.size()), baseAddress, mode);
+        }
+    }
+
+    /**
+     * Creates (or resizes) an image file of sizeBytes and maps it READ_WRITE
+     */
+    public static MappedMemory create(Path file, int baseAddress, int sizeBytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(sizeBytes);
+        }
+        return open(file, baseAddress, FileChannel.MapMode.READ_WRITE);
+    }
+
+    @Override
+    public int load(int address) {
+        long offset = offset(address);
+        if (offset < size) {
+            return image.getInt((int) offset);
+        }
+        return super.load(address);
+    }
+
+    @Override
+    public int peek(int address) {
+        long offset = offset(address);
+        if (offset < size) {
+            return image.getInt((int) offset);
+        }
+        return super.peek(address);
+    }
+
+    @Override
+    public void store(int address, int value) {
+        long offset = offset(address);
+        if (offset < size) {
+            if (mode == FileChannel.MapMode.READ_ONLY) {
+                throw new IllegalStateException("Store to read-only memory image at address " + address);
+            }
+            image.putInt((int) offset, value);
+            return;
+        }
+        super.store(address, value);
+    }
+
+    /**
+     * Checkpoint section: the paged memory outside the window, then the
+     * window size and its words in 4KB sparse chunks
+     */
+    @Override
+    void save(Checkpoint.Writer out) throws IOException {
+        super.save(out);
+        out.putLong(size);
+        int[] words = new int[PAGE_WORDS];
+        for (long offset = 0; offset < size; offset += PAGE_WORDS * 4) {
+            int count = (int) Math.min(PAGE_WORDS, (size - offset) >> 2);
+            for (int i = 0; i < count; i++) {
+                words[i] = image.getInt((int) offset + i * 4);
+            }
+            out.putSparse(words, count);
+        }
+    }
+
+    /**
+     * Restores a save() section taken with a window of the same size. Only
+     * words that differ are written, so a READ_ONLY image can be restored
+     * as long as the checkpoint did not change it.
+     */
+    @Override
+    void restore(Checkpoint.Reader in) throws IOException {
+        super.restore(in);
+        long savedSize = in.getLong();
+        if (savedSize != size) {
+            throw new IllegalStateException("Checkpoint memory image is " + savedSize + " bytes, mapped image is "
+                    + size);
+        }
+        int[] words = new int[PAGE_WORDS];
+        for (long offset = 0; offset < size; offset += PAGE_WORDS * 4) {
+            int count = (int) Math.min(PAGE_WORDS, (size - offset) >> 2);
+            in.getSparse(words);
+            for (int i = 0; i < count; i++) {
+                int at = (int) offset + i * 4;
+                if (image.getInt(at) != words[i]) {
+                    store(baseAddress + at, words[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Heap copy of the paged memory and of every non-zero word of the window
+     */
+    @Override
+    public Memory copy() {
+        Memory copy = super.copy();
+        for (long offset = 0; offset < size; offset += 4) {
+            int word = image.getInt((int) offset);
+            if (word != 0) {
+                copy.store(baseAddress + (int) offset, word);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Writes the stores made to a READ_WRITE image back to the file
+     */
+    @Override
+    public void force() {
+        if (mode == FileChannel.MapMode.READ_WRITE) {
+            image.force();
+        }
+    }
+
+    public int getBaseAddress() {
+        return baseAddress;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    // Unsigned distance from the base, word-aligned; >= size when outside the window
+    private long offset(int address) {
+        return ((address & ~3) - baseAddress) & 0xFFFFFFFFL;
+    }
+}
@@ -1,32 +1,47 @@
+import java.io.IOException;
+import java.io.PrintStream;
+
     // ==================== MEMORY ====================
 
+    /**
+     * Sparse data memory covering the full 32-bit address space.
+     * Words live in 4KB pages that are allocated on the first store; the
+     * page table is a two-level radix array indexed by the top 10 and next
+     * 10 address bits, and the last page used is cached so loops that stay
+     * in one page skip the table walk. Untouched memory reads as 0.
+     */
     class Memory {
 
-        private int[] memory;
+        static final int PAGE_SHIFT = 12; // 4KB pages
 
-        private static final int MEMORY_SIZE = 4096; // 4KB for demo
+        static final int PAGE_WORDS = 1 << (PAGE_SHIFT - 2);
 
+        private static final int LEVEL_BITS = 10; // 20-bit page number = 10 + 10
 
+        private static final int LEVEL_MASK = (1 << LEVEL_BITS) - 1;
 
-        public Memory() {
+        // directory[pageNumber >>> 10][pageNumber & 1023] -> page of words
+        private final int[][][] directory = new int[1 << LEVEL_BITS][][];
 
-            memory = new int[MEMORY_SIZE];
+        private int lastPageNumber = -1;
 
-        }
+        private int[] lastPage;
+
+        private int allocatedPages;
 
 
 
         public int load(int address) {
 
-            int index = address / 4; // Word-aligned
+            int[] page = page(address >>> PAGE_SHIFT, false);
 
-            if (index < 0 || index >= MEMORY_SIZE) {
+            if (page == null) {
 
-                throw new IllegalArgumentException("Memory address out of bounds: " + address);
+                return 0;
 
             }
 
-            return memory[index];
+            return page[(address >>> 2) & (PAGE_WORDS - 1)]; // Word-aligned
 
         }
 
@@ -34,15 +49,320 @@
 
         public void store(int address, int value) {
 
-            int index = address / 4; // Word-aligned
+            int[] page = page(address >>> PAGE_SHIFT, true);
+
+            page[(address >>> 2) & (PAGE_WORDS - 1)] = value; // Word-aligned
+
+        }
+
+
+
+        /**
+         * load() for a thread other than the one running the simulator, such
+         * as a viewer: it walks the page table without the last-page cache,
+         * so it changes nothing and may run while the simulator stores
+         */
+        public int peek(int address) {
+
+            int pageNumber = address >>> PAGE_SHIFT;
+
+            int[][] table = directory[pageNumber >>> LEVEL_BITS];
+
+            int[] page = table != null ? table[pageNumber & LEVEL_MASK] : null;
+
+            return page != null ? page[(address >>> 2) & (PAGE_WORDS - 1)] : 0;
+
+        }
+
+
+
+        /**
+         * Number of 4KB pages that have been written to
+         */
+        public int getAllocatedPages() {
+
+            return allocatedPages;
+
+        }
+
+
+
+        /**
+         * Checkpoint section: the number of pages holding a non-zero word,
+         * then for each the gap from the previous page number and its words
+         * in sparse form
+         */
+        void save(Checkpoint.Writer out) throws IOException {
+
+            int count = 0;
+
+            for (int[][] table : directory) {
+
+                if (table != null) {
+
+                    for (int[] page : table) {
+
+                        if (page != null && !isZero(page)) {
+
+                            count++;
+
+                        }
+
+                    }
+
+                }
+
+            }
+
+            out.putVarInt(count);
+
+            int last = -1;
+
+            for (int high = 0; high < directory.length; high++) {
+
+                int[][] table = directory[high];
+
+                if (table == null) {
+
+                    continue;
+
+                }
+
+                for (int low = 0; low < table.length; low++) {
+
+                    int[] page = table[low];
+
+                    if (page != null && !isZero(page)) {
+
+                        int pageNumber = high << LEVEL_BITS | low;
+
+                        out.putVarInt(pageNumber - last - 1);
+
+                        out.putSparse(page, PAGE_WORDS);
+
+                        last = pageNumber;
+
+                    }
+
+                }
+
+            }
+
+        }
+
+
+
+        /**
+         * Replaces the whole contents with a save() section
+         */
+        void restore(Checkpoint.Reader in) throws IOException {
+
+            clear();
+
+            int count = in.getVarInt();
+
+            int pageNumber = -1;
+
+            for (int i = 0; i < count; i++) {
+
+                pageNumber += in.getVarInt() + 1;
+
+                if (pageNumber < 0 || pageNumber >= 1 << (2 * LEVEL_BITS)) {
+
+                    throw in.corrupt("page number " + pageNumber + " out of range");
+
+                }
+
+                in.getSparse(page(pageNumber, true));
+
+            }
+
+        }
+
+
+
+        /**
+         * Independent copy of the contents, as plain paged memory
+         */
+        public Memory copy() {
+
+            Memory copy = new Memory();
+
+            for (int high = 0; high < directory.length; high++) {
+
+                int[][] table = directory[high];
+
+                if (table == null) {
+
+                    continue;
+
+                }
+
+                for (int low = 0; low < table.length; low++) {
+
+                    if (table[low] != null) {
+
+                        copy.page(high << LEVEL_BITS | low, true);
+
+                        System.arraycopy(table[low], 0, copy.lastPage, 0, PAGE_WORDS);
+
+                    }
+
+                }
+
+            }
+
+            return copy;
+
+        }
+
+
+
+        /**
+         * Makes the stores so far durable in the backing file, if there is
+         * one; heap memory has nothing to write
+         */
+        public void force() {
+
+        }
+
+
+
+        /**
+         * Copy of this memory built on previous, an earlier copy that is
+         * never stored to: only the pages numbered in changedPages[0, count)
+         * are read from this memory, every other page is shared with previous
+         */
+        public Memory copy(Memory previous, int[] changedPages, int count) {
+
+            Memory copy = new Memory();
+
+            for (int high = 0; high < directory.length; high++) {
+
+                if (previous.directory[high] != null) {
+
+                    copy.directory[high] = previous.directory[high].clone();
+
+                }
+
+            }
+
+            copy.allocatedPages = previous.allocatedPages;
+
+            for (int i = 0; i < count; i++) {
+
+                int pageNumber = changedPages[i];
+
+                int[][] table = copy.directory[pageNumber >>> LEVEL_BITS];
+
+                if (table == null || table[pageNumber & LEVEL_MASK] == null) {
+
+                    copy.page(pageNumber, true);
+
+                } else {
+
+                    table[pageNumber & LEVEL_MASK] = new int[PAGE_WORDS];
+
+                }
+
+                int[] page = copy.directory[pageNumber >>> LEVEL_BITS][pageNumber & LEVEL_MASK];
+
+                int base = pageNumber << PAGE_SHIFT;
+
+                for (int w = 0; w < PAGE_WORDS; w++) {
+
+                    page[w] = load(base + (w << 2));
+
+                }
+
+            }
+
+            copy.lastPageNumber = -1;
+
+            copy.lastPage = null;
+
+            return copy;
+
+        }
+
+
+
+        /**
+         * Drops every page: all of memory reads as 0 again
+         */
+        public void clear() {
+
+            java.util.Arrays.fill(directory, null);
+
+            lastPageNumber = -1;
 
-            if (index < 0 || index >= MEMORY_SIZE) {
+            lastPage = null;
 
-                throw new IllegalArgumentException("Memory address out of bounds: " + address);
+            allocatedPages = 0;
+
+        }
+
+
+
+        private static boolean isZero(int[] page) {
+
+            for (int word : page) {
+
+                if (word != 0) {
+
+                    return false;
+
+                }
 
             }
 
-            memory[index] = value;
+            return true;
+
+        }
+
+
+
+        private int[] page(int pageNumber, boolean allocate) {
+
+            if (pageNumber == lastPageNumber) {
+
+                return lastPage;
+
+            }
+
+            int[][] table = directory[pageNumber >>> LEVEL_BITS];
+
+            int[] page = table != null ? table[pageNumber & LEVEL_MASK] : null;
+
+            if (page == null) {
+
+                if (!allocate) {
+
+                    return null; // reads of untouched pages do not allocate
+
+                }
+
+                if (table == null) {
+
+                    table = new int[1 << LEVEL_BITS][];
+
+                    directory[pageNumber >>> LEVEL_BITS] = table;
+
+                }
+
+                page = new int[PAGE_WORDS];
+
+                table[pageNumber & LEVEL_MASK] = page;
+
+                allocatedPages++;
+
+            }
+
+            lastPageNumber = pageNumber;
+
+            lastPage = page;
+
+            return page;
 
         }
 
@@ -50,7 +370,15 @@
 
         public void printMemory(int start, int end) {
 
-            System.out.println("\n=== Memory Contents ===");
+            printMemory(start, end, System.out);
+
+        }
+
+
+
+        public void printMemory(int start, int end, PrintStream out) {
+
+            out.println("\n=== Memory Contents ===");
 
             for (int i = start; i <= end; i += 4) {
 
@@ -58,7 +386,7 @@
 
                 if (value != 0) {
 
-                    System.out.printf("Addr %d: %d (0x%08X)\n", i, value, value);
+                    out.printf("Addr %d: %d (0x%08X)\n", i, value, value);
 
                 }
 
@@ -67,5 +395,3 @@
         }
 
     }
-
-
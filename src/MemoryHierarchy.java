@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+// ==================== MEMORY HIERARCHY ====================
+
+/**
+ * Builds L1 caches, an optional shared L2 and an optional DRAM model from a
+ * properties file, so memory parameters can be swept without recompiling:
+ *
+ *   l1i = 8k:2:32:lru              Cache.parse() specs
+ *   l1d = 8k:2:32:lru:wb
+ *   l2 = 256k:8:64:lru:wb          shared by both L1s
+ *   l2.hit-latency = 10            also l1i.hit-latency, l1d.hit-latency
+ *   dram.model = row-buffer        or fixed
+ *   dram.latency = 100             fixed model
+ *   dram.banks = 8                 row-buffer model
+ *   dram.row-size = 2k
+ *   dram.row-hit = 30
+ *   dram.row-empty = 60
+ *   dram.row-conflict = 90
+ *
+ * Every key is optional. Each level misses to the next one configured; the
+ * last cache falls back to its own fixed miss penalty when there is no DRAM.
+ */
+class MemoryHierarchy {
+
+    private static final List<String> KEYS = Arrays.asList("l1i", "l1d", "l2", "l1i.hit-latency",
+            "l1d.hit-latency", "l2.hit-latency", "dram.model", "dram.latency", "dram.banks", "dram.row-size",
+            "dram.row-hit", "dram.row-empty", "dram.row-conflict");
+
+    private final Properties properties;
+
+    private MemoryHierarchy(Properties properties) {
+        this.properties = properties;
+    }
+
+    public static MemoryHierarchy load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        }
+        try {
+            return fromProperties(properties);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Checks the configuration up front by building it once
+     */
+    public static MemoryHierarchy fromProperties(Properties properties) {
+        for (String key : properties.stringPropertyNames()) {
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown memory hierarchy key: " + key);
+            }
+        }
+        MemoryHierarchy hierarchy = new MemoryHierarchy(properties);
+        hierarchy.build();
+        return hierarchy;
+    }
+
+    /**
+     * Attaches freshly built levels to sim; simulators never share state
+     */
+    public void applyTo(MIPSSimulator sim) {
+        Cache[] caches = build();
+        sim.setInstructionCache(caches[0]);
+        sim.setDataCache(caches[1]);
+    }
+
+    /**
+     * New L1 instruction and data caches (null when not configured) wired
+     * to a new L2 and DRAM
+     */
+    private Cache[] build() {
+        MemoryLevel below = buildDram();
+        String l2Spec = properties.getProperty("l2");
+        if (l2Spec != null) {
+            Cache l2 = buildCache("L2", l2Spec, "l2.hit-latency", below);
+            below = l2;
+        }
+        String l1i = properties.getProperty("l1i");
+        String l1d = properties.getProperty("l1d");
+        return new Cache[] {
+                l1i == null ? null : buildCache("L1I", l1i, "l1i.hit-latency", below),
+                l1d == null ? null : buildCache("L1D", l1d, "l1d.hit-latency", below)
+        };
+    }
+
+    private Cache buildCache(String name, String spec, String hitLatencyKey, MemoryLevel next) {
+        Cache cache = Cache.parse(name, spec.trim());
+        cache.setHitLatency(intProperty(hitLatencyKey, 0));
+        cache.setNextLevel(next);
+        return cache;
+    }
+
+    private Dram buildDram() {
+        String model = properties.getProperty("dram.model");
+        if (model == null) {
+            return null;
+        }
+        switch (model.trim().toLowerCase()) {
+            case "fixed":
+                return new Dram("DRAM", intProperty("dram.latency", 100));
+            case "row-buffer":
+                return new Dram("DRAM", intProperty("dram.banks", 8), Cache.size(properties.getProperty(
+                        "dram.row-size", "2k")), intProperty("dram.row-hit", 30), intProperty("dram.row-empty", 60),
+                        intProperty("dram.row-conflict", 90));
+            default:
+                throw new IllegalArgumentException("dram.model must be fixed or row-buffer: " + model);
+        }
+    }
+
+    private int intProperty(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Per-level statistics for the hierarchy behind the given L1s (either
+     * may be null), followed by the average memory access time of fetches
+     * and data accesses: one pipeline cycle plus the mean extra latency
+     */
+    public static String report(Cache instructionCache, Cache dataCache) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("=== Memory hierarchy ===%n"));
+        for (MemoryLevel level : levels(instructionCache, dataCache)) {
+            sb.append(level.report()).append(System.lineSeparator());
+        }
+        sb.append("AMAT:");
+        if (instructionCache != null) {
+            sb.append(String.format(" fetch %.2f cycles", 1 + instructionCache.getAverageLatency()));
+        }
+        if (dataCache != null) {
+            sb.append(String.format("%s data %.2f cycles", instructionCache != null ? "," : "",
+                    1 + dataCache.getAverageLatency()));
+        }
+        sb.append(System.lineSeparator());
+        return sb.toString();
+    }
+
+    /**
+     * Every level behind the given L1s (either may be null): both L1s
+     * first, then the levels behind them, shared levels once
+     */
+    static List<MemoryLevel> levels(Cache instructionCache, Cache dataCache) {
+        List<MemoryLevel> levels = new ArrayList<>();
+        for (MemoryLevel level : new MemoryLevel[] {instructionCache, dataCache}) {
+            if (level != null) {
+                levels.add(level);
+            }
+        }
+        for (int i = 0; i < levels.size(); i++) {
+            MemoryLevel level = levels.get(i);
+            MemoryLevel next = level instanceof Cache ? ((Cache) level).getNextLevel() : null;
+            if (next != null && !levels.contains(next)) {
+                levels.add(next);
+            }
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,46 @@
+// ==================== MEMORY LEVEL ====================
+
+/**
+ * One level of the memory hierarchy timing model (a Cache or Dram).
+ * Levels only track timing; the data itself always lives in Memory.
+ */
+interface MemoryLevel {
+
+    /**
+     * Services a read or write of the line holding address and returns the
+     * cycles it takes at this level and below
+     */
+    int access(int address, boolean write);
+
+    String getName();
+
+    /**
+     * Geometry and timing, without statistics
+     */
+    String describe();
+
+    long getAccesses();
+
+    /**
+     * Mean cycles returned by access(), 0 before the first access
+     */
+    double getAverageLatency();
+
+    /**
+     * One-line statistics summary
+     */
+    String report();
+
+    /**
+     * Clears state and statistics
+     */
+    void reset();
+
+    /**
+     * Checkpoint section: state and statistics. restore() expects a level
+     * of the same describe().
+     */
+    void save(Checkpoint.Writer out) throws java.io.IOException;
+
+    void restore(Checkpoint.Reader in) throws java.io.IOException;
+}
@@ -0,0 +1,129 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.function.IntUnaryOperator;
+
+// ==================== MEMORY TABLE MODEL ====================
+
+/**
+ * Table model over a window of WINDOW_WORDS memory words, moved with
+ * showAddress() to any part of the 4GB address space (a table over all
+ * 2^30 words would overflow its pixel height). Nothing is copied: the table
+ * asks only for the cells it paints, which read their word from the source
+ * and format it (hex or decimal) right then, so a refresh costs the rows on
+ * screen however far the window reaches.
+ */
+class MemoryTableModel extends AbstractTableModel {
+
+    static final int WINDOW_WORDS = 1 << 16;
+
+    private static final int WINDOW_BYTES = WINDOW_WORDS * 4;
+
+    private static final String[] COLUMNS = { "Address", "Value" };
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private IntUnaryOperator words = address -> 0;
+
+    private StoreBitmap changes;
+
+    // Address of row 0
+    private int base;
+
+    private boolean hex = true;
+
+    /**
+     * Reads the words from now on (e.g. live memory or a past cycle), and
+     * highlights those marked in changes (null for none)
+     */
+    public void setSource(IntUnaryOperator words, StoreBitmap changes) {
+        this.words = words;
+        this.changes = changes;
+        fireTableRowsUpdated(0, WINDOW_WORDS - 1);
+    }
+
+    public void setHex(boolean hex) {
+        this.hex = hex;
+        // The value column's name changes with the format
+        fireTableStructureChanged();
+    }
+
+    public int getBase() {
+        return base;
+    }
+
+    /**
+     * Last address in the window
+     */
+    public int getLimit() {
+        return base + WINDOW_BYTES - 4;
+    }
+
+    /**
+     * Moves the window, on half-window steps, so address is at least a
+     * quarter of a window from either edge where memory allows; returns
+     * its row
+     */
+    public int showAddress(int address) {
+        int word = address & ~3;
+        long start = ((word & 0xFFFFFFFFL) - WINDOW_BYTES / 4) & ~(WINDOW_BYTES / 2 - 1L);
+        start = Math.max(0, Math.min(start, 0x1_0000_0000L - WINDOW_BYTES));
+        if ((int) start != base) {
+            base = (int) start;
+            fireTableDataChanged();
+        }
+        return rowOf(word);
+    }
+
+    public int rowOf(int address) {
+        return ((address & ~3) - base) >>> 2;
+    }
+
+    public int addressOf(int row) {
+        return base + row * 4;
+    }
+
+    /**
+     * True when the word at row was stored to since the changes were cleared
+     */
+    public boolean isChanged(int row) {
+        return changes != null && changes.isMarked(addressOf(row));
+    }
+
+    @Override
+    public int getRowCount() {
+        return WINDOW_WORDS;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return column == 1 ? (hex ? "Value (Hex)" : "Value (Dec)") : COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int address = addressOf(row);
+        if (column == 0) {
+            return hex(address);
+        }
+        int value = words.applyAsInt(address);
+        return hex ? hex(value) : Integer.toString(value);
+    }
+
+    /**
+     * "0x" and eight upper-case digits, without going through String.format
+     */
+    static String hex(int value) {
+        char[] chars = new char[10];
+        chars[0] = '0';
+        chars[1] = 'x';
+        for (int i = 9; i >= 2; i--) {
+            chars[i] = HEX_DIGITS[value & 0xF];
+            value >>>= 4;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,113 @@
+// ==================== MICRO-OP ENCODING ====================
+
+/**
+ * Integer encoding of a decoded instruction.
+ * Every instruction is decoded once when the program is loaded into three
+ * packed ints (control word, register word, immediate), so the pipeline
+ * stages only ever compare ints and test bits instead of opcode strings.
+ */
+final class MicroOp {
+
+    // Opcodes (NONE marks an empty slot / pipeline bubble)
+    public static final int NONE = 0;
+    public static final int ADD = 1;
+    public static final int SUB = 2;
+    public static final int AND = 3;
+    public static final int OR = 4;
+    public static final int XOR = 5;
+    public static final int SLT = 6;
+    public static final int SLL = 7;
+    public static final int SRL = 8;
+    public static final int ADDI = 9;
+    public static final int ORI = 10;
+    public static final int LW = 11;
+    public static final int SW = 12;
+    public static final int BEQ = 13;
+    public static final int BGEZ = 14;
+    public static final int J = 15;
+    public static final int MULT = 16;
+    public static final int DIV = 17;
+    public static final int MFHI = 18;
+    public static final int MFLO = 19;
+
+    // Highest opcode number, for tables indexed by opcode
+    public static final int LAST = MFLO;
+
+    // Control signal bits of the control word (same meaning as ControlUnit)
+    public static final int REG_WRITE = 1 << 16;
+    public static final int MEM_READ = 1 << 17;
+    public static final int MEM_WRITE = 1 << 18;
+    public static final int BRANCH = 1 << 19;
+    public static final int ALU_SRC = 1 << 20;
+    public static final int REG_DST = 1 << 21;
+    public static final int MEM_TO_REG = 1 << 22;
+    public static final int JUMP = 1 << 23;
+
+    private static final String[] MNEMONICS = {
+            "NOP", "ADD", "SUB", "AND", "OR", "XOR", "SLT", "SLL", "SRL",
+            "ADDI", "ORI", "LW", "SW", "BEQ", "BGEZ", "J",
+            "MULT", "DIV", "MFHI", "MFLO"
+    };
+
+    private MicroOp() {
+    }
+
+    public static String mnemonic(int opcode) {
+        return MNEMONICS[opcode];
+    }
+
+    /**
+     * Packs opcode, ALU control and the control signals produced by the
+     * ControlUnit into one control word
+     */
+    public static int encodeControl(int opcode, int aluControl, ControlUnit control) {
+        int word = opcode | (aluControl << 8);
+        if (control.regWrite) word |= REG_WRITE;
+        if (control.memRead) word |= MEM_READ;
+        if (control.memWrite) word |= MEM_WRITE;
+        if (control.branch) word |= BRANCH;
+        if (control.aluSrc) word |= ALU_SRC;
+        if (control.regDst) word |= REG_DST;
+        if (control.memToReg) word |= MEM_TO_REG;
+        if (control.jump) word |= JUMP;
+        return word;
+    }
+
+    /**
+     * Packs the register fields of an instruction into one register word
+     */
+    public static int encodeRegisters(int rs, int rt, int rd, int shamt) {
+        return checkRegister(rs) | (checkRegister(rt) << 8) | (checkRegister(rd) << 16) | ((shamt & 31) << 24);
+    }
+
+    public static int opcode(int control) {
+        return control & 0xFF;
+    }
+
+    public static int aluControl(int control) {
+        return (control >>> 8) & 0xFF;
+    }
+
+    public static int rs(int registers) {
+        return registers & 0xFF;
+    }
+
+    public static int rt(int registers) {
+        return (registers >>> 8) & 0xFF;
+    }
+
+    public static int rd(int registers) {
+        return (registers >>> 16) & 0xFF;
+    }
+
+    public static int shamt(int registers) {
+        return registers >>> 24;
+    }
+
+    private static int checkRegister(int reg) {
+        if (reg < 0 || reg >= 32) {
+            throw new IllegalArgumentException("Invalid register number: " + reg);
+        }
+        return reg;
+    }
+}
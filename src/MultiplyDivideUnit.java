@@ -0,0 +1,168 @@
+// ==================== MULTIPLY/DIVIDE UNIT ====================
+
+/**
+ * Timing model of the integer multiplier and divider that sit beside the
+ * ALU in EX. MULT and DIV spend one cycle in EX like any other instruction
+ * and move on to MEM and WB, while the unit keeps working: their HI/LO
+ * result is ready latency cycles after they entered EX. The values
+ * themselves are computed at once (see compute()), since nothing that has
+ * reached EX is ever squashed.
+ *
+ * The pipeline asks waitCycles() in ID, one cycle before an instruction
+ * would enter EX:
+ * - MFHI/MFLO wait for the last MULT/DIV to finish (RAW hazard on HI/LO)
+ * - MULT waits for a non-pipelined multiplier to finish its previous
+ *   operation; a pipelined multiplier accepts one MULT every cycle
+ * - DIV waits for the divider, which is never pipelined
+ *   (structural hazards)
+ * As on the original MIPS R2000, this interlock is part of the unit and
+ * does not depend on the pipeline's hazard detection switch.
+ */
+class MultiplyDivideUnit {
+
+    private int multiplyLatency = 4;
+
+    private int divideLatency = 12;
+
+    private boolean pipelinedMultiplier = true;
+
+    // Cycle from which an MFHI/MFLO may be in EX
+    private int hiLoReady;
+
+    // Cycles from which a MULT / DIV may enter EX
+    private int multiplierFree;
+
+    private int dividerFree;
+
+    // Last MULT or DIV issued, the producer an MFHI/MFLO waits for
+    private int lastIssued = MicroOp.NONE;
+
+    private long multiplies, divides;
+
+    public void setMultiplyLatency(int cycles) {
+        if (cycles < 1) {
+            throw new IllegalArgumentException("Multiply latency must be at least 1 cycle: " + cycles);
+        }
+        this.multiplyLatency = cycles;
+    }
+
+    public int getMultiplyLatency() {
+        return multiplyLatency;
+    }
+
+    public void setDivideLatency(int cycles) {
+        if (cycles < 1) {
+            throw new IllegalArgumentException("Divide latency must be at least 1 cycle: " + cycles);
+        }
+        this.divideLatency = cycles;
+    }
+
+    public int getDivideLatency() {
+        return divideLatency;
+    }
+
+    /**
+     * A pipelined multiplier starts a new MULT every cycle; otherwise each
+     * MULT occupies it for the whole latency
+     */
+    public void setPipelinedMultiplier(boolean pipelined) {
+        this.pipelinedMultiplier = pipelined;
+    }
+
+    public boolean isPipelinedMultiplier() {
+        return pipelinedMultiplier;
+    }
+
+    /**
+     * Cycles the instruction with this opcode has to wait before it can
+     * enter EX in cycle, 0 when it can go (always 0 for other opcodes)
+     */
+    public int waitCycles(int opcode, int cycle) {
+        switch (opcode) {
+            case MicroOp.MFHI: case MicroOp.MFLO:
+                return Math.max(0, hiLoReady - cycle);
+            case MicroOp.MULT:
+                return Math.max(0, multiplierFree - cycle);
+            case MicroOp.DIV:
+                return Math.max(0, dividerFree - cycle);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Instruction a waiting opcode is held up by: the last HI/LO writer for
+     * MFHI/MFLO, the previous operation on the same unit for MULT/DIV
+     */
+    public int blockingOpcode(int opcode) {
+        return opcode == MicroOp.MFHI || opcode == MicroOp.MFLO ? lastIssued : opcode;
+    }
+
+    /**
+     * Starts a MULT or DIV that entered EX in cycle
+     */
+    public void issue(int opcode, int cycle) {
+        if (opcode == MicroOp.MULT) {
+            multiplies++;
+            multiplierFree = cycle + (pipelinedMultiplier ? 1 : multiplyLatency);
+            hiLoReady = Math.max(hiLoReady, cycle + multiplyLatency);
+        } else {
+            divides++;
+            dividerFree = cycle + divideLatency;
+            hiLoReady = Math.max(hiLoReady, cycle + divideLatency);
+        }
+        lastIssued = opcode;
+    }
+
+    /**
+     * Architectural effect of MULT (HI:LO = 64-bit signed product) or DIV
+     * (LO = quotient, HI = remainder). Division by zero leaves HI and LO
+     * unchanged, since MIPS does not define a result for it.
+     */
+    public static void compute(int opcode, int a, int b, RegisterFile regFile) {
+        if (opcode == MicroOp.MULT) {
+            long product = (long) a * b;
+            regFile.writeHiLo((int) (product >>> 32), (int) product);
+        } else if (b != 0) {
+            regFile.writeHiLo(a % b, a / b);
+        }
+    }
+
+    /**
+     * Checkpoint section: in-flight timing and operation counts (the
+     * latencies are configuration and stay as set)
+     */
+    void save(Checkpoint.Writer out) throws java.io.IOException {
+        out.putInt(hiLoReady);
+        out.putInt(multiplierFree);
+        out.putInt(dividerFree);
+        out.putInt(lastIssued);
+        out.putLong(multiplies);
+        out.putLong(divides);
+    }
+
+    void restore(Checkpoint.Reader in) throws java.io.IOException {
+        hiLoReady = in.getInt();
+        multiplierFree = in.getInt();
+        dividerFree = in.getInt();
+        lastIssued = in.getInt();
+        multiplies = in.getLong();
+        divides = in.getLong();
+    }
+
+    public long getMultiplies() {
+        return multiplies;
+    }
+
+    public long getDivides() {
+        return divides;
+    }
+
+    /**
+     * Latencies and multiplier organisation, e.g. "MULT 4 cycles (pipelined), DIV 12 cycles"
+     */
+    public String describe() {
+        return String.format("MULT %d cycles (%s), DIV %d cycles", multiplyLatency,
+                pipelinedMultiplier ? "pipelined" : "not pipelined", divideLatency);
+    }
+}
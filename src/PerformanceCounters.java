@@ -0,0 +1,198 @@
+import java.util.Arrays;
+
+// ==================== PERFORMANCE COUNTERS ====================
+
+/**
+ * Per-PC event counters kept by the pipeline while it runs.
+ * Each counter is a primitive array indexed by instruction PC, so counting
+ * is one array increment per event and costs no allocation.
+ *
+ * Lost cycles are charged to the instruction that caused them: a stall to
+ * the instruction held in ID, a flush to the branch or jump that redirected
+ * the fetch. Stalls are counted by cause: load-use hazards, MULT/DIV unit
+ * interlocks, and branch operands not yet ready for resolution in ID.
+ */
+class PerformanceCounters {
+
+    private final DecodedProgram program;
+
+    // Instructions that completed write-back, by PC
+    final long[] executed;
+
+    // Cycles an instruction was held in ID by a load-use hazard
+    final long[] loadUseStallCycles;
+
+    // Cycles an instruction was held in ID waiting for HI/LO or a busy multiplier/divider
+    final long[] multiplyDivideStallCycles;
+
+    // Cycles a branch/jump resolved in ID waited for its operands
+    final long[] branchStallCycles;
+
+    // Operands forwarded from EX/MEM (instruction in MEM) and MEM/WB (instruction in WB)
+    final long[] forwardExMem;
+
+    final long[] forwardMemWb;
+
+    final long[] branchTaken;
+
+    final long[] branchNotTaken;
+
+    // Wrong-path instructions discarded after this branch/jump redirected the fetch
+    final long[] flushes;
+
+    // Times the predicted next PC of this branch/jump was wrong
+    final long[] mispredictions;
+
+    // Cycles spent waiting for a cache miss while fetching this instruction
+    // (I-cache) or accessing memory for it (D-cache)
+    final long[] cacheStallCycles;
+
+    PerformanceCounters(DecodedProgram program) {
+        this.program = program;
+        int length = program.length();
+        executed = new long[length];
+        loadUseStallCycles = new long[length];
+        multiplyDivideStallCycles = new long[length];
+        branchStallCycles = new long[length];
+        forwardExMem = new long[length];
+        forwardMemWb = new long[length];
+        branchTaken = new long[length];
+        branchNotTaken = new long[length];
+        flushes = new long[length];
+        mispredictions = new long[length];
+        cacheStallCycles = new long[length];
+    }
+
+    public void reset() {
+        Arrays.fill(executed, 0);
+        Arrays.fill(loadUseStallCycles, 0);
+        Arrays.fill(multiplyDivideStallCycles, 0);
+        Arrays.fill(branchStallCycles, 0);
+        Arrays.fill(forwardExMem, 0);
+        Arrays.fill(forwardMemWb, 0);
+        Arrays.fill(branchTaken, 0);
+        Arrays.fill(branchNotTaken, 0);
+        Arrays.fill(flushes, 0);
+        Arrays.fill(mispredictions, 0);
+        Arrays.fill(cacheStallCycles, 0);
+    }
+
+    /**
+     * Checkpoint section: every counter array in sparse form
+     */
+    void save(Checkpoint.Writer out) throws java.io.IOException {
+        for (long[] counts : arrays()) {
+            out.putSparse(counts);
+        }
+    }
+
+    void restore(Checkpoint.Reader in) throws java.io.IOException {
+        for (long[] counts : arrays()) {
+            in.getSparse(counts);
+        }
+    }
+
+    private long[][] arrays() {
+        return new long[][] { executed, loadUseStallCycles, multiplyDivideStallCycles, branchStallCycles,
+                forwardExMem, forwardMemWb, branchTaken, branchNotTaken, flushes, mispredictions, cacheStallCycles };
+    }
+
+    /**
+     * Cycles attributed to pc: one issue cycle per execution plus every
+     * stall, flush and cache miss it caused
+     */
+    public long getCycles(int pc) {
+        return executed[pc] + getStallCycles(pc) + flushes[pc] + cacheStallCycles[pc];
+    }
+
+    /**
+     * Stall cycles of every cause charged to pc
+     */
+    public long getStallCycles(int pc) {
+        return loadUseStallCycles[pc] + multiplyDivideStallCycles[pc] + branchStallCycles[pc];
+    }
+
+    /**
+     * Cycles per execution of the instruction at pc, 0 if it never completed
+     */
+    public double getCpi(int pc) {
+        return executed[pc] == 0 ? 0.0 : (double) getCycles(pc) / executed[pc];
+    }
+
+    public long getTotalStallCycles() {
+        return sum(loadUseStallCycles) + sum(multiplyDivideStallCycles) + sum(branchStallCycles);
+    }
+
+    public long getTotalFlushes() {
+        return sum(flushes);
+    }
+
+    public long getTotalCacheStallCycles() {
+        return sum(cacheStallCycles);
+    }
+
+    public long getTotalMispredictions() {
+        return sum(mispredictions);
+    }
+
+    public long getTotalForwards() {
+        return sum(forwardExMem) + sum(forwardMemWb);
+    }
+
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * PCs of the n instructions with the most attributed cycles, hottest first
+     */
+    public int[] hotSpots(int n) {
+        // Sort (cycles, pc) pairs packed into longs; PCs fit in 31 bits
+        long[] keys = new long[executed.length];
+        int count = 0;
+        for (int pc = 0; pc < executed.length; pc++) {
+            long cycles = getCycles(pc);
+            if (cycles > 0) {
+                keys[count++] = cycles << 31 | (Integer.MAX_VALUE - pc);
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        int[] hot = new int[Math.min(n, count)];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = Integer.MAX_VALUE - (int) (keys[count - 1 - i] & Integer.MAX_VALUE);
+        }
+        return hot;
+    }
+
+    /**
+     * Table of the topN hot spots followed by pipeline-wide totals
+     */
+    public String report(int topN, long totalCycles, long instructions) {
+        int[] hot = hotSpots(topN);
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("=== Hot spots (top %d by attributed cycles) ===%n", hot.length));
+        sb.append(String.format("%6s  %-12s %12s %10s %10s %10s %9s %10s %10s %10s %10s %10s %10s %7s%n", "PC",
+                "Instruction", "Executed", "Load-use", "MULT/DIV", "Branch op", "Flushes", "Cache", "Fwd EX/MEM",
+                "Fwd MEM/WB", "Taken", "Not taken", "Mispredict", "CPI"));
+        for (int pc : hot) {
+            sb.append(String.format("%6d  %-12s %12d %10d %10d %10d %9d %10d %10d %10d %10d %10d %10d %7.2f%n", pc,
+                    program.label(pc), executed[pc], loadUseStallCycles[pc], multiplyDivideStallCycles[pc],
+                    branchStallCycles[pc], flushes[pc], cacheStallCycles[pc], forwardExMem[pc], forwardMemWb[pc],
+                    branchTaken[pc], branchNotTaken[pc], mispredictions[pc], getCpi(pc)));
+        }
+        sb.append(String.format("Cycles: %d  Instructions: %d  CPI: %.3f"
+                        + "  Stall cycles: %d (load-use %d, MULT/DIV %d, branch operands %d)  Flushes: %d"
+                        + "  Cache stall cycles: %d  Forwards: %d (EX/MEM %d, MEM/WB %d)"
+                        + "  Branches: %d taken, %d not taken  Mispredictions: %d%n",
+                totalCycles, instructions, instructions == 0 ? 0.0 : (double) totalCycles / instructions,
+                getTotalStallCycles(), sum(loadUseStallCycles), sum(multiplyDivideStallCycles),
+                sum(branchStallCycles), getTotalFlushes(), getTotalCacheStallCycles(), getTotalForwards(),
+                sum(forwardExMem), sum(forwardMemWb), sum(branchTaken), sum(branchNotTaken),
+                getTotalMispredictions()));
+        return sb.toString();
+    }
+}
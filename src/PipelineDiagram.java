@@ -0,0 +1,462 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+
+// ==================== PIPELINE DIAGRAM ====================
+
+/**
+ * Instruction-vs-cycle (Gantt) view of a PipelineTimeline: a row for every
+ * instruction fetched, a column for every cycle, each cell in the colour of
+ * the stage the instruction was in. Cells held from the previous cycle (a
+ * stall or a D-cache freeze) are drawn dark, a flushed instruction gets an X
+ * in the cycle it was dropped and the instruction that received forwarded
+ * operands a dot. The column header marks each cycle's events and shows
+ * which stages held a bubble; the row header labels the instructions.
+ *
+ * Painting covers only the clip: the cells are found column by column from
+ * the stage rows of each visible cycle, so a repaint costs the same after a
+ * million cycles as after ten. Add it to a scroll pane with install().
+ */
+final class PipelineDiagram extends JComponent implements Scrollable {
+
+    static final int CELL_WIDTH = 30;
+
+    static final int CELL_HEIGHT = 18;
+
+    private static final int HEADER_HEIGHT = 36;
+
+    private static final int LABEL_WIDTH = 180;
+
+    private static final Color STALL_COLOR = new Color(255, 99, 71);
+
+    private static final Color REDIRECT_COLOR = new Color(100, 149, 237);
+
+    private static final Color MISS_COLOR = new Color(186, 85, 211);
+
+    private static final Color FORWARD_COLOR = new Color(50, 205, 50);
+
+    private static final Color MARK_COLOR = new Color(255, 255, 255, 48);
+
+    private static final Font CELL_FONT = new Font("Consolas", Font.BOLD, 10);
+
+    private static final Font LABEL_FONT = new Font("Consolas", Font.PLAIN, 12);
+
+    private final Color[] stageColors;
+
+    private final Color[] heldColors = new Color[5];
+
+    private final Color background;
+
+    private final Color foreground;
+
+    private final Color gridColor;
+
+    private final ColumnHeader columnHeader = new ColumnHeader();
+
+    private final RowHeader rowHeader = new RowHeader();
+
+    private PipelineTimeline timeline;
+
+    private MIPSSimulator simulator;
+
+    // Size last laid out, and the cycle highlighted (-1 for none)
+    private int shownCycles;
+
+    private int shownRows;
+
+    private int markedCycle = -1;
+
+    public PipelineDiagram(Color[] stageColors, Color background, Color foreground) {
+        this.stageColors = stageColors.clone();
+        for (int s = 0; s < 5; s++) {
+            heldColors[s] = stageColors[s].darker().darker();
+        }
+        this.background = background;
+        this.foreground = foreground;
+        gridColor = background.brighter();
+        setOpaque(true);
+        ToolTipManager.sharedInstance().registerComponent(this);
+        ToolTipManager.sharedInstance().registerComponent(columnHeader);
+    }
+
+    /**
+     * Makes this the view of scroll with the cycle and instruction headers
+     */
+    public void install(JScrollPane scroll) {
+        scroll.setViewportView(this);
+        scroll.setColumnHeaderView(columnHeader);
+        scroll.setRowHeaderView(rowHeader);
+        scroll.getViewport().setBackground(background);
+        scroll.getColumnHeader().setBackground(background);
+        scroll.getRowHeader().setBackground(background);
+    }
+
+    /**
+     * Shows timeline, recorded from simulator (which labels the instructions);
+     * null clears the diagram
+     */
+    public void setTimeline(PipelineTimeline timeline, MIPSSimulator simulator) {
+        this.timeline = timeline;
+        this.simulator = simulator;
+        shownCycles = -1;
+        shownRows = -1;
+        markedCycle = -1;
+        refresh();
+    }
+
+    /**
+     * Picks up cycles recorded since the last call (EDT only). While the
+     * newest cycle is in view the diagram scrolls along with it.
+     */
+    public void refresh() {
+        PipelineTimeline t = timeline;
+        int cycles = t != null ? t.getCycleCount() : 0;
+        int rows = t != null ? t.getRowCount() : 0;
+        if (cycles == shownCycles && rows == shownRows) {
+            return;
+        }
+        Rectangle visible = getVisibleRect();
+        boolean following = shownCycles <= 0 || visible.x + visible.width >= (shownCycles - 1) * CELL_WIDTH;
+        shownCycles = cycles;
+        shownRows = rows;
+        setPreferredSize(new Dimension(cycles * CELL_WIDTH, rows * CELL_HEIGHT));
+        columnHeader.setPreferredSize(new Dimension(cycles * CELL_WIDTH, HEADER_HEIGHT));
+        rowHeader.setPreferredSize(new Dimension(LABEL_WIDTH, rows * CELL_HEIGHT));
+        revalidate();
+        columnHeader.revalidate();
+        rowHeader.revalidate();
+        repaint();
+        columnHeader.repaint();
+        rowHeader.repaint();
+        if (following && cycles > 0) {
+            scrollToIndex(cycles - 1);
+        }
+    }
+
+    /**
+     * Highlights cycle (e.g. the one shown from history) and scrolls to it;
+     * -1 removes the highlight
+     */
+    public void setMarkedCycle(int cycle) {
+        if (cycle == markedCycle) {
+            return;
+        }
+        markedCycle = cycle;
+        repaint();
+        columnHeader.repaint();
+        PipelineTimeline t = timeline;
+        if (cycle >= 0 && t != null && t.getCycleCount() > 0) {
+            int index = cycle - t.getFirstCycle();
+            if (index >= 0 && index < shownCycles) {
+                scrollToIndex(index);
+            }
+        }
+    }
+
+    /**
+     * Brings the column of entry index, with the rows in flight, into view
+     */
+    private void scrollToIndex(int index) {
+        int low = Integer.MAX_VALUE;
+        int high = -1;
+        for (int s = 0; s < 5; s++) {
+            int row = timeline.rowAt(index, s);
+            if (row != PipelineTimeline.BUBBLE) {
+                low = Math.min(low, row);
+                high = Math.max(high, row);
+            }
+        }
+        Rectangle r = new Rectangle(index * CELL_WIDTH, 0, CELL_WIDTH, CELL_HEIGHT);
+        if (high >= 0) {
+            r.y = low * CELL_HEIGHT;
+            r.height = (high - low + 1) * CELL_HEIGHT;
+        } else {
+            r.y = getVisibleRect().y;
+        }
+        scrollRectToVisible(r);
+    }
+
+    // ---- Painting: only the entries and rows inside the clip ----
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(background);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        PipelineTimeline t = timeline;
+        int cycles = Math.min(shownCycles, t != null ? t.getCycleCount() : 0);
+        if (cycles <= 0) {
+            return;
+        }
+        int from = Math.max(clip.x / CELL_WIDTH, 0);
+        int to = Math.min((clip.x + clip.width - 1) / CELL_WIDTH, cycles - 1);
+        int rowFrom = Math.max(clip.y / CELL_HEIGHT, 0);
+        int rowTo = (clip.y + clip.height - 1) / CELL_HEIGHT;
+
+        g.setColor(gridColor);
+        for (int i = from; i <= to; i++) {
+            g.drawLine(i * CELL_WIDTH, clip.y, i * CELL_WIDTH, clip.y + clip.height);
+        }
+        int marked = markedCycle >= 0 ? markedCycle - t.getFirstCycle() : -1;
+        if (marked >= from && marked <= to) {
+            g.setColor(MARK_COLOR);
+            g.fillRect(marked * CELL_WIDTH, clip.y, CELL_WIDTH, clip.height);
+        }
+
+        g.setFont(CELL_FONT);
+        FontMetrics fm = g.getFontMetrics();
+        for (int i = from; i <= to; i++) {
+            int x = i * CELL_WIDTH;
+            for (int s = 0; s < 5; s++) {
+                int row = t.rowAt(i, s);
+                if (row >= rowFrom && row <= rowTo) {
+                    boolean held = i > 0 && t.rowAt(i - 1, s) == row;
+                    paintCell(g, fm, x, row * CELL_HEIGHT, s, held);
+                }
+            }
+            if ((t.flagsAt(i) & PipelineTrace.FLUSH) != 0 && i > 0) {
+                // The instruction fetched last cycle never reaches ID
+                int row = t.rowAt(i - 1, PipelineTrace.IF);
+                if (row >= rowFrom && row <= rowTo) {
+                    int y = row * CELL_HEIGHT;
+                    g.setColor(STALL_COLOR);
+                    g.drawLine(x + 8, y + 3, x + CELL_WIDTH - 8, y + CELL_HEIGHT - 3);
+                    g.drawLine(x + 8, y + CELL_HEIGHT - 3, x + CELL_WIDTH - 8, y + 3);
+                }
+            }
+            if (t.forwardsAt(i) != 0) {
+                int row = forwardedRow(t, i);
+                if (row >= rowFrom && row <= rowTo) {
+                    g.setColor(FORWARD_COLOR);
+                    g.fillOval(x + CELL_WIDTH - 8, row * CELL_HEIGHT + 2, 5, 5);
+                }
+            }
+        }
+    }
+
+    private void paintCell(Graphics g, FontMetrics fm, int x, int y, int stage, boolean held) {
+        g.setColor(held ? heldColors[stage] : stageColors[stage]);
+        g.fillRect(x + 1, y + 1, CELL_WIDTH - 2, CELL_HEIGHT - 2);
+        if (held) {
+            g.setColor(stageColors[stage]);
+            g.drawRect(x + 1, y + 1, CELL_WIDTH - 3, CELL_HEIGHT - 3);
+        }
+        String name = PipelineTrace.STAGE_NAMES[stage];
+        g.setColor(held ? stageColors[stage] : Color.WHITE);
+        g.drawString(name, x + (CELL_WIDTH - fm.stringWidth(name)) / 2,
+                y + (CELL_HEIGHT + fm.getAscent() - fm.getDescent()) / 2);
+    }
+
+    /**
+     * Row that used the values forwarded at entry index: the one in EX, or
+     * in ID for a branch resolved there
+     */
+    private static int forwardedRow(PipelineTimeline t, int index) {
+        int row = t.rowAt(index, PipelineTrace.EX);
+        return row != PipelineTimeline.BUBBLE ? row : t.rowAt(index, PipelineTrace.ID);
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        PipelineTimeline t = timeline;
+        int index = e.getX() / CELL_WIDTH;
+        int row = e.getY() / CELL_HEIGHT;
+        if (t == null || index >= Math.min(shownCycles, t.getCycleCount()) || row >= t.getRowCount()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder("Cycle ").append(t.getFirstCycle() + index).append(": ")
+                .append(describe(t.pcOf(row)));
+        int stage = -1;
+        for (int s = 0; s < 5 && stage < 0; s++) {
+            if (t.rowAt(index, s) == row) {
+                stage = s;
+            }
+        }
+        if (stage >= 0) {
+            sb.append(" in ").append(PipelineTrace.STAGE_NAMES[stage]);
+            if (index > 0 && t.rowAt(index - 1, stage) == row) {
+                sb.append((t.flagsAt(index) & PipelineTrace.FROZEN) != 0 ? " (frozen)" : " (stalled)");
+            }
+        } else if (index > 0 && (t.flagsAt(index) & PipelineTrace.FLUSH) != 0
+                && t.rowAt(index - 1, PipelineTrace.IF) == row) {
+            sb.append(" flushed");
+        } else {
+            return null;
+        }
+        if (t.forwardsAt(index) != 0 && forwardedRow(t, index) == row) {
+            sb.append(", forwarded");
+            for (int register : PipelineTrace.forwardedRegisters(t.forwardsAt(index))) {
+                sb.append(" $").append(register);
+            }
+        }
+        return sb.toString();
+    }
+
+    private String describe(int pc) {
+        String label = simulator != null ? simulator.getInstructionLabel(pc) : null;
+        return "pc " + pc + (label != null ? " " + label : "");
+    }
+
+    // ---- Scrollable: move by whole cells ----
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(20 * CELL_WIDTH, 12 * CELL_HEIGHT);
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.HORIZONTAL ? CELL_WIDTH : CELL_HEIGHT;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        if (orientation == SwingConstants.HORIZONTAL) {
+            return Math.max(visibleRect.width - CELL_WIDTH, CELL_WIDTH);
+        }
+        return Math.max(visibleRect.height - CELL_HEIGHT, CELL_HEIGHT);
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+    }
+
+    /**
+     * Cycle numbers, event markers (S stall, X flush, R redirect, I/D cache
+     * miss, a bar while frozen) and a strip of the five stages with bubbles
+     * left hollow
+     */
+    private final class ColumnHeader extends JComponent {
+
+        ColumnHeader() {
+            setOpaque(true);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(background.darker());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            PipelineTimeline t = timeline;
+            int cycles = Math.min(shownCycles, t != null ? t.getCycleCount() : 0);
+            if (cycles <= 0) {
+                return;
+            }
+            int from = Math.max(clip.x / CELL_WIDTH, 0);
+            int to = Math.min((clip.x + clip.width - 1) / CELL_WIDTH, cycles - 1);
+            int first = t.getFirstCycle();
+            g.setFont(CELL_FONT);
+            FontMetrics fm = g.getFontMetrics();
+            // Number every column while the widest number fits, else every fifth
+            int every = fm.stringWidth(String.valueOf(first + cycles)) + 4 <= CELL_WIDTH ? 1 : 5;
+            int marked = markedCycle >= 0 ? markedCycle - first : -1;
+            for (int i = from; i <= to; i++) {
+                int x = i * CELL_WIDTH;
+                int cycle = first + i;
+                if (i == marked) {
+                    g.setColor(MARK_COLOR);
+                    g.fillRect(x, 0, CELL_WIDTH, HEADER_HEIGHT);
+                }
+                if (cycle % every == 0) {
+                    g.setColor(foreground);
+                    g.drawString(String.valueOf(cycle), x + 2, fm.getAscent() + 1);
+                }
+
+                int flags = t.flagsAt(i);
+                if ((flags & PipelineTrace.FROZEN) != 0) {
+                    g.setColor(MISS_COLOR.darker());
+                    g.fillRect(x, 14, CELL_WIDTH, 11);
+                }
+                int mx = x + 2;
+                mx = marker(g, fm, flags, PipelineTrace.STALL, "S", STALL_COLOR, mx);
+                mx = marker(g, fm, flags, PipelineTrace.FLUSH, "X", STALL_COLOR, mx);
+                mx = marker(g, fm, flags, PipelineTrace.REDIRECT, "R", REDIRECT_COLOR, mx);
+                mx = marker(g, fm, flags, PipelineTrace.FETCH_MISS, "I", MISS_COLOR, mx);
+                marker(g, fm, flags, PipelineTrace.DATA_MISS, "D", MISS_COLOR, mx);
+
+                for (int s = 0; s < 5; s++) {
+                    g.setColor(stageColors[s]);
+                    int sx = x + 2 + s * 5;
+                    if (t.rowAt(i, s) != PipelineTimeline.BUBBLE) {
+                        g.fillRect(sx, HEADER_HEIGHT - 8, 4, 5);
+                    } else {
+                        g.drawRect(sx, HEADER_HEIGHT - 8, 3, 4);
+                    }
+                }
+            }
+        }
+
+        private int marker(Graphics g, FontMetrics fm, int flags, int flag, String text, Color color, int x) {
+            if ((flags & flag) == 0) {
+                return x;
+            }
+            g.setColor(color);
+            g.drawString(text, x, 14 + fm.getAscent());
+            return x + fm.stringWidth(text) + 1;
+        }
+
+        @Override
+        public String getToolTipText(MouseEvent e) {
+            PipelineTimeline t = timeline;
+            int index = e.getX() / CELL_WIDTH;
+            if (t == null || index >= Math.min(shownCycles, t.getCycleCount())) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder("Cycle ").append(t.getFirstCycle() + index);
+            int flags = t.flagsAt(index);
+            String[] names = {"stall", "flush", "redirect", "I-cache miss", "D-cache miss", "frozen"};
+            for (int bit = 0; bit < names.length; bit++) {
+                if ((flags & (1 << bit)) != 0) {
+                    sb.append(", ").append(names[bit]);
+                }
+            }
+            String bubbles = "";
+            for (int s = 0; s < 5; s++) {
+                if (t.rowAt(index, s) == PipelineTimeline.BUBBLE) {
+                    bubbles += " " + PipelineTrace.STAGE_NAMES[s];
+                }
+            }
+            if (!bubbles.isEmpty()) {
+                sb.append("; bubble in").append(bubbles);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * PC and label of each visible instruction row
+     */
+    private final class RowHeader extends JComponent {
+
+        RowHeader() {
+            setOpaque(true);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(background.darker());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            PipelineTimeline t = timeline;
+            int rows = Math.min(shownRows, t != null ? t.getRowCount() : 0);
+            if (rows <= 0) {
+                return;
+            }
+            int from = Math.max(clip.y / CELL_HEIGHT, 0);
+            int to = Math.min((clip.y + clip.height - 1) / CELL_HEIGHT, rows - 1);
+            g.setFont(LABEL_FONT);
+            g.setColor(foreground);
+            FontMetrics fm = g.getFontMetrics();
+            for (int row = from; row <= to; row++) {
+                int y = row * CELL_HEIGHT + (CELL_HEIGHT + fm.getAscent() - fm.getDescent()) / 2;
+                g.drawString(describe(t.pcOf(row)), 6, y);
+            }
+        }
+    }
+}
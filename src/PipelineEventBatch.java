@@ -0,0 +1,275 @@
+// ==================== PIPELINE EVENT BATCH ====================
+
+/**
+ * PipelineListener that records every event as a fixed-width int record.
+ * A batch filled on the simulation thread can be handed to another thread
+ * (the Swing EDT) and replayed there into any other listener. Once the
+ * buffer has grown to the working size, recording does not allocate, so
+ * batches are meant to be cleared and reused.
+ * finalState is not recorded because it carries the live simulator.
+ */
+class PipelineEventBatch implements PipelineListener {
+
+    // Event types
+    private static final int SIMULATION_STARTED = 0;
+    private static final int CYCLE_STARTED = 1;
+    private static final int FETCHED = 2;
+    private static final int DECODED = 3;
+    private static final int LOAD_USE_HAZARD = 4;
+    private static final int STALLED = 5;
+    private static final int FORWARDED = 6;
+    private static final int BRANCH_TAKEN = 7;
+    private static final int JUMP_TAKEN = 8;
+    private static final int EXECUTED = 9;
+    private static final int MEMORY_LOADED = 10;
+    private static final int MEMORY_STORED = 11;
+    private static final int WROTE_BACK = 12;
+    private static final int CYCLE_ENDED = 13;
+    private static final int SIMULATION_COMPLETED = 14;
+    private static final int BRANCH_PREDICTED = 15;
+    private static final int BRANCH_MISPREDICTED = 16;
+    private static final int BRANCH_HAZARD = 17;
+    private static final int DECODE_REDIRECTED = 18;
+    private static final int CACHE_MISS = 19;
+    private static final int MULTIPLY_DIVIDE_HAZARD = 20;
+    private static final int FLUSHED = 21;
+    private static final int STAGES_OCCUPIED = 22;
+
+    // type + up to five int arguments
+    private static final int RECORD_SIZE = 6;
+
+    private int[] records;
+
+    private int size;
+
+    public PipelineEventBatch() {
+        records = new int[RECORD_SIZE * 256];
+    }
+
+    public int eventCount() {
+        return size / RECORD_SIZE;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Delivers the recorded events, in order, to another listener
+     */
+    public void replay(PipelineListener target) {
+        int[] r = records;
+        for (int i = 0; i < size; i += RECORD_SIZE) {
+            switch (r[i]) {
+                case SIMULATION_STARTED:
+                    target.simulationStarted();
+                    break;
+                case CYCLE_STARTED:
+                    target.cycleStarted(r[i + 1]);
+                    break;
+                case FETCHED:
+                    target.fetched(r[i + 1], r[i + 2]);
+                    break;
+                case DECODED:
+                    target.decoded(r[i + 1], r[i + 2]);
+                    break;
+                case LOAD_USE_HAZARD:
+                    target.loadUseHazard(r[i + 1], r[i + 2], r[i + 3]);
+                    break;
+                case DECODE_REDIRECTED:
+                    target.decodeRedirected(r[i + 1], r[i + 2]);
+                    break;
+                case BRANCH_HAZARD:
+                    target.branchHazard(r[i + 1], r[i + 2], r[i + 3]);
+                    break;
+                case MULTIPLY_DIVIDE_HAZARD:
+                    target.multiplyDivideHazard(r[i + 1], r[i + 2], r[i + 3]);
+                    break;
+                case STALLED:
+                    target.stalled(r[i + 1]);
+                    break;
+                case FORWARDED:
+                    target.forwarded(r[i + 1], r[i + 2], r[i + 3]);
+                    break;
+                case BRANCH_TAKEN:
+                    target.branchTaken(r[i + 1], r[i + 2]);
+                    break;
+                case JUMP_TAKEN:
+                    target.jumpTaken(r[i + 1], r[i + 2]);
+                    break;
+                case BRANCH_PREDICTED:
+                    target.branchPredicted(r[i + 1], r[i + 2]);
+                    break;
+                case BRANCH_MISPREDICTED:
+                    target.branchMispredicted(r[i + 1], r[i + 2]);
+                    break;
+                case EXECUTED:
+                    target.executed(r[i + 1], r[i + 2], r[i + 3]);
+                    break;
+                case CACHE_MISS:
+                    target.cacheMiss(r[i + 1], r[i + 2], r[i + 3] != 0, r[i + 4]);
+                    break;
+                case MEMORY_LOADED:
+                    target.memoryLoaded(r[i + 1], r[i + 2]);
+                    break;
+                case MEMORY_STORED:
+                    target.memoryStored(r[i + 1], r[i + 2]);
+                    break;
+                case WROTE_BACK:
+                    target.wroteBack(r[i + 1], r[i + 2]);
+                    break;
+                case CYCLE_ENDED:
+                    target.cycleEnded(r[i + 1], r[i + 2], r[i + 3], r[i + 4]);
+                    break;
+                case FLUSHED:
+                    target.flushed(r[i + 1], r[i + 2]);
+                    break;
+                case STAGES_OCCUPIED:
+                    target.stagesOccupied(r[i + 1], r[i + 2], r[i + 3], r[i + 4], r[i + 5]);
+                    break;
+                case SIMULATION_COMPLETED:
+                    target.simulationCompleted(r[i + 1]);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown event type: " + r[i]);
+            }
+        }
+    }
+
+    private void add(int type, int a, int b, int c, int d) {
+        add(type, a, b, c, d, 0);
+    }
+
+    private void add(int type, int a, int b, int c, int d, int e) {
+        if (size + RECORD_SIZE > records.length) {
+            records = java.util.Arrays.copyOf(records, records.length * 2);
+        }
+        int[] r = records;
+        r[size] = type;
+        r[size + 1] = a;
+        r[size + 2] = b;
+        r[size + 3] = c;
+        r[size + 4] = d;
+        r[size + 5] = e;
+        size += RECORD_SIZE;
+    }
+
+    @Override
+    public void simulationStarted() {
+        add(SIMULATION_STARTED, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void cycleStarted(int cycle) {
+        add(CYCLE_STARTED, cycle, 0, 0, 0);
+    }
+
+    @Override
+    public void fetched(int pc, int opcode) {
+        add(FETCHED, pc, opcode, 0, 0);
+    }
+
+    @Override
+    public void decoded(int pc, int opcode) {
+        add(DECODED, pc, opcode, 0, 0);
+    }
+
+    @Override
+    public void loadUseHazard(int register, int loadOpcode, int opcode) {
+        add(LOAD_USE_HAZARD, register, loadOpcode, opcode, 0);
+    }
+
+    @Override
+    public void decodeRedirected(int pc, int nextPc) {
+        add(DECODE_REDIRECTED, pc, nextPc, 0, 0);
+    }
+
+    @Override
+    public void branchHazard(int register, int producerOpcode, int branchOpcode) {
+        add(BRANCH_HAZARD, register, producerOpcode, branchOpcode, 0);
+    }
+
+    @Override
+    public void multiplyDivideHazard(int producerOpcode, int opcode, int cyclesLeft) {
+        add(MULTIPLY_DIVIDE_HAZARD, producerOpcode, opcode, cyclesLeft, 0);
+    }
+
+    @Override
+    public void stalled(int pc) {
+        add(STALLED, pc, 0, 0, 0);
+    }
+
+    @Override
+    public void forwarded(int register, int oldValue, int newValue) {
+        add(FORWARDED, register, oldValue, newValue, 0);
+    }
+
+    @Override
+    public void branchTaken(int pc, int target) {
+        add(BRANCH_TAKEN, pc, target, 0, 0);
+    }
+
+    @Override
+    public void jumpTaken(int pc, int target) {
+        add(JUMP_TAKEN, pc, target, 0, 0);
+    }
+
+    @Override
+    public void branchPredicted(int pc, int target) {
+        add(BRANCH_PREDICTED, pc, target, 0, 0);
+    }
+
+    @Override
+    public void branchMispredicted(int pc, int nextPc) {
+        add(BRANCH_MISPREDICTED, pc, nextPc, 0, 0);
+    }
+
+    @Override
+    public void executed(int pc, int opcode, int result) {
+        add(EXECUTED, pc, opcode, result, 0);
+    }
+
+    @Override
+    public void cacheMiss(int pc, int address, boolean instruction, int latency) {
+        add(CACHE_MISS, pc, address, instruction ? 1 : 0, latency);
+    }
+
+    @Override
+    public void memoryLoaded(int address, int value) {
+        add(MEMORY_LOADED, address, value, 0, 0);
+    }
+
+    @Override
+    public void memoryStored(int address, int value) {
+        add(MEMORY_STORED, address, value, 0, 0);
+    }
+
+    @Override
+    public void wroteBack(int register, int value) {
+        add(WROTE_BACK, register, value, 0, 0);
+    }
+
+    @Override
+    public void cycleEnded(int ifIdOpcode, int idExOpcode, int exMemOpcode, int memWbOpcode) {
+        add(CYCLE_ENDED, ifIdOpcode, idExOpcode, exMemOpcode, memWbOpcode);
+    }
+
+    @Override
+    public void flushed(int pc, int sourcePc) {
+        add(FLUSHED, pc, sourcePc, 0, 0);
+    }
+
+    @Override
+    public void stagesOccupied(int ifPc, int idPc, int exPc, int memPc, int wbPc) {
+        add(STAGES_OCCUPIED, ifPc, idPc, exPc, memPc, wbPc);
+    }
+
+    @Override
+    public void simulationCompleted(int cycles) {
+        add(SIMULATION_COMPLETED, cycles, 0, 0, 0);
+    }
+}
@@ -0,0 +1,131 @@
+// ==================== PIPELINE LISTENER ====================
+
+/**
+ * Receives the events produced while the pipeline runs.
+ * Every argument is a primitive (opcodes are MicroOp numbers), so the engine
+ * never builds strings itself; all methods are no-ops by default and
+ * NONE is used when nobody is listening.
+ */
+interface PipelineListener {
+
+    PipelineListener NONE = new PipelineListener() {
+    };
+
+    default void simulationStarted() {
+    }
+
+    default void cycleStarted(int cycle) {
+    }
+
+    default void fetched(int pc, int opcode) {
+    }
+
+    default void decoded(int pc, int opcode) {
+    }
+
+    default void loadUseHazard(int register, int loadOpcode, int opcode) {
+    }
+
+    /**
+     * A branch resolved in ID needs a register still being produced by the
+     * instruction in EX, or loaded by the one in MEM
+     */
+    default void branchHazard(int register, int producerOpcode, int branchOpcode) {
+    }
+
+    /**
+     * The instruction in ID cannot enter EX for cyclesLeft more cycles:
+     * an MFHI/MFLO waits for the HI/LO result of producerOpcode, or a
+     * MULT/DIV finds its unit still busy (producerOpcode == opcode)
+     */
+    default void multiplyDivideHazard(int producerOpcode, int opcode, int cyclesLeft) {
+    }
+
+    default void stalled(int pc) {
+    }
+
+    default void forwarded(int register, int oldValue, int newValue) {
+    }
+
+    default void branchTaken(int pc, int target) {
+    }
+
+    default void jumpTaken(int pc, int target) {
+    }
+
+    /**
+     * A taken branch or jump whose target was predicted in IF: no flush
+     */
+    default void branchPredicted(int pc, int target) {
+    }
+
+    /**
+     * A branch predicted taken that fell through: the target path is
+     * flushed and fetch resumes at nextPc
+     */
+    default void branchMispredicted(int pc, int nextPc) {
+    }
+
+    /**
+     * A branch or jump resolved in ID sent fetch to nextPc, which the
+     * prediction made in IF had missed; nothing is flushed
+     */
+    default void decodeRedirected(int pc, int nextPc) {
+    }
+
+    /**
+     * The instruction at pc, fetched down the wrong path, was dropped from
+     * ID by the redirect of the branch or jump at sourcePc
+     */
+    default void flushed(int pc, int sourcePc) {
+    }
+
+    default void executed(int pc, int opcode, int result) {
+    }
+
+    /**
+     * An instruction fetch (instruction true) or a load/store missed in its
+     * L1 cache and stalls for latency cycles
+     */
+    default void cacheMiss(int pc, int address, boolean instruction, int latency) {
+    }
+
+    default void memoryLoaded(int address, int value) {
+    }
+
+    default void memoryStored(int address, int value) {
+    }
+
+    default void wroteBack(int register, int value) {
+    }
+
+    /**
+     * Called at the end of every cycle with the opcode latched in each pipeline register
+     */
+    default void cycleEnded(int ifIdOpcode, int idExOpcode, int exMemOpcode, int memWbOpcode) {
+    }
+
+    /**
+     * Called just before cycleEnded with the PC each stage worked on in this
+     * cycle, -1 for a bubble (the getPipelineState() view). While a data
+     * cache miss freezes the pipeline the stages keep their PCs and WB is empty.
+     */
+    default void stagesOccupied(int ifPc, int idPc, int exPc, int memPc, int wbPc) {
+    }
+
+    default void simulationCompleted(int cycles) {
+    }
+
+    /**
+     * Called by run() once the pipeline has drained
+     */
+    default void finalState(MIPSSimulator simulator) {
+    }
+
+    /**
+     * Called by run() after finalState when a hot-spot report was requested
+     * with setHotSpotReport(topN)
+     */
+    default void hotSpots(MIPSSimulator simulator, int topN) {
+    }
+}
@@ -0,0 +1,178 @@
+// ==================== PIPELINE TIMELINE ====================
+
+/**
+ * In-memory columnar form of a pipeline trace, behind the pipeline diagram:
+ * every instruction fetched gets a row, and every cycle records which row
+ * each stage holds. Columns are chunked arrays, so growing never copies:
+ *
+ *   per cycle: newest row (int), distance of each stage's row from it
+ *              (5 bytes, 0xFF for a bubble), trace flags (byte) and
+ *              forwarded registers (int), as in PipelineTrace
+ *   per row:   pc (int)
+ *
+ * That is at most 18 bytes per cycle; recording stops after maxCycles.
+ * One thread records (the one running the simulator) while others read:
+ * cycles and rows are published by the volatile counts, after their data.
+ */
+final class PipelineTimeline extends PipelineTrace.Recorder {
+
+    static final int BUBBLE = -1;
+
+    private static final int CHUNK_SHIFT = 16;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int maxCycles;
+
+    private final int[][] newestRows;
+
+    private final byte[][][] distances = new byte[5][][];
+
+    private final byte[][] flags;
+
+    private final int[][] forwards;
+
+    private final int[][] rowPcs;
+
+    // Simulator cycle of the first entry, -1 until one is recorded
+    private volatile int firstCycle = -1;
+
+    private volatile int cycleCount;
+
+    private volatile int rowCount;
+
+    // Recording state: the row in each stage after the last cycle recorded
+    private final int[] stageRows = {BUBBLE, BUBBLE, BUBBLE, BUBBLE, BUBBLE};
+
+    private int rows;
+
+    public PipelineTimeline(int maxCycles) {
+        this.maxCycles = maxCycles;
+        int chunks = (maxCycles + CHUNK_MASK) >>> CHUNK_SHIFT;
+        newestRows = new int[chunks][];
+        for (int s = 0; s < 5; s++) {
+            distances[s] = new byte[chunks][];
+        }
+        flags = new byte[chunks][];
+        forwards = new int[chunks][];
+        // At most one fetch per cycle, plus the instructions already in flight
+        rowPcs = new int[(maxCycles + 5 + CHUNK_MASK) >>> CHUNK_SHIFT][];
+    }
+
+    public int getMaxCycles() {
+        return maxCycles;
+    }
+
+    public boolean isFull() {
+        return cycleCount == maxCycles;
+    }
+
+    /**
+     * Simulator cycle of entry 0, -1 while empty
+     */
+    public int getFirstCycle() {
+        return firstCycle;
+    }
+
+    public int getCycleCount() {
+        return cycleCount;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Row in stage (PipelineTrace.IF..WB) at entry index, BUBBLE for none
+     */
+    public int rowAt(int index, int stage) {
+        int distance = distances[stage][index >>> CHUNK_SHIFT][index & CHUNK_MASK] & 0xFF;
+        return distance == 0xFF ? BUBBLE : newestRows[index >>> CHUNK_SHIFT][index & CHUNK_MASK] - distance;
+    }
+
+    /**
+     * PipelineTrace flag bits of entry index
+     */
+    public int flagsAt(int index) {
+        return flags[index >>> CHUNK_SHIFT][index & CHUNK_MASK] & 0xFF;
+    }
+
+    /**
+     * Registers forwarded at entry index, packed as in PipelineTrace
+     */
+    public int forwardsAt(int index) {
+        return forwards[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public int pcOf(int row) {
+        return rowPcs[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    /**
+     * Works out which row each stage holds from the stage PCs: instructions
+     * move one stage per cycle, except that a stall holds IF (its bubble
+     * shows in ID) and a D-cache freeze holds every stage. A PC not coming
+     * from the previous stage starts a new row, from WB to IF so that older
+     * instructions get the lower rows.
+     */
+    @Override
+    protected void record(int cycle, int ifPc, int idPc, int exPc, int memPc, int wbPc, int flags, int forwards) {
+        int index = cycleCount;
+        if (index == maxCycles) {
+            return;
+        }
+        boolean frozen = (flags & PipelineTrace.FROZEN) != 0;
+        boolean stalled = (flags & PipelineTrace.STALL) != 0;
+        int[] r = stageRows;
+        r[PipelineTrace.WB] = frozen ? BUBBLE : next(r[PipelineTrace.MEM], wbPc);
+        r[PipelineTrace.MEM] = next(frozen ? r[PipelineTrace.MEM] : r[PipelineTrace.EX], memPc);
+        r[PipelineTrace.EX] = next(frozen ? r[PipelineTrace.EX] : r[PipelineTrace.ID], exPc);
+        r[PipelineTrace.ID] = next(frozen ? r[PipelineTrace.ID] : r[PipelineTrace.IF], idPc);
+        r[PipelineTrace.IF] = next(frozen || stalled ? r[PipelineTrace.IF] : BUBBLE, ifPc);
+
+        int chunk = index >>> CHUNK_SHIFT;
+        int at = index & CHUNK_MASK;
+        if (at == 0) {
+            newestRows[chunk] = new int[CHUNK_SIZE];
+            for (int s = 0; s < 5; s++) {
+                distances[s][chunk] = new byte[CHUNK_SIZE];
+            }
+            this.flags[chunk] = new byte[CHUNK_SIZE];
+            this.forwards[chunk] = new int[CHUNK_SIZE];
+        }
+        int newest = rows - 1;
+        newestRows[chunk][at] = newest;
+        for (int s = 0; s < 5; s++) {
+            int distance = r[s] == BUBBLE ? 0xFF : Math.min(newest - r[s], 0xFE);
+            distances[s][chunk][at] = (byte) distance;
+        }
+        this.flags[chunk][at] = (byte) flags;
+        this.forwards[chunk][at] = forwards;
+
+        if (index == 0) {
+            firstCycle = cycle;
+        }
+        rowCount = rows;
+        cycleCount = index + 1;
+    }
+
+    /**
+     * Row holding pc: the row coming from (or staying in) the stage, or a new one
+     */
+    private int next(int from, int pc) {
+        if (pc < 0) {
+            return BUBBLE;
+        }
+        if (from != BUBBLE && pcOf(from) == pc) {
+            return from;
+        }
+        int row = rows++;
+        if ((row & CHUNK_MASK) == 0) {
+            rowPcs[row >>> CHUNK_SHIFT] = new int[CHUNK_SIZE];
+        }
+        rowPcs[row >>> CHUNK_SHIFT][row & CHUNK_MASK] = pc;
+        return row;
+    }
+}
@@ -0,0 +1,393 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// ==================== PIPELINE TRACE ====================
+
+/**
+ * Compact binary record of a pipeline run, one fixed-width record per
+ * cycle, so a long run can be inspected from any cycle without re-running
+ * it. After the header
+ *
+ *   int magic "MIPT", int version, int record size, int reserved
+ *
+ * every record holds eight big-endian ints:
+ *
+ *   cycle, IF pc, ID pc, EX pc, MEM pc, WB pc, flags, forwards
+ *
+ * Stage PCs are -1 for a bubble (see PipelineListener.stagesOccupied).
+ * forwards packs up to four registers whose value was forwarded in the
+ * cycle, one byte each from the lowest, as 0x80 | register.
+ */
+final class PipelineTrace {
+
+    static final int MAGIC = 0x4D495054; // "MIPT"
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+
+    static final int RECORD_SIZE = 32;
+
+    // Stage indexes of pc()
+    static final int IF = 0, ID = 1, EX = 2, MEM = 3, WB = 4;
+
+    static final String[] STAGE_NAMES = {"IF", "ID", "EX", "MEM", "WB"};
+
+    // Flag bits
+    static final int STALL = 1;         // ID held its instruction (hazard)
+    static final int FLUSH = 2;         // an instruction was dropped from ID
+    static final int REDIRECT = 4;      // a branch or jump redirected fetch
+    static final int FETCH_MISS = 8;    // an I-cache miss started
+    static final int DATA_MISS = 16;    // a D-cache miss started
+    static final int FROZEN = 32;       // a D-cache miss held every stage
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private PipelineTrace() {
+    }
+
+    /**
+     * Registers in a packed forwards field, in the order they were forwarded
+     */
+    static int[] forwardedRegisters(int packed) {
+        int[] registers = new int[(32 - Integer.numberOfLeadingZeros(packed) + 7) / 8];
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (packed >>> (8 * i)) & 0x1F;
+        }
+        return registers;
+    }
+
+    /**
+     * Turns the listener events of each cycle into one trace record (stage
+     * PCs, flags and forwarded registers) and hands it to record()
+     */
+    abstract static class Recorder implements PipelineListener {
+
+        private int cycle;
+
+        private int flags;
+
+        private int forwards;
+
+        private int forwardShift;
+
+        // Frozen cycles left of the current D-cache miss
+        private int frozen;
+
+        /**
+         * Called at the end of every cycle
+         */
+        protected abstract void record(int cycle, int ifPc, int idPc, int exPc, int memPc, int wbPc, int flags,
+                int forwards);
+
+        @Override
+        public void cycleStarted(int cycle) {
+            this.cycle = cycle;
+            flags = 0;
+            forwards = 0;
+            forwardShift = 0;
+        }
+
+        @Override
+        public void stalled(int pc) {
+            flags |= STALL;
+        }
+
+        @Override
+        public void flushed(int pc, int sourcePc) {
+            flags |= FLUSH;
+        }
+
+        @Override
+        public void branchTaken(int pc, int target) {
+            flags |= REDIRECT;
+        }
+
+        @Override
+        public void jumpTaken(int pc, int target) {
+            flags |= REDIRECT;
+        }
+
+        @Override
+        public void branchMispredicted(int pc, int nextPc) {
+            flags |= REDIRECT;
+        }
+
+        @Override
+        public void decodeRedirected(int pc, int nextPc) {
+            flags |= REDIRECT;
+        }
+
+        @Override
+        public void forwarded(int register, int oldValue, int newValue) {
+            if (forwardShift < 32) {
+                forwards |= (0x80 | register) << forwardShift;
+                forwardShift += 8;
+            }
+        }
+
+        @Override
+        public void cacheMiss(int pc, int address, boolean instruction, int latency) {
+            if (instruction) {
+                flags |= FETCH_MISS;
+            } else {
+                flags |= DATA_MISS;
+                frozen = latency;
+            }
+        }
+
+        @Override
+        public void stagesOccupied(int ifPc, int idPc, int exPc, int memPc, int wbPc) {
+            if (frozen > 0) {
+                frozen--;
+                flags |= FROZEN;
+            }
+            record(cycle, ifPc, idPc, exPc, memPc, wbPc, flags, forwards);
+        }
+    }
+
+    /**
+     * Recorder that appends each record to a new trace file; close()
+     * flushes it. I/O errors surface as UncheckedIOException from the
+     * simulator call that produced the event.
+     */
+    static final class Writer extends Recorder implements Closeable {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        private long records;
+
+        Writer(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(RECORD_SIZE);
+            buffer.putInt(0);
+        }
+
+        @Override
+        protected void record(int cycle, int ifPc, int idPc, int exPc, int memPc, int wbPc, int flags,
+                int forwards) {
+            try {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    drain();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.putInt(cycle);
+            buffer.putInt(ifPc);
+            buffer.putInt(idPc);
+            buffer.putInt(exPc);
+            buffer.putInt(memPc);
+            buffer.putInt(wbPc);
+            buffer.putInt(flags);
+            buffer.putInt(forwards);
+            records++;
+        }
+
+        /**
+         * Cycles recorded so far
+         */
+        public long getRecordCount() {
+            return records;
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Random access to a trace file by cycle. The file is memory-mapped
+     * read-only, so opening it costs nothing per record and any cycle is
+     * read in place; traces beyond 2GB are mapped in segments. A partial
+     * last record, left by a writer that was not closed, is ignored.
+     */
+    static final class Reader {
+
+        // Records per mapped segment (1GB)
+        private static final int SEGMENT_SHIFT = 25;
+
+        private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+        private final MappedByteBuffer[] segments;
+
+        private final long recordCount;
+
+        private final int firstCycle;
+
+        Reader(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                while (header.hasRemaining()) {
+                    if (channel.read(header, header.position()) < 0) {
+                        throw new IOException(file + ": not a pipeline trace (truncated header)");
+                    }
+                }
+                header.flip();
+                if (header.getInt() != MAGIC) {
+                    throw new IOException(file + ": not a pipeline trace");
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException(file + ": unsupported trace version " + version);
+                }
+                if (header.getInt() != RECORD_SIZE) {
+                    throw new IOException(file + ": corrupt trace (record size)");
+                }
+                recordCount = (size - HEADER_SIZE) / RECORD_SIZE;
+                int segmentCount = (int) ((recordCount + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+                segments = new MappedByteBuffer[segmentCount];
+                for (int s = 0; s < segmentCount; s++) {
+                    long first = (long) s << SEGMENT_SHIFT;
+                    long count = Math.min(recordCount - first, 1L << SEGMENT_SHIFT);
+                    segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE,
+                            count * RECORD_SIZE);
+                }
+            }
+            firstCycle = recordCount == 0 ? 1 : segments[0].getInt(0);
+        }
+
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * First recorded cycle: 1, or the cycle a restored checkpoint resumed from
+         */
+        public int getFirstCycle() {
+            return firstCycle;
+        }
+
+        public int getLastCycle() {
+            return (int) (firstCycle + recordCount - 1);
+        }
+
+        public boolean contains(int cycle) {
+            return cycle >= firstCycle && (long) cycle - firstCycle < recordCount;
+        }
+
+        /**
+         * PC the stage (IF..WB) worked on in cycle, -1 for a bubble
+         */
+        public int pc(int cycle, int stage) {
+            if (stage < IF || stage > WB) {
+                throw new IllegalArgumentException("No such stage: " + stage);
+            }
+            return field(cycle, 1 + stage);
+        }
+
+        public int flags(int cycle) {
+            return field(cycle, 6);
+        }
+
+        public boolean has(int cycle, int flag) {
+            return (flags(cycle) & flag) != 0;
+        }
+
+        /**
+         * Registers forwarded in cycle, in the order they were forwarded
+         */
+        public int[] forwardedRegisters(int cycle) {
+            return forwardedRegisters(field(cycle, 7));
+        }
+
+        private int field(int cycle, int field) {
+            if (!contains(cycle)) {
+                throw new IndexOutOfBoundsException("Cycle " + cycle + " not in trace [" + firstCycle + ", "
+                        + getLastCycle() + "]");
+            }
+            long index = (long) cycle - firstCycle;
+            return segments[(int) (index >>> SEGMENT_SHIFT)].getInt((int) (index & SEGMENT_MASK) * RECORD_SIZE
+                    + field * 4);
+        }
+
+        /**
+         * One line per cycle, e.g. "    12  IF 5  ID 4  EX -  MEM 3  WB 2  STALL fwd $1"
+         */
+        public String format(int cycle) {
+            StringBuilder sb = new StringBuilder(String.format("%8d", cycle));
+            for (int stage = IF; stage <= WB; stage++) {
+                int pc = pc(cycle, stage);
+                sb.append("  ").append(STAGE_NAMES[stage]).append(' ').append(pc < 0 ? "-" : Integer.toString(pc));
+            }
+            int flags = flags(cycle);
+            String[] names = {"STALL", "FLUSH", "REDIRECT", "I-MISS", "D-MISS", "FROZEN"};
+            for (int bit = 0; bit < names.length; bit++) {
+                if ((flags & (1 << bit)) != 0) {
+                    sb.append("  ").append(names[bit]);
+                }
+            }
+            int[] forwarded = forwardedRegisters(cycle);
+            if (forwarded.length > 0) {
+                sb.append("  fwd");
+                for (int register : forwarded) {
+                    sb.append(" $").append(register);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Usage: java PipelineTrace record program.asm run.trace [--max-cycles N]
+     *        java PipelineTrace print run.trace [from [to]]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("record")) {
+            long maxCycles = args.length == 5 && args[3].equals("--max-cycles") ? Long.parseLong(args[4])
+                    : SweepRunner.DEFAULT_MAX_CYCLES;
+            MIPSSimulator sim = new MIPSSimulator();
+            new ProgramLoader().load(Paths.get(args[1])).loadInto(sim);
+            try (Writer trace = new Writer(Paths.get(args[2]))) {
+                sim.setListener(trace);
+                while (!sim.isHalted() && sim.getCycles() < maxCycles) {
+                    sim.runOneCycle();
+                }
+                System.out.println("Wrote " + trace.getRecordCount() + " cycles to " + args[2]);
+            }
+        } else if (args.length >= 2 && args.length <= 4 && args[0].equals("print")) {
+            Reader trace = new Reader(Paths.get(args[1]));
+            int from = Math.max(args.length > 2 ? Integer.parseInt(args[2]) : 0, trace.getFirstCycle());
+            int to = Math.min(args.length > 3 ? Integer.parseInt(args[3]) : Integer.MAX_VALUE, trace.getLastCycle());
+            StringBuilder sb = new StringBuilder();
+            for (int cycle = from; cycle <= to; cycle++) {
+                sb.append(trace.format(cycle)).append(System.lineSeparator());
+                if (sb.length() > BUFFER_SIZE) {
+                    System.out.print(sb);
+                    sb.setLength(0);
+                }
+            }
+            System.out.print(sb);
+        } else {
+            System.err.println("Usage: java PipelineTrace record program.asm run.trace [--max-cycles N]");
+            System.err.println("       java PipelineTrace print run.trace [from [to]]");
+            System.exit(1);
+        }
+    }
+}
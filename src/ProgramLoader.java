@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+// ==================== PROGRAM LOADER ====================
+
+/**
+ * Streams a program from a file or InputStream into instruction memory.
+ * Assembly text goes through the Assembler's line buffer and raw machine
+ * code through a fixed ByteBuffer, decoding word by word into a growable
+ * DecodedProgram: memory use is the three int arrays of the program (plus
+ * the labels), never the whole source text or one object per instruction.
+ * Each load records its size and time for throughput reporting.
+ *
+ * Usage: java ProgramLoader program.asm|program.bin|program.elf
+ */
+class ProgramLoader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private long bytes;
+
+    private long instructions;
+
+    private long elapsedNanos;
+
+    /**
+     * Loads assembly, a raw .bin/.elf image (by extension or ELF magic)
+     */
+    public AssembledProgram load(Path file) throws IOException {
+        long start = System.nanoTime();
+        AssembledProgram program;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            bytes = channel.size();
+            if (isElf(channel)) {
+                // ELF needs random access to its headers; the image is mapped, not copied
+                BinaryImage image = BinaryImage.read(file);
+                program = new AssembledProgram(image.program, Assembler.DATA_BASE, new int[0],
+                        Collections.emptyMap(), image.entry);
+            } else if (file.toString().endsWith(".bin")) {
+                program = machineCode(decodeBinary(channel, 0));
+            } else {
+                program = Assembler.assemble(Channels.newReader(channel, StandardCharsets.UTF_8));
+            }
+        }
+        return finished(program, start);
+    }
+
+    /**
+     * Loads assembly text from a stream; the stream is not closed
+     */
+    public AssembledProgram loadAssembly(InputStream in) throws IOException {
+        long start = System.nanoTime();
+        CountingInputStream counter = new CountingInputStream(in);
+        AssembledProgram program = Assembler.assemble(new InputStreamReader(counter, StandardCharsets.UTF_8));
+        bytes = counter.count;
+        return finished(program, start);
+    }
+
+    /**
+     * Loads raw big-endian machine code from a stream; the stream is not closed
+     */
+    public AssembledProgram loadBinary(InputStream in) throws IOException {
+        long start = System.nanoTime();
+        CountingInputStream counter = new CountingInputStream(in);
+        AssembledProgram program = machineCode(decodeBinary(Channels.newChannel(counter), 0));
+        bytes = counter.count;
+        return finished(program, start);
+    }
+
+    /**
+     * Decodes big-endian instruction words as they arrive; a trailing
+     * partial word (a truncated image) throws IOException
+     */
+    static DecodedProgram decodeBinary(ReadableByteChannel channel, int textBase) throws IOException {
+        DecodedProgram program = new DecodedProgram();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        int pc = 0;
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.remaining() >= 4) {
+                MachineCode.decode(buffer.getInt(), pc++, textBase, program);
+            }
+            buffer.compact();
+        }
+        if (buffer.position() != 0) {
+            throw new IOException("Machine code ends with a partial word (" + buffer.position() + " bytes)");
+        }
+        program.trimToSize();
+        return program;
+    }
+
+    private static AssembledProgram machineCode(DecodedProgram program) {
+        return new AssembledProgram(program, Assembler.DATA_BASE, new int[0], Collections.emptyMap());
+    }
+
+    private static boolean isElf(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        channel.read(magic, 0);
+        return magic.position() == 4 && magic.getInt(0) == 0x7F454C46;
+    }
+
+    private AssembledProgram finished(AssembledProgram program, long start) {
+        elapsedNanos = System.nanoTime() - start;
+        instructions = program.getInstructionCount();
+        return program;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * One-line summary of the last load
+     */
+    public String report() {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        return String.format("Loaded %d instructions (%.1f MB) in %.1f ms: %.2f M instructions/s, %.1f MB/s",
+                instructions, bytes / 1e6, elapsedNanos / 1e6, instructions / seconds / 1e6, bytes / seconds / 1e6);
+    }
+
+    /**
+     * Counts the bytes pulled through a stream of unknown length
+     */
+    private static class CountingInputStream extends java.io.FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // the caller owns the stream
+        }
+    }
+
+    /**
+     * Reports the load; with --memory-image also runs the program once over
+     * the image mapped READ_WRITE at base (default 0), so its stores end up
+     * in the file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && !(args.length == 3 && args[1].equals("--memory-image"))) {
+            System.err.println("Usage: java ProgramLoader program.asm|program.bin|program.elf"
+                    + " [--memory-image file@base]");
+            System.exit(1);
+        }
+        ProgramLoader loader = new ProgramLoader();
+        AssembledProgram program = loader.load(Paths.get(args[0]));
+        System.out.println(loader.report());
+        if (args.length == 3) {
+            int at = args[2].lastIndexOf('@');
+            Path file = Paths.get(at < 0 ? args[2] : args[2].substring(0, at));
+            int base = at < 0 ? 0 : SweepRunner.parseWord(args[2].substring(at + 1));
+            MappedMemory image = MappedMemory.open(file, base, FileChannel.MapMode.READ_WRITE);
+            MIPSSimulator sim = new MIPSSimulator(image);
+            program.loadInto(sim);
+            while (!sim.isHalted() && sim.getCycles() < SweepRunner.DEFAULT_MAX_CYCLES) {
+                sim.runOneCycle();
+            }
+            image.force();
+            System.out.printf("%s after %d cycles; stores written to %s%n",
+                    sim.isHalted() ? "Halted" : "Stopped at the cycle limit", sim.getCycles(), file);
+        }
+    }
+}
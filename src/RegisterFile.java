@@ -1,3 +1,5 @@
+import java.io.PrintStream;
+
 // ==================== REGISTER FILE ====================
 
 class RegisterFile {
@@ -6,6 +8,12 @@ class RegisterFile {
 
     private static final int NUM_REGISTERS = 32;
 
+    // Result registers of MULT (high/low word of the product) and DIV (remainder/quotient)
+
+    private int hi;
+
+    private int lo;
+
     
 
     public RegisterFile() {
@@ -50,20 +58,97 @@ class RegisterFile {
 
     
 
+    public int readHi() {
+
+        return hi;
+
+    }
+
+    
+
+    public int readLo() {
+
+        return lo;
+
+    }
+
+    
+
+    public void writeHiLo(int hi, int lo) {
+
+        this.hi = hi;
+
+        this.lo = lo;
+
+    }
+
+    
+
+    /**
+     * Checkpoint section: $1-$31, HI, LO
+     */
+    void save(Checkpoint.Writer out) throws java.io.IOException {
+
+        for (int i = 1; i < NUM_REGISTERS; i++) {
+
+            out.putInt(registers[i]);
+
+        }
+
+        out.putInt(hi);
+
+        out.putInt(lo);
+
+    }
+
+    
+
+    void restore(Checkpoint.Reader in) throws java.io.IOException {
+
+        for (int i = 1; i < NUM_REGISTERS; i++) {
+
+            registers[i] = in.getInt();
+
+        }
+
+        hi = in.getInt();
+
+        lo = in.getInt();
+
+    }
+
+    
+
     public void printRegisters() {
 
-        System.out.println("\n=== Register File ===");
+        printRegisters(System.out);
+
+    }
+
+    
+
+    public void printRegisters(PrintStream out) {
+
+        out.println("\n=== Register File ===");
 
         for (int i = 0; i < NUM_REGISTERS; i++) {
 
             if (registers[i] != 0) {
 
-                System.out.printf("$%-2d: %d (0x%08X)\n", i, registers[i], registers[i]);
+                out.printf("$%-2d: %d (0x%08X)\n", i, registers[i], registers[i]);
 
             }
 
         }
 
+        if (hi != 0 || lo != 0) {
+
+            out.printf("HI : %d (0x%08X)\n", hi, hi);
+
+            out.printf("LO : %d (0x%08X)\n", lo, lo);
+
+        }
+
     }
 
 }
@@ -0,0 +1,51 @@
+// ==================== STORE BITMAP ====================
+
+/**
+ * One bit per memory word, set when the pipeline stores to the word (see
+ * MIPSSimulator.setStoreBitmap), so a viewer can highlight what changed
+ * without keeping a copy of memory to compare against. Sparse like Memory:
+ * the bits of a 4KB page take 128 bytes and are allocated on its first
+ * store, under the same two-level page table.
+ *
+ * The simulator thread marks while a viewer may test from another; a mark
+ * the viewer misses shows on its next repaint. Clear only while the
+ * simulator is not running.
+ */
+class StoreBitmap {
+
+    private static final int LEVEL_BITS = 10;
+
+    private static final int LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+
+    private static final int PAGE_LONGS = Memory.PAGE_WORDS / 64;
+
+    private final long[][][] directory = new long[1 << LEVEL_BITS][][];
+
+    public void mark(int address) {
+        int pageNumber = address >>> Memory.PAGE_SHIFT;
+        long[][] table = directory[pageNumber >>> LEVEL_BITS];
+        if (table == null) {
+            table = new long[1 << LEVEL_BITS][];
+            directory[pageNumber >>> LEVEL_BITS] = table;
+        }
+        long[] bits = table[pageNumber & LEVEL_MASK];
+        if (bits == null) {
+            bits = new long[PAGE_LONGS];
+            table[pageNumber & LEVEL_MASK] = bits;
+        }
+        int word = (address >>> 2) & (Memory.PAGE_WORDS - 1);
+        bits[word >>> 6] |= 1L << word;
+    }
+
+    public boolean isMarked(int address) {
+        int pageNumber = address >>> Memory.PAGE_SHIFT;
+        long[][] table = directory[pageNumber >>> LEVEL_BITS];
+        long[] bits = table != null ? table[pageNumber & LEVEL_MASK] : null;
+        int word = (address >>> 2) & (Memory.PAGE_WORDS - 1);
+        return bits != null && (bits[word >>> 6] & 1L << word) != 0;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(directory, null);
+    }
+}
@@ -0,0 +1,573 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// ==================== SWEEP RUNNER ====================
+
+/**
+ * Runs one program under many configurations in parallel.
+ * The program is assembled once; each configuration then gets its
+ * own MIPSSimulator on a ForkJoinPool worker (the decoded program is
+ * read-only and shared, everything else is per simulator).
+ *
+ * Usage: java SweepRunner program.asm|program.bin [--threads N] [--max-cycles N]
+ *        [--memory-image file@0x10010000] [--predictors not-taken,2bit,gshare:12]
+ *        [--branch-stage ex,id] [--icache 8k:2:32:lru] [--dcache 8k:2:32:lru:wb:10]
+ *        [--memory-config l2.properties ...] [--mul-latency 4] [--div-latency 12] [--mul-unpipelined]
+ *        [--image name:$1=10,$2=20,@0=100 ...]
+ * Every --image (initial registers $n=value and memory words @address=value)
+ * is run with forwarding and hazard detection on and off, under each
+ * branch predictor (see BranchPredictor.create) and branch resolution stage,
+ * with the L1 caches given by --icache / --dcache (see Cache.parse), or under
+ * each --memory-config hierarchy file (see MemoryHierarchy). A --memory-image
+ * file is mapped copy-on-write by every simulator, so all configurations
+ * share one read-only copy of it (ProgramLoader runs a program once over a
+ * writable image).
+ */
+class SweepRunner {
+
+    /** Default cycle budget; loops can spin forever without forwarding */
+    public static final long DEFAULT_MAX_CYCLES = 10_000_000L;
+
+    /**
+     * One point of the configuration matrix: pipeline options plus the
+     * initial register and memory image
+     */
+    static class Configuration {
+
+        final String name;
+
+        final boolean forwarding;
+
+        final boolean hazardDetection;
+
+        // BranchPredictor.create() spec; each run builds its own instance
+        String predictor = "not-taken";
+
+        // Branches resolved in ID rather than EX
+        boolean earlyBranchResolution;
+
+        // MultiplyDivideUnit timing
+        int multiplyLatency = 4;
+
+        int divideLatency = 12;
+
+        boolean pipelinedMultiplier = true;
+
+        // Cache.parse() specs, null for no cache; each run builds its own
+        String instructionCache;
+
+        String dataCache;
+
+        // L1/L2/DRAM configuration replacing the caches above, null for none
+        MemoryHierarchy memory;
+
+        String memoryName = "-";
+
+        // (register, value) and (address, value) pairs
+        private int[] registerInit = new int[0];
+
+        private int[] memoryInit = new int[0];
+
+        public Configuration(String name, boolean forwarding, boolean hazardDetection) {
+            this.name = name;
+            this.forwarding = forwarding;
+            this.hazardDetection = hazardDetection;
+        }
+
+        public Configuration setRegister(int register, int value) {
+            registerInit = append(registerInit, register, value);
+            return this;
+        }
+
+        public Configuration setMemory(int address, int value) {
+            memoryInit = append(memoryInit, address, value);
+            return this;
+        }
+
+        /**
+         * Same initial image with other pipeline options
+         */
+        public Configuration withOptions(boolean forwarding, boolean hazardDetection) {
+            Configuration copy = new Configuration(name, forwarding, hazardDetection);
+            copy.predictor = predictor;
+            copy.earlyBranchResolution = earlyBranchResolution;
+            copy.multiplyLatency = multiplyLatency;
+            copy.divideLatency = divideLatency;
+            copy.pipelinedMultiplier = pipelinedMultiplier;
+            copy.instructionCache = instructionCache;
+            copy.dataCache = dataCache;
+            copy.memory = memory;
+            copy.memoryName = memoryName;
+            copy.registerInit = registerInit;
+            copy.memoryInit = memoryInit;
+            return copy;
+        }
+
+        /**
+         * Same image and options under another branch predictor
+         */
+        public Configuration withPredictor(String predictor) {
+            Configuration copy = withOptions(forwarding, hazardDetection);
+            copy.predictor = predictor;
+            return copy;
+        }
+
+        /**
+         * Same image and options with L1 caches (Cache.parse specs, null for none)
+         */
+        public Configuration withCaches(String instructionCache, String dataCache) {
+            Configuration copy = withOptions(forwarding, hazardDetection);
+            copy.instructionCache = instructionCache;
+            copy.dataCache = dataCache;
+            return copy;
+        }
+
+        /**
+         * Same image and options with a whole memory hierarchy, shown as name
+         */
+        public Configuration withMemory(String name, MemoryHierarchy memory) {
+            Configuration copy = withOptions(forwarding, hazardDetection);
+            copy.memoryName = name;
+            copy.memory = memory;
+            return copy;
+        }
+
+        /**
+         * Same image and options with other MULT/DIV latencies and multiplier organisation
+         */
+        public Configuration withMultiplyDivide(int multiplyLatency, int divideLatency, boolean pipelinedMultiplier) {
+            Configuration copy = withOptions(forwarding, hazardDetection);
+            copy.multiplyLatency = multiplyLatency;
+            copy.divideLatency = divideLatency;
+            copy.pipelinedMultiplier = pipelinedMultiplier;
+            return copy;
+        }
+
+        /**
+         * Same image and options with branches resolved in ID (true) or EX
+         */
+        public Configuration withEarlyBranchResolution(boolean early) {
+            Configuration copy = withOptions(forwarding, hazardDetection);
+            copy.earlyBranchResolution = early;
+            return copy;
+        }
+
+        void applyTo(MIPSSimulator sim) {
+            sim.setForwarding(forwarding);
+            sim.setHazardDetection(hazardDetection);
+            sim.setBranchPredictor(BranchPredictor.create(predictor));
+            sim.setEarlyBranchResolution(earlyBranchResolution);
+            sim.setMultiplyLatency(multiplyLatency);
+            sim.setDivideLatency(divideLatency);
+            sim.setPipelinedMultiplier(pipelinedMultiplier);
+            sim.setInstructionCache(instructionCache == null ? null : Cache.parse("L1I", instructionCache));
+            sim.setDataCache(dataCache == null ? null : Cache.parse("L1D", dataCache));
+            if (memory != null) {
+                memory.applyTo(sim);
+            }
+            for (int i = 0; i < registerInit.length; i += 2) {
+                sim.getRegFile().write(registerInit[i], registerInit[i + 1]);
+            }
+            for (int i = 0; i < memoryInit.length; i += 2) {
+                sim.getMemory().store(memoryInit[i], memoryInit[i + 1]);
+            }
+        }
+
+        private static int[] append(int[] pairs, int key, int value) {
+            int[] grown = java.util.Arrays.copyOf(pairs, pairs.length + 2);
+            grown[pairs.length] = key;
+            grown[pairs.length + 1] = value;
+            return grown;
+        }
+    }
+
+    /**
+     * Outcome of one configuration
+     */
+    static class Result {
+
+        final Configuration configuration;
+
+        final int cycles;
+
+        final int stalls;
+
+        final long instructions;
+
+        long mispredictions;
+
+        long cacheStallCycles;
+
+        // L1 hit rates, NaN without that cache
+        double instructionHitRate = Double.NaN;
+
+        double dataHitRate = Double.NaN;
+
+        // Average memory access time of loads and stores, NaN without a data cache
+        double dataAmat = Double.NaN;
+
+        // false when the cycle budget ran out before the pipeline drained
+        final boolean halted;
+
+        // null unless the run threw (e.g. an unknown opcode)
+        final String error;
+
+        // Hot-spot table, null unless requested with setHotSpotReport
+        String hotSpots;
+
+        Result(Configuration configuration, int cycles, int stalls, long instructions, boolean halted,
+                String error) {
+            this.configuration = configuration;
+            this.cycles = cycles;
+            this.stalls = stalls;
+            this.instructions = instructions;
+            this.halted = halted;
+            this.error = error;
+        }
+
+        public double getCpi() {
+            return instructions == 0 ? 0.0 : (double) cycles / instructions;
+        }
+    }
+
+    private final AssembledProgram program;
+
+    private final ForkJoinPool pool;
+
+    private long maxCycles = DEFAULT_MAX_CYCLES;
+
+    private Path memoryImage;
+
+    private int memoryImageBase;
+
+    private int hotSpotCount;
+
+    public SweepRunner(String[] program) {
+        this(Assembler.assemble(program), Runtime.getRuntime().availableProcessors());
+    }
+
+    public SweepRunner(AssembledProgram program, int threads) {
+        this.program = program;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public void setMaxCycles(long maxCycles) {
+        this.maxCycles = maxCycles;
+    }
+
+    /**
+     * Attaches the topN hot spots of each run to its Result, 0 for none
+     */
+    public void setHotSpotReport(int topN) {
+        this.hotSpotCount = topN;
+    }
+
+    /**
+     * Starts every run from a memory image file mapped at baseAddress
+     */
+    public void setMemoryImage(Path file, int baseAddress) {
+        this.memoryImage = file;
+        this.memoryImageBase = baseAddress;
+    }
+
+    /**
+     * Every image crossed with forwarding on/off and hazard detection on/off
+     */
+    public static List<Configuration> matrix(List<Configuration> images) {
+        List<Configuration> configurations = new ArrayList<>();
+        for (Configuration image : images) {
+            configurations.add(image.withOptions(true, true));
+            configurations.add(image.withOptions(false, true));
+            configurations.add(image.withOptions(true, false));
+            configurations.add(image.withOptions(false, false));
+        }
+        return configurations;
+    }
+
+    /**
+     * matrix(images) crossed with every branch predictor spec
+     */
+    public static List<Configuration> matrix(List<Configuration> images, List<String> predictors) {
+        return matrix(images, predictors, Arrays.asList(false));
+    }
+
+    /**
+     * matrix(images, predictors) crossed with branch resolution in EX (false) and/or ID (true)
+     */
+    public static List<Configuration> matrix(List<Configuration> images, List<String> predictors,
+            List<Boolean> earlyBranchResolution) {
+        List<Configuration> configurations = new ArrayList<>();
+        for (Configuration configuration : matrix(images)) {
+            for (boolean early : earlyBranchResolution) {
+                for (String predictor : predictors) {
+                    configurations.add(configuration.withEarlyBranchResolution(early).withPredictor(predictor));
+                }
+            }
+        }
+        return configurations;
+    }
+
+    /**
+     * Runs every configuration; results come back in the same order
+     */
+    public List<Result> run(List<Configuration> configurations) {
+        List<Callable<Result>> tasks = new ArrayList<>(configurations.size());
+        for (Configuration configuration : configurations) {
+            tasks.add(() -> runOne(configuration));
+        }
+
+        List<Result> results = new ArrayList<>(configurations.size());
+        for (Future<Result> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Sweep interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Sweep task failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private Result runOne(Configuration configuration) {
+        MIPSSimulator sim = new MIPSSimulator(newMemory());
+        try {
+            program.loadInto(sim);
+            configuration.applyTo(sim);
+            while (!sim.isHalted() && sim.getCycles() < maxCycles) {
+                sim.runOneCycle();
+            }
+            Result result = new Result(configuration, sim.getCycles(), sim.getStallCount(),
+                    sim.getInstructionCount(), sim.isHalted(), null);
+            result.mispredictions = sim.getMispredictions();
+            result.cacheStallCycles = sim.getCacheStallCycles();
+            if (sim.getInstructionCache() != null) {
+                result.instructionHitRate = sim.getInstructionCache().getHitRate();
+            }
+            if (sim.getDataCache() != null) {
+                result.dataHitRate = sim.getDataCache().getHitRate();
+                result.dataAmat = 1 + sim.getDataCache().getAverageLatency();
+            }
+            if (hotSpotCount > 0) {
+                result.hotSpots = sim.hotSpotReport(hotSpotCount);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            return new Result(configuration, sim.getCycles(), sim.getStallCount(), sim.getInstructionCount(),
+                    false, e.getMessage());
+        }
+    }
+
+    private Memory newMemory() {
+        if (memoryImage == null) {
+            return new Memory();
+        }
+        try {
+            return MappedMemory.open(memoryImage, memoryImageBase, FileChannel.MapMode.PRIVATE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void printTable(List<Result> results, PrintStream out) {
+        out.printf("%-16s %-4s %-4s %-3s %-16s %-16s %12s %10s %12s %12s %7s %7s %7s %14s %7s  %s%n", "Image",
+                "FWD", "HAZ", "BR", "Predictor", "Memory", "Cycles", "Stalls", "Mispredicts", "Cache stall", "I$ hit",
+                "D$ hit", "D AMAT", "Instructions", "CPI", "Status");
+        for (Result r : results) {
+            String status = r.error != null ? "error: " + r.error : r.halted ? "ok" : "cycle limit";
+            out.printf("%-16s %-4s %-4s %-3s %-16s %-16s %12d %10d %12d %12d %7s %7s %7s %14d %7.3f  %s%n",
+                    r.configuration.name, r.configuration.forwarding ? "on" : "off",
+                    r.configuration.hazardDetection ? "on" : "off", r.configuration.earlyBranchResolution ? "ID" : "EX",
+                    r.configuration.predictor, r.configuration.memoryName, r.cycles, r.stalls, r.mispredictions,
+                    r.cacheStallCycles, percent(r.instructionHitRate), percent(r.dataHitRate),
+                    Double.isNaN(r.dataAmat) ? "-" : String.format("%.2f", r.dataAmat), r.instructions, r.getCpi(),
+                    status);
+        }
+    }
+
+    private static String percent(double rate) {
+        return Double.isNaN(rate) ? "-" : String.format("%.1f%%", rate * 100);
+    }
+
+    /**
+     * Parses "name:$1=10,$2=20,@0=100" into an initial image
+     */
+    static Configuration parseImage(String spec) {
+        int colon = spec.indexOf(':');
+        Configuration image = new Configuration(colon < 0 ? spec : spec.substring(0, colon), true, true);
+        if (colon < 0) {
+            return image;
+        }
+        for (String assignment : spec.substring(colon + 1).split(",")) {
+            String[] kv = assignment.trim().split("=");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Bad image entry: " + assignment);
+            }
+            int value = parseWord(kv[1]);
+            String target = kv[0].trim();
+            if (target.startsWith("$")) {
+                image.setRegister(Integer.parseInt(target.substring(1)), value);
+            } else if (target.startsWith("@")) {
+                image.setMemory(parseWord(target.substring(1)), value);
+            } else {
+                throw new IllegalArgumentException("Bad image entry: " + assignment);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Decimal or 0x hex address or word, anywhere from -2^31 to 0xFFFFFFFF;
+     * Integer.decode would stop at 0x7FFFFFFF and reject kseg0/kseg1 addresses
+     */
+    static int parseWord(String text) {
+        long value = Long.decode(text.trim());
+        if (value < Integer.MIN_VALUE || value > 0xFFFFFFFFL) {
+            throw new NumberFormatException("Not a 32-bit value: " + text);
+        }
+        return (int) value;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java SweepRunner program.asm|program.bin [--threads N] [--max-cycles N]"
+                    + " [--memory-image file@base] [--predictors not-taken,2bit,...] [--branch-stage ex,id]"
+                    + " [--icache spec] [--dcache spec] [--memory-config file ...] [--mul-latency N]"
+                    + " [--div-latency N] [--mul-unpipelined] [--hot-spots N]"
+                    + " [--image name:$1=10,@0=100 ...]");
+            System.exit(1);
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxCycles = DEFAULT_MAX_CYCLES;
+        String memoryImage = null;
+        int hotSpots = 0;
+        List<String> predictors = Arrays.asList("not-taken");
+        List<Boolean> branchStages = Arrays.asList(false);
+        String instructionCache = null;
+        String dataCache = null;
+        List<Path> memoryConfigs = new ArrayList<>();
+        int multiplyLatency = 4;
+        int divideLatency = 12;
+        boolean pipelinedMultiplier = true;
+        List<Configuration> images = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--max-cycles":
+                    maxCycles = Long.parseLong(args[++i]);
+                    break;
+                case "--memory-image":
+                    memoryImage = args[++i];
+                    break;
+                case "--predictors":
+                    predictors = Arrays.asList(args[++i].split(","));
+                    for (String predictor : predictors) {
+                        BranchPredictor.create(predictor); // fail fast on a bad spec
+                    }
+                    break;
+                case "--branch-stage":
+                    branchStages = new ArrayList<>();
+                    for (String stage : args[++i].split(",")) {
+                        if (!stage.equalsIgnoreCase("ex") && !stage.equalsIgnoreCase("id")) {
+                            throw new IllegalArgumentException("Branch stage must be ex or id: " + stage);
+                        }
+                        branchStages.add(stage.equalsIgnoreCase("id"));
+                    }
+                    break;
+                case "--icache":
+                    instructionCache = args[++i];
+                    Cache.parse("L1I", instructionCache); // fail fast on a bad spec
+                    break;
+                case "--dcache":
+                    dataCache = args[++i];
+                    Cache.parse("L1D", dataCache);
+                    break;
+                case "--memory-config":
+                    memoryConfigs.add(Paths.get(args[++i]));
+                    break;
+                case "--mul-latency":
+                    multiplyLatency = Integer.parseInt(args[++i]);
+                    break;
+                case "--div-latency":
+                    divideLatency = Integer.parseInt(args[++i]);
+                    break;
+                case "--mul-unpipelined":
+                    pipelinedMultiplier = false;
+                    break;
+                case "--hot-spots":
+                    hotSpots = Integer.parseInt(args[++i]);
+                    break;
+                case "--image":
+                    images.add(parseImage(args[++i]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (multiplyLatency < 1 || divideLatency < 1) {
+            throw new IllegalArgumentException("MULT/DIV latencies must be at least 1 cycle");
+        }
+        if (images.isEmpty()) {
+            images.add(new Configuration("default", true, true));
+        }
+        for (int i = 0; i < images.size(); i++) {
+            images.set(i, images.get(i).withCaches(instructionCache, dataCache)
+                    .withMultiplyDivide(multiplyLatency, divideLatency, pipelinedMultiplier));
+        }
+        if (!memoryConfigs.isEmpty()) {
+            List<Configuration> withMemory = new ArrayList<>();
+            for (Path file : memoryConfigs) {
+                MemoryHierarchy memory = MemoryHierarchy.load(file);
+                String name = file.getFileName().toString().replaceFirst("\\.properties$", "");
+                for (Configuration image : images) {
+                    withMemory.add(image.withMemory(name, memory));
+                }
+            }
+            images = withMemory;
+        }
+
+        SweepRunner runner = new SweepRunner(new ProgramLoader().load(Paths.get(args[0])), threads);
+        runner.setMaxCycles(maxCycles);
+        runner.setHotSpotReport(hotSpots);
+        if (memoryImage != null) {
+            int at = memoryImage.lastIndexOf('@');
+            runner.setMemoryImage(Paths.get(at < 0 ? memoryImage : memoryImage.substring(0, at)),
+                    at < 0 ? 0 : parseWord(memoryImage.substring(at + 1)));
+        }
+        long start = System.nanoTime();
+        List<Result> results = runner.run(matrix(images, predictors, branchStages));
+        long elapsed = System.nanoTime() - start;
+        runner.shutdown();
+
+        printTable(results, System.out);
+        System.out.printf("%n%d configurations on %d threads in %.1f ms%n", results.size(), threads,
+                elapsed / 1e6);
+        for (Result r : results) {
+            if (r.hotSpots != null) {
+                System.out.printf("%n%s (forwarding %s, hazard detection %s, branches in %s, predictor %s)%n%s",
+                        r.configuration.name, r.configuration.forwarding ? "on" : "off",
+                        r.configuration.hazardDetection ? "on" : "off",
+                        r.configuration.earlyBranchResolution ? "ID" : "EX", r.configuration.predictor, r.hotSpots);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+// ==================== TEE LISTENER ====================
+
+/**
+ * PipelineListener that passes every event to two listeners, first then
+ * second, e.g. an event batch for the log and a timeline for the diagram
+ */
+class TeeListener implements PipelineListener {
+
+    private final PipelineListener first;
+
+    private final PipelineListener second;
+
+    public TeeListener(PipelineListener first, PipelineListener second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public void simulationStarted() {
+        first.simulationStarted();
+        second.simulationStarted();
+    }
+
+    @Override
+    public void cycleStarted(int cycle) {
+        first.cycleStarted(cycle);
+        second.cycleStarted(cycle);
+    }
+
+    @Override
+    public void fetched(int pc, int opcode) {
+        first.fetched(pc, opcode);
+        second.fetched(pc, opcode);
+    }
+
+    @Override
+    public void decoded(int pc, int opcode) {
+        first.decoded(pc, opcode);
+        second.decoded(pc, opcode);
+    }
+
+    @Override
+    public void loadUseHazard(int register, int loadOpcode, int opcode) {
+        first.loadUseHazard(register, loadOpcode, opcode);
+        second.loadUseHazard(register, loadOpcode, opcode);
+    }
+
+    @Override
+    public void branchHazard(int register, int producerOpcode, int branchOpcode) {
+        first.branchHazard(register, producerOpcode, branchOpcode);
+        second.branchHazard(register, producerOpcode, branchOpcode);
+    }
+
+    @Override
+    public void multiplyDivideHazard(int producerOpcode, int opcode, int cyclesLeft) {
+        first.multiplyDivideHazard(producerOpcode, opcode, cyclesLeft);
+        second.multiplyDivideHazard(producerOpcode, opcode, cyclesLeft);
+    }
+
+    @Override
+    public void stalled(int pc) {
+        first.stalled(pc);
+        second.stalled(pc);
+    }
+
+    @Override
+    public void forwarded(int register, int oldValue, int newValue) {
+        first.forwarded(register, oldValue, newValue);
+        second.forwarded(register, oldValue, newValue);
+    }
+
+    @Override
+    public void branchTaken(int pc, int target) {
+        first.branchTaken(pc, target);
+        second.branchTaken(pc, target);
+    }
+
+    @Override
+    public void jumpTaken(int pc, int target) {
+        first.jumpTaken(pc, target);
+        second.jumpTaken(pc, target);
+    }
+
+    @Override
+    public void branchPredicted(int pc, int target) {
+        first.branchPredicted(pc, target);
+        second.branchPredicted(pc, target);
+    }
+
+    @Override
+    public void branchMispredicted(int pc, int nextPc) {
+        first.branchMispredicted(pc, nextPc);
+        second.branchMispredicted(pc, nextPc);
+    }
+
+    @Override
+    public void decodeRedirected(int pc, int nextPc) {
+        first.decodeRedirected(pc, nextPc);
+        second.decodeRedirected(pc, nextPc);
+    }
+
+    @Override
+    public void flushed(int pc, int sourcePc) {
+        first.flushed(pc, sourcePc);
+        second.flushed(pc, sourcePc);
+    }
+
+    @Override
+    public void executed(int pc, int opcode, int result) {
+        first.executed(pc, opcode, result);
+        second.executed(pc, opcode, result);
+    }
+
+    @Override
+    public void cacheMiss(int pc, int address, boolean instruction, int latency) {
+        first.cacheMiss(pc, address, instruction, latency);
+        second.cacheMiss(pc, address, instruction, latency);
+    }
+
+    @Override
+    public void memoryLoaded(int address, int value) {
+        first.memoryLoaded(address, value);
+        second.memoryLoaded(address, value);
+    }
+
+    @Override
+    public void memoryStored(int address, int value) {
+        first.memoryStored(address, value);
+        second.memoryStored(address, value);
+    }
+
+    @Override
+    public void wroteBack(int register, int value) {
+        first.wroteBack(register, value);
+        second.wroteBack(register, value);
+    }
+
+    @Override
+    public void cycleEnded(int ifIdOpcode, int idExOpcode, int exMemOpcode, int memWbOpcode) {
+        first.cycleEnded(ifIdOpcode, idExOpcode, exMemOpcode, memWbOpcode);
+        second.cycleEnded(ifIdOpcode, idExOpcode, exMemOpcode, memWbOpcode);
+    }
+
+    @Override
+    public void stagesOccupied(int ifPc, int idPc, int exPc, int memPc, int wbPc) {
+        first.stagesOccupied(ifPc, idPc, exPc, memPc, wbPc);
+        second.stagesOccupied(ifPc, idPc, exPc, memPc, wbPc);
+    }
+
+    @Override
+    public void simulationCompleted(int cycles) {
+        first.simulationCompleted(cycles);
+        second.simulationCompleted(cycles);
+    }
+
+    @Override
+    public void finalState(MIPSSimulator simulator) {
+        first.finalState(simulator);
+        second.finalState(simulator);
+    }
+
+    @Override
+    public void hotSpots(MIPSSimulator simulator, int topN) {
+        first.hotSpots(simulator, topN);
+        second.hotSpots(simulator, topN);
+    }
+}
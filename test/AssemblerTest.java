@@ -0,0 +1,187 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Assembler syntax: labels and fixups, .data, register names,
+ * pseudo-instructions and the line numbers of errors
+ */
+class AssemblerTest {
+
+    @Test
+    void labelsResolveToInstructionIndexesAndDataAddresses() {
+        AssembledProgram program = Assembler.assemble(String.join("\n",
+                "        .data",
+                "first:  .word 7",
+                "table:  .word 1, -2, 0x10",
+                "buffer: .space 8",
+                "after:  .word first, table",
+                "        .text",
+                "main:   addi $1, $0, 1",
+                "loop:   addi $1, $1, -1",
+                "        bgez $1, loop",
+                "        j    main"));
+
+        assertEquals(0, program.getSymbol("main"));
+        assertEquals(1, program.getSymbol("loop"));
+        assertEquals(Assembler.DATA_BASE, program.getSymbol("first"));
+        assertEquals(Assembler.DATA_BASE + 4, program.getSymbol("table"));
+        assertEquals(Assembler.DATA_BASE + 16, program.getSymbol("buffer"));
+        assertEquals(Assembler.DATA_BASE + 24, program.getSymbol("after"));
+        assertNull(program.getSymbol("missing"));
+
+        // .word takes numbers and labels, .space rounds up to whole words of zeros
+        assertArrayEquals(new int[] { 7, 1, -2, 0x10, 0, 0, Assembler.DATA_BASE, Assembler.DATA_BASE + 4 },
+                program.data);
+
+        // Branch offsets are relative to PC + 1, J targets absolute
+        assertEquals(1, program.program.target(2));
+        assertEquals(0, program.program.target(3));
+    }
+
+    @Test
+    void forwardReferencesArePatchedInPassTwo() {
+        AssembledProgram program = Assembler.assemble(String.join("\n",
+                "        beq  $1, $2, done",
+                "        bgez $3, done",
+                "        j    done",
+                "        lw   $4, value",
+                "        la   $5, value",
+                "        b    done",
+                "done:   nop",
+                "        .data",
+                "value:  .word 42, done"));
+
+        DecodedProgram code = program.program;
+        assertEquals(6, code.target(0));
+        assertEquals(6, code.target(1));
+        assertEquals(6, code.target(2));
+        assertEquals(6, code.target(5));
+        assertEquals(MicroOp.LW, code.opcode(3));
+        assertEquals(Assembler.DATA_BASE, code.immediate[3]);
+        assertEquals(MicroOp.ADDI, code.opcode(4));
+        assertEquals(Assembler.DATA_BASE, code.immediate[4]);
+        assertArrayEquals(new int[] { 42, 6 }, program.data);
+    }
+
+    @Test
+    void registersAreAcceptedByNumberAndName() {
+        AssembledProgram program = Assembler.assemble(String.join("\n",
+                "add $t0, $zero, $31",
+                "add $s0, $sp, $ra",
+                "add $s8, $fp, $gp",
+                "add $v0, $a3, $T9",
+                "sub $k0, $k1, $at"));
+
+        assertRegisters(program.program, 0, 0, 31, 8);
+        assertRegisters(program.program, 1, 29, 31, 16);
+        assertRegisters(program.program, 2, 30, 28, 30);
+        assertRegisters(program.program, 3, 7, 25, 2);
+        assertRegisters(program.program, 4, 27, 1, 26);
+
+        assertEquals(8, Assembler.registerNumber("$t0"));
+        assertEquals(8, Assembler.registerNumber("8"));
+        assertEquals(0, Assembler.registerNumber("zero"));
+        assertEquals(-1, Assembler.registerNumber("$32"));
+        assertEquals(-1, Assembler.registerNumber("$xx"));
+    }
+
+    @Test
+    void pseudoInstructionsExpandToOneInstruction() {
+        AssembledProgram program = Assembler.assemble(String.join("\n",
+                "        nop",
+                "        move $t1, $t2",
+                "        li   $t3, -5",
+                "        la   $t4, word",
+                "        b    0",
+                "        .data",
+                "word:   .word 1"));
+
+        DecodedProgram code = program.program;
+        assertEquals(5, code.length());
+        assertEquals(MicroOp.SLL, code.opcode(0));
+        assertRegisters(code, 0, 0, 0, 0);
+        assertEquals(MicroOp.ADD, code.opcode(1));
+        assertRegisters(code, 1, 10, 0, 9);
+        assertEquals(MicroOp.ADDI, code.opcode(2));
+        assertEquals(11, MicroOp.rt(code.registers[2]));
+        assertEquals(-5, code.immediate[2]);
+        assertEquals(Assembler.DATA_BASE, code.immediate[3]);
+        assertEquals(MicroOp.BEQ, code.opcode(4));
+        assertEquals(5, code.target(4));
+    }
+
+    @Test
+    void commentsBlankLinesAndLowerCaseAreAccepted() throws IOException {
+        String source = "# header\n\n  ADDI $1, $0, 3   # three\n  addi $2,$1,4 // four\n\tsll $3 $2 2\n";
+        AssembledProgram fromString = Assembler.assemble(source);
+        AssembledProgram fromReader = Assembler.assemble(new StringReader(source));
+
+        assertEquals(3, fromString.getInstructionCount());
+        assertEquals(fromString.program.fingerprint(), fromReader.program.fingerprint());
+        assertEquals(2, MicroOp.shamt(fromString.program.registers[2]));
+    }
+
+    @Test
+    void errorsNameTheirLine() {
+        assertError("Line 2: unknown instruction FOO", "nop", "foo $1, $2");
+        assertError("Line 3: undefined label 'nowhere'", "nop", "nop", "j nowhere");
+        assertError("Line 2: duplicate label 'x'", "x: nop", "x: nop");
+        assertError("Line 1: invalid register $40", "add $40, $1, $2");
+        assertError("Line 1: .word is only allowed in .data", ".word 1");
+        assertError("Line 2: instruction ADD in .data", ".data", "add $1, $2, $3");
+        assertError("Line 1: shift amount out of range: 32", "sll $1, $2, 32");
+        assertError("Line 1: unexpected 'extra'", "mflo $1 extra");
+        assertError("Line 1: unknown directive .bogus", ".bogus");
+    }
+
+    @Test
+    void loadProgramAssemblesSourceLines() {
+        MIPSSimulator sim = new MIPSSimulator();
+        sim.loadProgram(new String[] {
+                "        la   $t0, values",
+                "        li   $t1, 2",
+                "        move $s0, $zero",
+                "loop:   lw   $t2, 0($t0)",
+                "        add  $s0, $s0, $t2",
+                "        addi $t0, $t0, 4",
+                "        addi $t1, $t1, -1",
+                "        bgez $t1, loop",
+                "        sw   $s0, result",
+                "        .data",
+                "values: .word 10, 20, 30",
+                "result: .word 0"
+        });
+        sim.run();
+
+        assertEquals(60, sim.getRegFile().read(16));
+        assertEquals(60, sim.getMemory().load(Assembler.DATA_BASE + 12));
+        assertEquals(-1, sim.getRegFile().read(9));
+    }
+
+    @Test
+    void loadProgramReportsTheFailingLine() {
+        MIPSSimulator sim = new MIPSSimulator();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> sim.loadProgram(new String[] { "nop", "beq $1, $2, missing" }));
+        assertEquals("Line 2: undefined label 'missing'", e.getMessage());
+    }
+
+    private static void assertRegisters(DecodedProgram program, int pc, int rs, int rt, int rd) {
+        int registers = program.registers[pc];
+        assertEquals(rs, MicroOp.rs(registers), "rs of " + pc);
+        assertEquals(rt, MicroOp.rt(registers), "rt of " + pc);
+        assertEquals(rd, MicroOp.rd(registers), "rd of " + pc);
+    }
+
+    private static void assertError(String message, String... lines) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Assembler.assemble(lines));
+        assertEquals(message, e.getMessage());
+    }
+}
@@ -0,0 +1,57 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Branches are trained at the predictor entry they were predicted with,
+ * even when other branches resolve between their IF and their resolution
+ */
+class BranchPredictorTest {
+
+    // An alternating branch right behind the loop branch: each is fetched
+    // before the other has resolved in EX
+    private static final String ALTERNATING = String.join("\n",
+            "        li   $t1, 40",
+            "        li   $t3, -1",
+            "loop:   addi $t1, $t1, -1",
+            "        xor  $t2, $t2, $t3",
+            "        bgez $t2, skip",
+            "        nop",
+            "skip:   bgez $t1, loop");
+
+    @Test
+    void gshareTrainsTheCounterItPredictedWith() {
+        BranchPredictor.Gshare gshare = new BranchPredictor.Gshare(4);
+        assertEquals(2, gshare.predict(1, false, 7));
+        int history = gshare.history();
+
+        // Another branch resolves taken before the one at PC 1 does
+        gshare.update(5, false, true, 9, gshare.history());
+        assertEquals(1, gshare.history());
+
+        gshare.update(1, false, true, 7, history);
+        assertEquals(2, gshare.counters[1]);
+        assertEquals(1, gshare.counters[0], "counter selected by the newer history must be untouched");
+        assertEquals(3, gshare.history());
+    }
+
+    @Test
+    void gshareLearnsAPatternWithTwoBranchesInFlight() {
+        assertEquals(22, run("2bit:4").getMispredictions());
+
+        // The global history separates the alternating branch's two outcomes;
+        // only the warm-up and the loop exit are mispredicted
+        MIPSSimulator sim = run("gshare:4");
+        assertEquals(7, sim.getMispredictions());
+        assertEquals(187, sim.getInstructionCount());
+        assertEquals(197, sim.getCycles());
+    }
+
+    private static MIPSSimulator run(String predictor) {
+        MIPSSimulator sim = new MIPSSimulator();
+        Assembler.assemble(ALTERNATING).loadInto(sim);
+        sim.setBranchPredictor(BranchPredictor.create(predictor));
+        sim.run();
+        return sim;
+    }
+}
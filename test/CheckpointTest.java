@@ -0,0 +1,140 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * A run resumed from a checkpoint taken at any cycle must end exactly like
+ * the uninterrupted run, with a branch predictor and caches in play
+ */
+class CheckpointTest {
+
+    // Loads, stores, MULT/DIV and a backward branch, walked twice so the
+    // second pass depends on what the first left in the caches and predictor
+    private static final String PROGRAM = String.join("\n",
+            "        .data",
+            "arr:    .word 3, 1, 4, 1, 5, 9, 2, 6, 5, 3, 5, 8, 9, 7, 9, 3",
+            "        .text",
+            "        li   $s3, 1",
+            "pass:   la   $t0, arr",
+            "        li   $t1, 15",
+            "        li   $s0, 1",
+            "loop:   lw   $t2, 0($t0)",
+            "        mult $s0, $t2",
+            "        mflo $s0",
+            "        div  $s0, $t1",
+            "        mfhi $s1",
+            "        add  $s2, $s2, $s1",
+            "        sw   $s1, 32($t0)",
+            "        addi $t0, $t0, 4",
+            "        addi $t1, $t1, -1",
+            "        bgez $t1, loop",
+            "        addi $s3, $s3, -1",
+            "        bgez $s3, pass");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void resumeMatchesUninterruptedRunWithL1Caches() throws Exception {
+        for (String predictor : new String[] { "not-taken", "1bit:4", "2bit", "gshare:6", "btb:5" }) {
+            assertResumeMatches(sim -> {
+                sim.setBranchPredictor(BranchPredictor.create(predictor));
+                sim.setInstructionCache(Cache.parse("L1I", "64:1:16"));
+                sim.setDataCache(Cache.parse("L1D", "64:1:16"));
+            });
+        }
+    }
+
+    @Test
+    void resumeMatchesUninterruptedRunWithSharedL2AndRowBufferDram() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("l1i", "128:2:16:fifo");
+        properties.setProperty("l1d", "128:2:16:random:wb");
+        properties.setProperty("l2", "1k:4:32:lru:wb");
+        properties.setProperty("l2.hit-latency", "4");
+        properties.setProperty("dram.model", "row-buffer");
+        properties.setProperty("dram.banks", "2");
+        properties.setProperty("dram.row-size", "64");
+        MemoryHierarchy hierarchy = MemoryHierarchy.fromProperties(properties);
+        assertResumeMatches(sim -> {
+            sim.setBranchPredictor(BranchPredictor.create("2bit:4"));
+            hierarchy.applyTo(sim);
+        });
+    }
+
+    @Test
+    void restoreRejectsDifferentConfiguration() throws Exception {
+        AssembledProgram program = Assembler.assemble(PROGRAM);
+        Path file = dir.resolve("run.ckpt");
+        MIPSSimulator sim = new MIPSSimulator();
+        program.loadInto(sim);
+        sim.setBranchPredictor(BranchPredictor.create("2bit"));
+        sim.setDataCache(Cache.parse("L1D", "64:1:16"));
+        for (int i = 0; i < 20; i++) {
+            sim.runOneCycle();
+        }
+        sim.saveCheckpoint(file);
+
+        MIPSSimulator otherPredictor = new MIPSSimulator();
+        program.loadInto(otherPredictor);
+        otherPredictor.setBranchPredictor(BranchPredictor.create("gshare"));
+        otherPredictor.setDataCache(Cache.parse("L1D", "64:1:16"));
+        assertThrows(IllegalStateException.class, () -> otherPredictor.restoreCheckpoint(file));
+
+        MIPSSimulator otherCache = new MIPSSimulator();
+        program.loadInto(otherCache);
+        otherCache.setBranchPredictor(BranchPredictor.create("2bit"));
+        otherCache.setDataCache(Cache.parse("L1D", "128:2:16"));
+        assertThrows(IllegalStateException.class, () -> otherCache.restoreCheckpoint(file));
+    }
+
+    private void assertResumeMatches(Consumer<MIPSSimulator> configure) throws Exception {
+        AssembledProgram program = Assembler.assemble(PROGRAM);
+        MIPSSimulator uninterrupted = new MIPSSimulator();
+        program.loadInto(uninterrupted);
+        configure.accept(uninterrupted);
+        uninterrupted.run();
+        String expected = state(uninterrupted);
+
+        Path file = dir.resolve("run.ckpt");
+        for (int stop = 1; stop < uninterrupted.getCycles(); stop++) {
+            MIPSSimulator first = new MIPSSimulator();
+            program.loadInto(first);
+            configure.accept(first);
+            while (first.getCycles() < stop) {
+                first.runOneCycle();
+            }
+            first.saveCheckpoint(file);
+
+            MIPSSimulator resumed = new MIPSSimulator();
+            program.loadInto(resumed);
+            configure.accept(resumed);
+            resumed.restoreCheckpoint(file);
+            resumed.run();
+            assertEquals(expected, state(resumed), "resumed from cycle " + stop);
+        }
+    }
+
+    private static String state(MIPSSimulator sim) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("cycles=").append(sim.getCycles()).append(" instructions=").append(sim.getInstructionCount())
+                .append(" stalls=").append(sim.getStallCount()).append(" mispredictions=")
+                .append(sim.getMispredictions()).append(" cache stalls=").append(sim.getCacheStallCycles())
+                .append('\n');
+        for (int r = 1; r < 32; r++) {
+            sb.append(sim.getRegFile().read(r)).append(' ');
+        }
+        sb.append("HI=").append(sim.getRegFile().readHi()).append(" LO=").append(sim.getRegFile().readLo())
+                .append('\n');
+        for (int address = Assembler.DATA_BASE; address < Assembler.DATA_BASE + 128; address += 4) {
+            sb.append(sim.getMemory().load(address)).append(' ');
+        }
+        return sb.append('\n').append(sim.memoryReport()).toString();
+    }
+}
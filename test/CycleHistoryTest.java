@@ -0,0 +1,120 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * stateAt(c) rebuilds what the simulator looked like at the end of cycle c,
+ * for every cycle still in the history, across segment boundaries and
+ * after the ring has dropped its oldest segments
+ */
+class CycleHistoryTest {
+
+    // Register writes, HI/LO from MULT/DIV, and stores to two memory pages
+    private static final String PROGRAM = String.join("\n",
+            "        .data",
+            "arr:    .word 3, 1, 4, 1, 5, 9, 2, 6",
+            "        .space 4096",
+            "far:    .word 0",
+            "        .text",
+            "        la   $t0, arr",
+            "        la   $t3, far",
+            "        li   $t1, 7",
+            "        li   $s0, 1",
+            "loop:   lw   $t2, 0($t0)",
+            "        mult $s0, $t2",
+            "        mflo $s0",
+            "        div  $s0, $t1",
+            "        mfhi $s1",
+            "        add  $s2, $s2, $s1",
+            "        sw   $s1, 0($t0)",
+            "        sw   $s2, 0($t3)",
+            "        addi $t0, $t0, 4",
+            "        addi $t1, $t1, -1",
+            "        bgez $t1, loop");
+
+    @Test
+    void everyRecordedCycleMatchesTheLiveRun() {
+        // interval, snapshots: one cycle per segment, short segments that
+        // wrap the ring, and one segment holding the whole run
+        for (int[] shape : new int[][] { { 1, 3 }, { 7, 5 }, { 16, 64 }, { 4096, 2 } }) {
+            for (boolean dataCache : new boolean[] { false, true }) {
+                assertReplayMatches(shape[0], shape[1], dataCache);
+            }
+        }
+    }
+
+    @Test
+    void cyclesOutsideTheWindowAreRejected() {
+        MIPSSimulator sim = new MIPSSimulator();
+        Assembler.assemble(PROGRAM).loadInto(sim);
+        CycleHistory history = new CycleHistory(4, 2);
+        sim.setHistory(history);
+        sim.run();
+
+        assertEquals(sim.getCycles(), history.getLastCycle());
+        assertTrue(history.getLastCycle() - history.getFirstCycle() <= history.getCapacity());
+        assertThrows(IndexOutOfBoundsException.class, () -> history.stateAt(history.getFirstCycle() - 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> history.stateAt(history.getLastCycle() + 1));
+    }
+
+    private static void assertReplayMatches(int interval, int snapshots, boolean dataCache) {
+        MIPSSimulator sim = new MIPSSimulator();
+        Assembler.assemble(PROGRAM).loadInto(sim);
+        if (dataCache) {
+            sim.setDataCache(Cache.parse("L1D", "64:1:16"));
+        }
+        CycleHistory history = new CycleHistory(interval, snapshots);
+        sim.setHistory(history);
+
+        Map<Integer, String> live = new HashMap<>();
+        live.put(sim.getCycles(), live(sim));
+        while (!sim.isHalted()) {
+            sim.runOneCycle();
+            live.put(sim.getCycles(), live(sim));
+        }
+
+        String shape = interval + "x" + snapshots + (dataCache ? " with D-cache" : "");
+        assertEquals(sim.getCycles(), history.getLastCycle(), shape);
+        if (sim.getCycles() > history.getCapacity()) {
+            assertTrue(history.getFirstCycle() > 0, shape + ": ring should have dropped old segments");
+        }
+        for (int cycle = history.getFirstCycle(); cycle <= history.getLastCycle(); cycle++) {
+            assertEquals(live.get(cycle), rebuilt(sim, history.stateAt(cycle)), shape + ", cycle " + cycle);
+        }
+    }
+
+    private static String live(MIPSSimulator sim) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(sim.getCycles()).append(" stalls=").append(sim.getStallCount()).append(' ')
+                .append(Arrays.toString(sim.getPipelineState()));
+        for (int r = 0; r < 32; r++) {
+            sb.append(',').append(sim.getRegFile().read(r));
+        }
+        sb.append(" HI/LO=").append(sim.getRegFile().readHi()).append('/').append(sim.getRegFile().readLo());
+        return appendMemory(sb, sim.getMemory()::load).toString();
+    }
+
+    private static String rebuilt(MIPSSimulator sim, CycleHistory.State state) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(state.cycle).append(" stalls=").append(state.stalls).append(' ')
+                .append(Arrays.toString(sim.getPipelineState(state.stagePcs)));
+        for (int r = 0; r < 32; r++) {
+            sb.append(',').append(state.register(r));
+        }
+        sb.append(" HI/LO=").append(state.hi()).append('/').append(state.lo());
+        return appendMemory(sb, state::load).toString();
+    }
+
+    private static StringBuilder appendMemory(StringBuilder sb, java.util.function.IntUnaryOperator memory) {
+        for (int address = Assembler.DATA_BASE; address < Assembler.DATA_BASE + 32; address += 4) {
+            sb.append(',').append(memory.applyAsInt(address));
+        }
+        return sb.append(',').append(memory.applyAsInt(Assembler.DATA_BASE + 32 + 4096));
+    }
+}
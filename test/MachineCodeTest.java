@@ -0,0 +1,158 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * encode() followed by decode() gives back the decoded program, for every
+ * MicroOp and at text bases other than 0; damaged images are rejected
+ */
+class MachineCodeTest {
+
+    // A typical link address, and one just below a 256MB region boundary
+    private static final int[] TEXT_BASES = { 0, 0x00400000, 0x0FFFFF00 };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void everyMicroOpRoundTrips() {
+        for (int textBase : TEXT_BASES) {
+            DecodedProgram program = new DecodedProgram();
+            for (int op = MicroOp.ADD; op <= MicroOp.LAST; op++) {
+                append(program, op, 0);
+                append(program, op, 1);
+            }
+            program.trimToSize();
+            assertRoundTrip(program, textBase);
+        }
+    }
+
+    @Test
+    void jumpAndBranchTargetsSurviveANonZeroTextBase() {
+        for (int textBase : TEXT_BASES) {
+            DecodedProgram program = new DecodedProgram();
+            program.append(MicroOp.J, 0, 5);
+            program.append(MicroOp.BEQ, MicroOp.encodeRegisters(1, 2, 0, 0), 3);
+            program.append(MicroOp.BGEZ, MicroOp.encodeRegisters(3, 0, 0, 0), -3);
+            program.append(MicroOp.J, 0, 0);
+            program.append(MicroOp.BEQ, MicroOp.encodeRegisters(0, 0, 0, 0), Short.MIN_VALUE);
+            program.append(MicroOp.J, 0, 63);
+            program.trimToSize();
+
+            DecodedProgram decoded = assertRoundTrip(program, textBase);
+            assertEquals(5, decoded.target(0));
+            assertEquals(5, decoded.target(1));
+            assertEquals(0, decoded.target(2));
+            assertEquals(0, decoded.target(3));
+            assertEquals(63, decoded.target(5));
+        }
+
+        // J holds the real word address of its target
+        DecodedProgram jump = new DecodedProgram();
+        jump.append(MicroOp.J, 0, 5);
+        jump.trimToSize();
+        assertEquals(0x08000000 | (0x00400000 + 5 * 4) >>> 2, MachineCode.encode(jump, 0x00400000)[0]);
+    }
+
+    @Test
+    void assembledProgramRoundTripsThroughABinFile() throws IOException {
+        AssembledProgram assembled = Assembler.assemble(String.join("\n",
+                "start: li   $t0, 3",
+                "loop:  addi $t0, $t0, -1",
+                "       mult $t0, $t0",
+                "       mflo $t1",
+                "       bgez $t0, loop",
+                "       beq  $t1, $zero, done",
+                "       j    start",
+                "done:  ori  $t2, $zero, 0xFFFF"));
+        Path file = dir.resolve("program.bin");
+        BinaryImage.writeBinary(file, MachineCode.encode(assembled.program, 0));
+
+        assertEquals(assembled.program.fingerprint(), BinaryImage.read(file).program.fingerprint());
+        assertEquals(assembled.program.fingerprint(), new ProgramLoader().load(file).program.fingerprint());
+    }
+
+    @Test
+    void emptySlotsAreNotEncoded() {
+        DecodedProgram program = new DecodedProgram(3);
+        program.set(0, MicroOp.ADDI, MicroOp.encodeRegisters(0, 1, 0, 0), 1);
+        program.set(2, MicroOp.ADDI, MicroOp.encodeRegisters(0, 2, 0, 0), 2);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> MachineCode.encode(program, 0));
+        assertEquals("Cannot encode empty instruction slot at PC=1", e.getMessage());
+    }
+
+    @Test
+    void partialTrailingWordIsRejected() throws IOException {
+        byte[] image = { 0x20, 0x01, 0x00, 0x05, 0x20 };
+        Path file = dir.resolve("truncated.bin");
+        Files.write(file, image);
+
+        IOException mapped = assertThrows(IOException.class, () -> BinaryImage.read(file));
+        assertTrue(mapped.getMessage().contains("not a multiple of 4"), mapped.getMessage());
+        assertThrows(IOException.class, () -> new ProgramLoader().load(file));
+        assertThrows(IOException.class, () -> new ProgramLoader().loadBinary(new ByteArrayInputStream(image)));
+    }
+
+    /**
+     * Instruction with every field the opcode encodes set to a non-trivial
+     * value; variant 1 uses the extreme values
+     */
+    private static void append(DecodedProgram program, int op, int variant) {
+        int rs = variant == 0 ? 5 : 31;
+        int rt = variant == 0 ? 17 : 31;
+        int rd = variant == 0 ? 9 : 31;
+        int shamt = variant == 0 ? 4 : 31;
+        int immediate = variant == 0 ? -7 : Short.MAX_VALUE;
+        switch (op) {
+            case MicroOp.SLL: case MicroOp.SRL:
+                program.append(op, MicroOp.encodeRegisters(0, rt, rd, shamt), 0);
+                break;
+            case MicroOp.ADD: case MicroOp.SUB: case MicroOp.AND: case MicroOp.OR:
+            case MicroOp.XOR: case MicroOp.SLT:
+                program.append(op, MicroOp.encodeRegisters(rs, rt, rd, 0), 0);
+                break;
+            case MicroOp.MULT: case MicroOp.DIV:
+                program.append(op, MicroOp.encodeRegisters(rs, rt, 0, 0), 0);
+                break;
+            case MicroOp.MFHI: case MicroOp.MFLO:
+                program.append(op, MicroOp.encodeRegisters(0, 0, rd, 0), 0);
+                break;
+            case MicroOp.ORI:
+                program.append(op, MicroOp.encodeRegisters(rs, rt, 0, 0), variant == 0 ? 0x1234 : 0xFFFF);
+                break;
+            case MicroOp.BGEZ:
+                program.append(op, MicroOp.encodeRegisters(rs, 0, 0, 0), variant == 0 ? immediate : -1);
+                break;
+            case MicroOp.J:
+                program.append(op, 0, variant == 0 ? 0 : 2 * MicroOp.LAST - 1);
+                break;
+            default:
+                program.append(op, MicroOp.encodeRegisters(rs, rt, 0, 0), immediate);
+                break;
+        }
+    }
+
+    private static DecodedProgram assertRoundTrip(DecodedProgram program, int textBase) {
+        DecodedProgram decoded = MachineCode.decode(MachineCode.encode(program, textBase), textBase);
+        assertEquals(program.length(), decoded.length());
+        for (int pc = 0; pc < program.length(); pc++) {
+            String where = MicroOp.mnemonic(program.opcode(pc)) + " at PC=" + pc + ", text base " + textBase;
+            assertEquals(program.control[pc], decoded.control[pc], where);
+            assertEquals(program.registers[pc], decoded.registers[pc], where);
+            assertEquals(program.immediate[pc], decoded.immediate[pc], where);
+        }
+        assertArrayEquals(MachineCode.encode(program, textBase), MachineCode.encode(decoded, textBase));
+        return decoded;
+    }
+}
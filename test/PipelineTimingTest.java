@@ -0,0 +1,140 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Exact cycle, stall and misprediction counts for the timing the pipeline
+ * adds to its five stages: branch prediction, branch resolution in ID,
+ * load-use and MULT/DIV interlocks, and data-cache misses. A straight-line
+ * run of n instructions takes n + 4 cycles.
+ */
+class PipelineTimingTest {
+
+    // 9 instructions: the branch is taken 3 times, then falls through
+    private static final String COUNTER_LOOP = String.join("\n",
+            "        li   $t1, 3",
+            "loop:   addi $t1, $t1, -1",
+            "        bgez $t1, loop");
+
+    private static final String[] PREDICTORS = { "not-taken", "backward-taken", "1bit", "2bit", "gshare", "btb" };
+
+    // not-taken misses every taken branch, backward-taken only the exit; the
+    // dynamic predictors miss the cold first iteration and the exit, except
+    // gshare, whose history selects a new (cold) entry on every iteration
+    private static final int[] MISPREDICTIONS = { 3, 1, 2, 2, 3, 2 };
+
+    private static final String LOAD_USE = String.join("\n",
+            "        .data",
+            "value:  .word 6",
+            "        .text",
+            "        lw   $t0, value",
+            "        add  $t1, $t0, $t0");
+
+    private static final String MFLO_AFTER_MULT = String.join("\n",
+            "        li   $t0, 6",
+            "        li   $t2, 7",
+            "        mult $t0, $t2",
+            "        mflo $t1");
+
+    @Test
+    void counterLoopResolvedInEx() {
+        // Each misprediction flushes the one instruction in ID. The loop
+        // exit is the last instruction, so its redirect costs nothing.
+        int[] cycles = { 16, 13, 14, 14, 16, 14 };
+        for (int i = 0; i < PREDICTORS.length; i++) {
+            String predictor = PREDICTORS[i];
+            MIPSSimulator sim = run(COUNTER_LOOP, s -> s.setBranchPredictor(BranchPredictor.create(predictor)));
+            assertCounts(sim, predictor, 9, cycles[i], 0, MISPREDICTIONS[i]);
+        }
+    }
+
+    @Test
+    void counterLoopResolvedInId() {
+        // A misprediction redirects IF in the same cycle, but the branch waits
+        // one cycle for the ADDI in EX on each of its 4 executions
+        for (int i = 0; i < PREDICTORS.length; i++) {
+            String predictor = PREDICTORS[i];
+            MIPSSimulator sim = run(COUNTER_LOOP, s -> {
+                s.setBranchPredictor(BranchPredictor.create(predictor));
+                s.setEarlyBranchResolution(true);
+            });
+            assertCounts(sim, predictor, 9, 17, 4, MISPREDICTIONS[i]);
+            assertEquals(0, sim.getMultiplyDivideStallCount());
+        }
+    }
+
+    @Test
+    void loadUseStallsOneCycle() {
+        MIPSSimulator sim = run(LOAD_USE, s -> { });
+        assertCounts(sim, "load-use", 2, 7, 1, 0);
+        assertEquals(0, sim.getMultiplyDivideStallCount());
+        assertEquals(12, sim.getRegFile().read(9));
+    }
+
+    @Test
+    void mfloWaitsForTheMultiplier() {
+        // MFLO may enter EX latency cycles after the MULT did, one cycle
+        // after it otherwise would: latency - 1 stalls
+        MIPSSimulator sim = run(MFLO_AFTER_MULT, s -> { });
+        assertCounts(sim, "MFLO, latency 4", 4, 11, 3, 0);
+        assertEquals(3, sim.getMultiplyDivideStallCount());
+        assertEquals(42, sim.getRegFile().read(9));
+
+        sim = run(MFLO_AFTER_MULT, s -> s.setMultiplyLatency(2));
+        assertCounts(sim, "MFLO, latency 2", 4, 9, 1, 0);
+        assertEquals(1, sim.getMultiplyDivideStallCount());
+
+        // The interlock belongs to the unit, not to hazard detection
+        sim = run(MFLO_AFTER_MULT, s -> s.setHazardDetection(false));
+        assertEquals(11, sim.getCycles());
+        assertEquals(42, sim.getRegFile().read(9));
+    }
+
+    @Test
+    void dataCacheMissFreezesThePipeline() {
+        // The cold miss holds every stage for the 10-cycle miss penalty; the
+        // load-use stall is still taken
+        MIPSSimulator sim = run(LOAD_USE, s -> s.setDataCache(Cache.parse("L1D", "64:1:16")));
+        assertCounts(sim, "D-cache miss", 2, 17, 1, 0);
+        assertEquals(10, sim.getCacheStallCycles());
+        assertEquals(12, sim.getRegFile().read(9));
+
+        sim = run(LOAD_USE, s -> s.setDataCache(Cache.parse("L1D", "64:1:16:4")));
+        assertEquals(11, sim.getCycles());
+        assertEquals(4, sim.getCacheStallCycles());
+    }
+
+    @Test
+    void stallsAreChargedToTheirCause() {
+        PerformanceCounters counters = run(LOAD_USE, s -> { }).getCounters();
+        assertEquals(1, counters.loadUseStallCycles[1]);
+        assertEquals(1, counters.getTotalStallCycles());
+
+        counters = run(MFLO_AFTER_MULT, s -> { }).getCounters();
+        assertEquals(3, counters.multiplyDivideStallCycles[3]);
+        assertEquals(3, counters.getTotalStallCycles());
+
+        counters = run(COUNTER_LOOP, s -> s.setEarlyBranchResolution(true)).getCounters();
+        assertEquals(4, counters.branchStallCycles[2]);
+        assertEquals(4, counters.getTotalStallCycles());
+        assertEquals(4 + 4, counters.getCycles(2));
+    }
+
+    private static MIPSSimulator run(String source, Consumer<MIPSSimulator> configure) {
+        MIPSSimulator sim = new MIPSSimulator();
+        Assembler.assemble(source).loadInto(sim);
+        configure.accept(sim);
+        sim.run();
+        return sim;
+    }
+
+    private static void assertCounts(MIPSSimulator sim, String what, long instructions, int cycles, int stalls,
+            long mispredictions) {
+        assertEquals(instructions, sim.getInstructionCount(), what + ": instructions");
+        assertEquals(cycles, sim.getCycles(), what + ": cycles");
+        assertEquals(stalls, sim.getStallCount(), what + ": stalls");
+        assertEquals(mispredictions, sim.getMispredictions(), what + ": mispredictions");
+    }
+}
@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Command-line addresses and words cover all 32 bits, including kseg0/kseg1
+ * addresses and values Integer.decode would reject
+ */
+class SweepRunnerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parseWordAcceptsEveryThirtyTwoBitValue() {
+        assertEquals(0x10010000, SweepRunner.parseWord("0x10010000"));
+        assertEquals(0x80000000, SweepRunner.parseWord("0x80000000"));
+        assertEquals(0xBFC00000, SweepRunner.parseWord(" 0xBFC00000 "));
+        assertEquals(-1, SweepRunner.parseWord("0xFFFFFFFF"));
+        assertEquals(-1, SweepRunner.parseWord("-1"));
+        assertEquals(Integer.MIN_VALUE, SweepRunner.parseWord("-2147483648"));
+
+        assertThrows(NumberFormatException.class, () -> SweepRunner.parseWord("0x100000000"));
+        assertThrows(NumberFormatException.class, () -> SweepRunner.parseWord("-2147483649"));
+        assertThrows(NumberFormatException.class, () -> SweepRunner.parseWord("kseg0"));
+    }
+
+    @Test
+    void imageEntriesTakeHighAddressesAndAllOnesWords() {
+        MIPSSimulator sim = new MIPSSimulator();
+        Assembler.assemble("nop").loadInto(sim);
+        SweepRunner.parseImage("high:$8=0xFFFFFFFF,@0x80000010=0xDEADBEEF,@0xFFFFFFFC=-2").applyTo(sim);
+
+        assertEquals(-1, sim.getRegFile().read(8));
+        assertEquals(0xDEADBEEF, sim.getMemory().load(0x80000010));
+        assertEquals(-2, sim.getMemory().load(0xFFFFFFFC));
+    }
+
+    @Test
+    void memoryImageMapsAtAKseg0Base() throws Exception {
+        Path file = dir.resolve("image.bin");
+        Files.write(file, new byte[16]);
+        MappedMemory image = MappedMemory.open(file, SweepRunner.parseWord("0x80000000"),
+                FileChannel.MapMode.READ_WRITE);
+        image.store(0x80000004, 0x12345678);
+        image.force();
+
+        assertEquals(0x12345678, image.load(0x80000004));
+        assertEquals(0x12345678, ByteBuffer.wrap(Files.readAllBytes(file)).getInt(4));
+    }
+}